@@ -5,15 +5,30 @@ import android.hardware.usb.UsbDeviceConnection
 import android.os.Handler
 import android.os.Looper
 import android.util.Log
+import com.fuse.fuse_printer.usbtool.MainThreadMonitor
+import com.fuse.fuse_printer.usbtool.PrinterPool
 import com.fuse.fuse_printer.usbtool.USBCommunicationPlugin
+import com.fuse.fuse_printer.usbtool.usbprinter.JobFrame
+import com.fuse.fuse_printer.usbtool.usbprinter.JobReport
+import com.fuse.fuse_printer.usbtool.usbprinter.LabelImageEncoder
+import com.fuse.fuse_printer.usbtool.usbprinter.PrintJobScheduler
+import com.fuse.fuse_printer.usbtool.usbprinter.PrinterStatus
+import com.fuse.fuse_printer.usbtool.usbprinter.RawCommandStream
+import com.fuse.fuse_printer.usbtool.usbprinter.UsbDeviceIndex
 import io.flutter.embedding.engine.plugins.FlutterPlugin
+import io.flutter.plugin.common.BasicMessageChannel
+import io.flutter.plugin.common.BinaryCodec
+import io.flutter.plugin.common.BinaryMessenger
 import io.flutter.plugin.common.MethodCall
 import io.flutter.plugin.common.MethodChannel
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler
 import io.flutter.plugin.common.MethodChannel.Result
+import io.flutter.plugin.common.StandardMethodCodec
 import io.flutter.plugin.common.EventChannel
 import io.flutter.plugin.common.EventChannel.EventSink
 import io.flutter.plugin.common.EventChannel.StreamHandler
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
 
 
 /** FusePrinterPlugin */
@@ -23,13 +38,29 @@ class FusePrinterPlugin: FlutterPlugin, MethodCallHandler {
   private lateinit var channel: MethodChannel
   private val CHANNEL_NAME = "com.fuse.printer/methods"
   private val EVENT_CHANNEL_NAME = "com.fuse.printer/events"
+  private val JOB_CHANNEL_NAME = "com.fuse.printer/jobs"
   private lateinit var mUSBCommunicationPlugin: USBCommunicationPlugin
+  private lateinit var printerPool: PrinterPool
   private lateinit var eventChannel: EventChannel
   private var eventSink: EventSink? = null
+  // 最近一次发送给Flutter的设备列表，只在主线程上访问
+  private var lastDeviceSnapshot: UsbDeviceIndex.Snapshot? = null
+  private lateinit var jobChannel: BasicMessageChannel<ByteBuffer>
+  private val mainHandler = Handler(Looper.getMainLooper())
+  private val mainThreadMonitor = MainThreadMonitor()
+  // 分块上传中的指令流ID -> 所在打印机
+  private val rawStreams = ConcurrentHashMap<Long, USBCommunicationPlugin>()
 
   // USB state listener that forwards events to Flutter via eventSink
-  private val usbStateListener = object : USBCommunicationPlugin.USBStateListener {
+  // 连接池中的其他打印机的事件带 deviceId，主打印机的事件不带
+  private inner class PrinterEventListener(private val deviceId: String?) : USBCommunicationPlugin.USBStateListener {
+    private fun send(map: Map<String, Any?>) {
+      eventSink?.success(if (deviceId == null) map else map + ("deviceId" to deviceId))
+    }
+
     override fun onUSBDeviceDetached() {
+      // 插拔事件与设备无关，只由主打印机发送
+      if (deviceId != null) return
       val map = mapOf("event" to "detached")
       eventSink?.success(map)
       // 设备断开时也发送设备列表更新
@@ -37,6 +68,7 @@ class FusePrinterPlugin: FlutterPlugin, MethodCallHandler {
     }
 
     override fun onUSBDeviceAttached() {
+      if (deviceId != null) return
       val map = mapOf("event" to "attached")
       eventSink?.success(map)
       // 设备连接时发送设备列表更新
@@ -44,36 +76,148 @@ class FusePrinterPlugin: FlutterPlugin, MethodCallHandler {
     }
 
     override fun onUSBPrintStateChanged(connected: Boolean) {
-      val map = mapOf("event" to "state", "connected" to connected)
-      eventSink?.success(map)
+      send(mapOf("event" to "state", "connected" to connected))
     }
 
     override fun onUSBReceiveWeightData(data: String) {
-      val map = mapOf("event" to "data", "data" to data)
-      eventSink?.success(map)
+      send(mapOf("event" to "data", "data" to data))
+    }
+
+    override fun onBatchProgress(batchId: Long, printed: Int, total: Int) {
+      send(mapOf("event" to "batch_progress", "batchId" to batchId, "printed" to printed, "total" to total))
+    }
+
+    override fun onFileProgress(fileId: Long, path: String, sent: Long, total: Long) {
+      send(mapOf("event" to "file_progress", "fileId" to fileId, "path" to path, "sent" to sent, "total" to total))
+    }
+
+    override fun onSpoolProgress(spoolId: Long, printed: Int, total: Int) {
+      send(mapOf("event" to "spool_progress", "spoolId" to spoolId, "printed" to printed, "total" to total))
+    }
+
+    override fun onJobFinished(report: JobReport) {
+      send(report.toMap() + ("event" to "job"))
+    }
+
+    override fun onPrinterStatusChanged(status: PrinterStatus) {
+      send(status.toMap() + ("event" to "status"))
     }
   }
 
-  // 发送设备列表更新到Flutter端
-  private fun sendDeviceListUpdate() {
-    Handler(Looper.getMainLooper()).post {
-      try {
-        val deviceListJson = mUSBCommunicationPlugin.getAllUSBDevices()
-        val map = mapOf("event" to "device_list", "devices" to deviceListJson)
-        eventSink?.success(map)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Failed to send device list update: ${e.message}")
+  private val usbStateListener = PrinterEventListener(null)
+
+  // 任务的目标打印机：参数 deviceId 指定时发到该打印机，否则按连接池的路由策略选择
+  private fun targetPrinter(call: MethodCall, result: Result): USBCommunicationPlugin? {
+    val deviceId = call.argument<String>("deviceId")
+    val printer = printerPool.select(deviceId)
+    if (printer == null) {
+      result.error("UNKNOWN_PRINTER", "打印机不在连接池中: $deviceId", null)
+    }
+    return printer
+  }
+
+  // 方法在后台 TaskQueue 上处理，结果统一投递到主线程，与事件共用主线程消息队列，保证先后顺序
+  private inner class MainThreadResult(private val result: Result) : Result {
+    override fun success(value: Any?) = runOnMain { result.success(value) }
+
+    override fun error(errorCode: String, errorMessage: String?, errorDetails: Any?) =
+      runOnMain { result.error(errorCode, errorMessage, errorDetails) }
+
+    override fun notImplemented() = runOnMain { result.notImplemented() }
+  }
+
+  private fun runOnMain(action: () -> Unit) {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      action()
+    } else {
+      mainHandler.post(action)
+    }
+  }
+
+  // 打印任务完成后返回结果；任务未入队时直接返回false。
+  // 参数 async 为 true 时入队即返回任务ID（未入队返回null），结果通过 "job" 事件报告，
+  // 任务ID总是先于该任务的 "job" 事件到达
+  private fun replyOnFinish(call: MethodCall, result: Result, submit: (PrintJobScheduler.JobCallback) -> Boolean) {
+    val async = call.argument<Boolean>("async") == true
+    val callback = object : PrintJobScheduler.JobCallback {
+      override fun onJobQueued(jobId: Long) {
+        if (async) result.success(jobId)
       }
+
+      override fun onJobFinished(jobId: Long, success: Boolean, error: Exception?) {
+        if (!async) result.success(success)
+      }
+    }
+    if (!submit(callback)) {
+      result.success(if (async) null else false)
+    }
+  }
+
+  // 处理二进制任务帧（格式见 JobFrame），任务结束后回复 [任务ID][状态]
+  private fun onJobFrame(message: ByteBuffer?, reply: BasicMessageChannel.Reply<ByteBuffer>) {
+    val frame = try {
+      JobFrame.read(message ?: ByteBuffer.allocate(0))
+    } catch (e: IllegalArgumentException) {
+      Log.e("FusePrinterPlugin", "Invalid job frame: ${e.message}")
+      runOnMain { reply.reply(JobFrame.reply(0, JobFrame.STATUS_MALFORMED)) }
+      return
+    }
+    val callback = PrintJobScheduler.JobCallback { _, success, _ ->
+      val status = if (success) JobFrame.STATUS_OK else JobFrame.STATUS_FAILED
+      runOnMain { reply.reply(JobFrame.reply(frame.jobId, status)) }
+    }
+    // 任务帧不带设备，按连接池的路由策略选择打印机
+    val printer = printerPool.select(null)!!
+    val submitted = when (frame.opcode) {
+      JobFrame.OP_RAW -> printer.doPrintRaw(frame.data, frame.offset, frame.length, callback)
+      JobFrame.OP_TEXT_EX -> printer.doPrintTextEx(frame.data, frame.offset, frame.length, callback)
+      JobFrame.OP_CUT -> printer.doCutPaper(callback)
+      JobFrame.OP_FEED -> printer.doFeedPaper(frame.intArgument(1), callback)
+      else -> {
+        Log.e("FusePrinterPlugin", "Unknown job opcode: ${frame.opcode}")
+        runOnMain { reply.reply(JobFrame.reply(frame.jobId, JobFrame.STATUS_MALFORMED)) }
+        return
+      }
+    }
+    if (!submitted) {
+      runOnMain { reply.reply(JobFrame.reply(frame.jobId, JobFrame.STATUS_REJECTED)) }
     }
   }
 
+  // 发送设备列表的增量变化到Flutter端：相对上次发送的快照新增/移除的设备，列表未变化时不发送。
+  // 只在主线程上调用
+  private fun sendDeviceListUpdate() {
+    val sink = eventSink ?: return
+    try {
+      val snapshot = mUSBCommunicationPlugin.getDeviceSnapshot()
+      val previous = lastDeviceSnapshot
+      if (previous != null && previous.version == snapshot.version) return
+      lastDeviceSnapshot = snapshot
+      sink.success(snapshot.diff(previous) + mapOf("event" to "device_list_diff", "version" to snapshot.version))
+    } catch (e: Exception) {
+      Log.e("FusePrinterPlugin", "Failed to send device list update: ${e.message}")
+    }
+  }
+
+  // 订阅时发送全量设备列表
+  private fun sendDeviceListSnapshot() {
+    val snapshot = mUSBCommunicationPlugin.getDeviceSnapshot()
+    lastDeviceSnapshot = snapshot
+    eventSink?.success(mapOf("event" to "device_list", "version" to snapshot.version, "devices" to snapshot.devices))
+  }
+
   override fun onAttachedToEngine(flutterPluginBinding: FlutterPlugin.FlutterPluginBinding) {
     context = flutterPluginBinding.applicationContext
-    channel = MethodChannel(flutterPluginBinding.binaryMessenger, CHANNEL_NAME)
+    val messenger = flutterPluginBinding.binaryMessenger
+    // 方法和任务帧都在后台串行队列上处理：USB 打开、位图解码、模板编译等不再占用主线程，
+    // 串行队列也保证调用按发送顺序处理
+    val taskQueue: BinaryMessenger.TaskQueue = messenger.makeBackgroundTaskQueue()
+    channel = MethodChannel(messenger, CHANNEL_NAME, StandardMethodCodec.INSTANCE, taskQueue)
     channel.setMethodCallHandler(this)
     mUSBCommunicationPlugin = USBCommunicationPlugin()
     // initialize USB communication (auto-connect runs in background)
     mUSBCommunicationPlugin.init(context, 0,0)
+    printerPool = PrinterPool(mUSBCommunicationPlugin)
 
     // Event channel for connection/status updates
       eventChannel = EventChannel(flutterPluginBinding.binaryMessenger, EVENT_CHANNEL_NAME)
@@ -84,9 +228,8 @@ class FusePrinterPlugin: FlutterPlugin, MethodCallHandler {
           try {
             val connected = mUSBCommunicationPlugin.getPrinterStatus()
             eventSink?.success(mapOf("event" to "state", "connected" to connected))
-            // 立即发送设备列表
-            val deviceListJson = mUSBCommunicationPlugin.getAllUSBDevices()
-            eventSink?.success(mapOf("event" to "device_list", "devices" to deviceListJson))
+            // 立即发送全量设备列表，之后只发送增量
+            sendDeviceListSnapshot()
           } catch (_: Exception) {
             // ignore
           }
@@ -94,146 +237,331 @@ class FusePrinterPlugin: FlutterPlugin, MethodCallHandler {
 
         override fun onCancel(arguments: Any?) {
           eventSink = null
+          lastDeviceSnapshot = null
         }
       })
 
+    // 二进制任务通道：大块数据不经过 StandardMethodCodec 的 Map 编解码
+    jobChannel = BasicMessageChannel(messenger, JOB_CHANNEL_NAME, BinaryCodec.INSTANCE, taskQueue)
+    jobChannel.setMessageHandler { message, reply -> onJobFrame(message, reply) }
+
     // attach listener to the USB plugin so we can forward events
     mUSBCommunicationPlugin.setUSBStateListener(usbStateListener)
   }
 
   override fun onMethodCall(call: MethodCall, result: Result) {
-    if (call.method == "getPlatformVersion") {
-      result.success("Android ${android.os.Build.VERSION.RELEASE}")
-    } else if (call.method == "printInit") {
-      val vendorId = call.argument<Int>("vendorId") ?: 0
-      val productId = call.argument<Int>("productId") ?: 0
-      try {
-        mUSBCommunicationPlugin.init(context, vendorId, productId)
-        // init is asynchronous and doesn't throw on failure; check current connection status
-        val connected = try {
-          mUSBCommunicationPlugin.getPrinterStatus()
-        } catch (_: Exception) {
-          false
-        }
-        result.success(connected)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Print init error: ${e.message}")
-        result.error("PRINT_INIT_ERROR", "初始化打印机失败: ${e.message}", null)
-      }
-    } else if (call.method == "printText") {
-      // 打印文本
-      val text = call.argument<String>("text") ?: ""
-      try {
-        val success =  mUSBCommunicationPlugin.doPrintText(text)
-        result.success(success)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Print text error: ${e.message}")
-        result.error("PRINT_TEXT_ERROR", "打印文本失败: ${e.message}", null)
-      }
-    } else if (call.method == "printTextEx") {
-      // 打印文本
-      val data = call.argument<ByteArray>("data")
-      if (data == null || data.isEmpty()) {
-        result.error("INVALID_DATA", "传入的字节数组为空", null)
-        return
+    val start = System.nanoTime()
+    try {
+      handleMethodCall(call, MainThreadResult(result))
+    } finally {
+      mainThreadMonitor.recordCall(System.nanoTime() - start)
+    }
+  }
+
+  private fun handleMethodCall(call: MethodCall, result: Result) {
+    when (call.method) {
+      "getPlatformVersion" -> {
+        result.success("Android ${android.os.Build.VERSION.RELEASE}")
       }
-      try {
-        val success = mUSBCommunicationPlugin.doPrintTextEx(data)
-        result.success(success)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Print textEx error: ${e.message}")
-        result.error("PRINT_TEXTEX_ERROR", "打印扩展文本失败: ${e.message}", null)
-      }
-    } else if (call.method == "printBarcode") {
-      // 打印条码
-      val code = call.argument<String>("code") ?: ""
-      val type = call.argument<String>("type") ?: "CODE128"
-      val height = call.argument<Int>("height") ?: 100
-      try {
-        val success = mUSBCommunicationPlugin.doPrintBarcode(code, type, height)
-        result.success(success)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Print barcode error: ${e.message}")
-        result.error("PRINT_BARCODE_ERROR", "打印条码失败: ${e.message}", null)
-      }
-    } else if (call.method == "printQRCode") {
-      // 打印二维码
-      val content = call.argument<String>("content") ?: ""
-      val size = call.argument<Int>("size") ?: 10
-      try {
-        val success = mUSBCommunicationPlugin.doPrintQRCode(content, size)
-        result.success(success)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Print QR code error: ${e.message}")
-        result.error("PRINT_QRCODE_ERROR", "打印二维码失败: ${e.message}", null)
-      }
-    } else if (call.method == "printImage") {
-      // 打印图片
-      val imagePath = call.argument<String>("imagePath") ?: ""
-      try {
-        val success = mUSBCommunicationPlugin.doPrintImage(imagePath)
-        result.success(success)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Print image error: ${e.message}")
-        result.error("PRINT_IMAGE_ERROR", "打印图片失败: ${e.message}", null)
-      }
-    } else if (call.method == "printCutPaper") {
-      // 切纸
-      try {
-        val success = mUSBCommunicationPlugin.doCutPaper()
-        result.success(success)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Cut paper error: ${e.message}")
-        result.error("CUT_PAPER_ERROR", "切纸失败: ${e.message}", null)
-      }
-    } else if (call.method == "printFeedPaper") {
-      // 进纸
-      val lines = call.argument<Int>("lines") ?: 1
-      try {
-        val success = mUSBCommunicationPlugin.doFeedPaper(lines)
-        result.success(success)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Feed paper error: ${e.message}")
-        result.error("FEED_PAPER_ERROR", "进纸失败: ${e.message}", null)
-      }
-    } else if (call.method == "printClose") {
-      // 关闭打印机
-      try {
-        mUSBCommunicationPlugin.close()
-        result.success(true)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Close printer error: ${e.message}")
-        result.error("CLOSE_PRINTER_ERROR", "关闭打印机失败: ${e.message}", null)
-      }
-    } else if (call.method == "getPrinterStatus") {
-      // 获取打印机状态
-      try {
-        val status = mUSBCommunicationPlugin.getPrinterStatus()
+      "printInit" -> {
+        val vendorId = call.argument<Int>("vendorId") ?: 0
+        val productId = call.argument<Int>("productId") ?: 0
+        try {
+          mUSBCommunicationPlugin.init(context, vendorId, productId)
+          // init is asynchronous and doesn't throw on failure; check current connection status
+          val connected = try {
+            mUSBCommunicationPlugin.getPrinterStatus()
+          } catch (_: Exception) {
+            false
+          }
+          result.success(connected)
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Print init error: ${e.message}")
+          result.error("PRINT_INIT_ERROR", "初始化打印机失败: ${e.message}", null)
+        }
+      }
+      "printText" -> {
+        // 打印文本
+        val text = call.argument<String>("text") ?: ""
+        try {
+          val printer = targetPrinter(call, result) ?: return
+          replyOnFinish(call, result) { printer.doPrintText(text, it) }
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Print text error: ${e.message}")
+          result.error("PRINT_TEXT_ERROR", "打印文本失败: ${e.message}", null)
+        }
+      }
+      "printTextEx" -> {
+        // 打印文本
+        val data = call.argument<ByteArray>("data")
+        if (data == null || data.isEmpty()) {
+          result.error("INVALID_DATA", "传入的字节数组为空", null)
+          return
+        }
+        try {
+          val printer = targetPrinter(call, result) ?: return
+          replyOnFinish(call, result) { printer.doPrintTextEx(data, it) }
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Print textEx error: ${e.message}")
+          result.error("PRINT_TEXTEX_ERROR", "打印扩展文本失败: ${e.message}", null)
+        }
+      }
+      "printBarcode" -> {
+        // 打印条码
+        val code = call.argument<String>("code") ?: ""
+        val type = call.argument<String>("type") ?: "CODE128"
+        val height = call.argument<Int>("height") ?: 100
+        try {
+          val printer = targetPrinter(call, result) ?: return
+          replyOnFinish(call, result) { printer.doPrintBarcode(code, type, height, it) }
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Print barcode error: ${e.message}")
+          result.error("PRINT_BARCODE_ERROR", "打印条码失败: ${e.message}", null)
+        }
+      }
+      "printQRCode" -> {
+        // 打印二维码
+        val content = call.argument<String>("content") ?: ""
+        val size = call.argument<Int>("size") ?: 10
+        try {
+          val printer = targetPrinter(call, result) ?: return
+          replyOnFinish(call, result) { printer.doPrintQRCode(content, size, it) }
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Print QR code error: ${e.message}")
+          result.error("PRINT_QRCODE_ERROR", "打印二维码失败: ${e.message}", null)
+        }
+      }
+      "printImage" -> {
+        // 打印图片
+        val imagePath = call.argument<String>("imagePath") ?: ""
+        val x = call.argument<Int>("x") ?: 50
+        val y = call.argument<Int>("y") ?: 50
+        val width = call.argument<Int>("width") ?: 0
+        val height = call.argument<Int>("height") ?: 0
+        val threshold = call.argument<Int>("threshold") ?: 127
+        // 二值化方式按枚举名匹配（不区分大小写），未知值按阈值处理
+        val ditherName = call.argument<String>("dither")
+        val dither = LabelImageEncoder.DitherMode.values().firstOrNull { it.name.equals(ditherName, true) }
+          ?: LabelImageEncoder.DitherMode.THRESHOLD
+        try {
+          val printer = targetPrinter(call, result) ?: return
+          replyOnFinish(call, result) {
+            printer.doPrintImage(imagePath, x, y, width, height, threshold, dither, it)
+          }
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Print image error: ${e.message}")
+          result.error("PRINT_IMAGE_ERROR", "打印图片失败: ${e.message}", null)
+        }
+      }
+      "registerLabelTemplate" -> {
+        // 注册标签模板
+        val name = call.argument<String>("name") ?: ""
+        val source = call.argument<String>("source") ?: ""
+        result.success(mUSBCommunicationPlugin.registerLabelTemplate(name, source))
+      }
+      "printTemplate" -> {
+        // 按模板打印
+        val name = call.argument<String>("name") ?: ""
+        val values = call.argument<Map<String, Any?>>("values") ?: emptyMap()
+        val copies = call.argument<Int>("copies") ?: 1
+        val stored = call.argument<Boolean>("stored") ?: false
+        val printer = targetPrinter(call, result) ?: return
+        replyOnFinish(call, result) {
+          printer.doPrintTemplate(name, values, copies, stored, it)
+        }
+      }
+      "printBatch" -> {
+        // 批量打印
+        val labels = call.argument<List<Map<String, Any?>>>("labels") ?: emptyList()
+        val printer = targetPrinter(call, result) ?: return
+        replyOnFinish(call, result) {
+          printer.doPrintBatch(labels, it)
+        }
+      }
+      "printFile" -> {
+        // 打印应用存储中准备好的指令文件，文件按段映射发送，不整块读入内存
+        val path = call.argument<String>("path") ?: ""
+        val printer = targetPrinter(call, result) ?: return
+        replyOnFinish(call, result) {
+          printer.doPrintFile(path, it)
+        }
+      }
+      "spoolPrint" -> {
+        // 写入持久化队列后发送，进程被杀或拔线后重新连接时从检查点续打；返回队列任务ID（失败返回null）
+        val units = call.argument<List<ByteArray>>("units") ?: emptyList()
+        val printer = targetPrinter(call, result) ?: return
+        val spoolId = printer.doSpoolPrint(units)
+        result.success(if (spoolId < 0) null else spoolId)
+      }
+      "getSpooledJobs" -> {
+        // 持久化队列中未完成的任务
+        val printer = targetPrinter(call, result) ?: return
+        result.success(printer.getSpooledJobs())
+      }
+      "cancelSpooledJob" -> {
+        // 从持久化队列删除任务
+        val spoolId = call.argument<Number>("spoolId")?.toLong() ?: -1L
+        val printer = targetPrinter(call, result) ?: return
+        result.success(printer.cancelSpooledJob(spoolId))
+      }
+      "printCutPaper" -> {
+        // 切纸
+        try {
+          val printer = targetPrinter(call, result) ?: return
+          replyOnFinish(call, result) { printer.doCutPaper(it) }
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Cut paper error: ${e.message}")
+          result.error("CUT_PAPER_ERROR", "切纸失败: ${e.message}", null)
+        }
+      }
+      "printFeedPaper" -> {
+        // 进纸
+        val lines = call.argument<Int>("lines") ?: 1
+        try {
+          val printer = targetPrinter(call, result) ?: return
+          replyOnFinish(call, result) { printer.doFeedPaper(lines, it) }
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Feed paper error: ${e.message}")
+          result.error("FEED_PAPER_ERROR", "进纸失败: ${e.message}", null)
+        }
+      }
+      "rawBegin" -> {
+        // 开始分块上传的原始指令任务，返回流ID（未入队返回null）
+        val printer = targetPrinter(call, result) ?: return
+        val streamId = printer.beginRawStream()
+        if (streamId < 0) {
+          result.success(null)
+          return
+        }
+        rawStreams[streamId] = printer
+        result.success(streamId)
+      }
+      "rawChunk" -> {
+        // 送入一个分块：1 已接收，0 缓冲已满稍后重试，-1 流已结束或失败
+        val streamId = call.argument<Number>("streamId")?.toLong() ?: -1L
+        val data = call.argument<ByteArray>("data") ?: ByteArray(0)
+        val printer = rawStreams[streamId]
+        val status = printer?.writeRawStream(streamId, data) ?: RawCommandStream.OFFER_CLOSED
+        if (status == RawCommandStream.OFFER_CLOSED) {
+          rawStreams.remove(streamId)
+        }
         result.success(status)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Get printer status error: ${e.message}")
-        result.error("GET_STATUS_ERROR", "获取打印机状态失败: ${e.message}", null)
-      }
-    } else if (call.method == "getAllUSBDevices") {
-      // 获取所有USB设备列表
-      try {
-        val deviceListJson = mUSBCommunicationPlugin.getAllUSBDevices()
-        result.success(deviceListJson)
-      } catch (e: Exception) {
-        Log.e("FusePrinterPlugin", "Get all USB devices error: ${e.message}")
-        result.error("GET_DEVICES_ERROR", "获取USB设备列表失败: ${e.message}", null)
       }
-    } else {
-      result.notImplemented()
+      "rawEnd" -> {
+        // 结束指令流，缓冲发送完成后返回结果；abort 为 true 时放弃未发送的数据
+        val streamId = call.argument<Number>("streamId")?.toLong() ?: -1L
+        val abort = call.argument<Boolean>("abort") ?: false
+        val printer = rawStreams.remove(streamId)
+        val callback = PrintJobScheduler.JobCallback { _, success, _ -> result.success(success) }
+        if (printer == null || !printer.endRawStream(streamId, abort, callback)) {
+          result.success(false)
+        }
+      }
+      "printClose" -> {
+        // 关闭打印机
+        try {
+          mUSBCommunicationPlugin.close()
+          result.success(true)
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Close printer error: ${e.message}")
+          result.error("CLOSE_PRINTER_ERROR", "关闭打印机失败: ${e.message}", null)
+        }
+      }
+      "getPrinterStatus" -> {
+        // 获取打印机状态
+        try {
+          val status = mUSBCommunicationPlugin.getPrinterStatus()
+          result.success(status)
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Get printer status error: ${e.message}")
+          result.error("GET_STATUS_ERROR", "获取打印机状态失败: ${e.message}", null)
+        }
+      }
+      "getPrinterStatusDetail" -> {
+        // 获取打印机实时状态（缺纸、开盖等）
+        result.success(mUSBCommunicationPlugin.getPrinterStatusDetail().toMap())
+      }
+      "setStatusPolling" -> {
+        // 状态轮询开关
+        val enabled = call.argument<Boolean>("enabled") ?: true
+        val protocol = call.argument<String>("protocol") ?: PrinterStatus.PROTOCOL_TSPL
+        mUSBCommunicationPlugin.setStatusPolling(enabled, protocol)
+        result.success(null)
+      }
+      "getFlowControlStats" -> {
+        // 获取发送流控统计
+        result.success(mUSBCommunicationPlugin.getFlowControlStats())
+      }
+      "getConnectionStats" -> {
+        // 获取自动连接状态及唤醒统计
+        result.success(mUSBCommunicationPlugin.getConnectionStats())
+      }
+      "getImageCacheStats" -> {
+        // 获取图片缓存统计
+        result.success(mUSBCommunicationPlugin.getImageCacheStats())
+      }
+      "getMainThreadStats" -> {
+        // 获取主线程阻塞统计，reset 为 true 时取出后清零
+        val stats = mainThreadMonitor.getStats()
+        if (call.argument<Boolean>("reset") == true) {
+          mainThreadMonitor.reset()
+        }
+        result.success(stats)
+      }
+      "setMainThreadProbe" -> {
+        // 主线程延迟探针开关
+        mainThreadMonitor.setProbeEnabled(call.argument<Boolean>("enabled") ?: false)
+        result.success(null)
+      }
+      "setBitmapCompression" -> {
+        // 打印机端图片压缩开关
+        val enabled = call.argument<Boolean>("enabled") ?: false
+        mUSBCommunicationPlugin.setBitmapCompression(enabled)
+        result.success(null)
+      }
+      "openPrinter" -> {
+        // 按设备名把打印机加入连接池，独立连接和发送线程
+        val deviceId = call.argument<String>("deviceId") ?: ""
+        result.success(printerPool.open(context, deviceId, PrinterEventListener(deviceId)) != null)
+      }
+      "closePrinter" -> {
+        // 关闭连接池中的打印机
+        val deviceId = call.argument<String>("deviceId") ?: ""
+        result.success(printerPool.close(deviceId))
+      }
+      "getPrinters" -> {
+        // 连接池中各打印机的连接和排队情况
+        result.success(printerPool.getPrinters())
+      }
+      "setRoutePolicy" -> {
+        // 未指定 deviceId 的任务的路由策略
+        val policy = call.argument<String>("policy") ?: PrinterPool.ROUTE_PRIMARY
+        result.success(printerPool.setPolicy(policy))
+      }
+      "getAllUSBDevices" -> {
+        // 获取所有USB设备列表，rescan 为 true 时重新枚举
+        try {
+          val rescan = call.argument<Boolean>("rescan") ?: false
+          val deviceListJson = mUSBCommunicationPlugin.getAllUSBDevices(rescan)
+          result.success(deviceListJson)
+        } catch (e: Exception) {
+          Log.e("FusePrinterPlugin", "Get all USB devices error: ${e.message}")
+          result.error("GET_DEVICES_ERROR", "获取USB设备列表失败: ${e.message}", null)
+        }
+      }
+      else -> result.notImplemented()
     }
   }
 
   override fun onDetachedFromEngine(binding: FlutterPlugin.FlutterPluginBinding) {
     channel.setMethodCallHandler(null)
+    jobChannel.setMessageHandler(null)
+    mainThreadMonitor.setProbeEnabled(false)
     try {
       // remove event listener and close
       eventChannel.setStreamHandler(null)
       mUSBCommunicationPlugin.setUSBStateListener(null)
+      printerPool.closeAll()
       mUSBCommunicationPlugin.close()
     } catch (e: Exception) {
       Log.e("FusePrinterPlugin", "Error closing USB: ${e.message}")
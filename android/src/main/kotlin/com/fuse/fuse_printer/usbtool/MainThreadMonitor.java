@@ -0,0 +1,114 @@
+package com.fuse.fuse_printer.usbtool;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模块：主线程阻塞统计
+ * <p>
+ * 两类数据：
+ * <ul>
+ * <li>插件方法处理耗时：每次方法调用都记录，并区分是否在主线程上执行</li>
+ * <li>主线程延迟探针：开启后每 PROBE_INTERVAL_MS 向主线程投递一次任务，记录实际执行比预定晚了多少，
+ * 反映主线程被（任何代码）阻塞的程度；默认关闭，避免空闲时唤醒主线程</li>
+ * </ul>
+ * 用于对比方法调度放到后台 TaskQueue 前后的主线程占用。
+ */
+public class MainThreadMonitor {
+
+    private static final long PROBE_INTERVAL_MS = 100;
+    // 一帧的时长，超过即视为掉帧
+    private static final long FRAME_MS = 16;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private long mCalls;
+    private long mMainCalls;
+    private long mMainNanos;
+    private long mMaxMainNanos;
+
+    private boolean mProbing;
+    private long mProbeDue;
+    private long mSamples;
+    private long mTotalLagMs;
+    private long mMaxLagMs;
+    private long mLagOverFrame;
+
+    private final Runnable mProbe = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.uptimeMillis();
+            synchronized (MainThreadMonitor.this) {
+                if (!mProbing) {
+                    return;
+                }
+                long lag = Math.max(0, now - mProbeDue);
+                mSamples++;
+                mTotalLagMs += lag;
+                mMaxLagMs = Math.max(mMaxLagMs, lag);
+                if (lag > FRAME_MS) {
+                    mLagOverFrame++;
+                }
+                mProbeDue = now + PROBE_INTERVAL_MS;
+            }
+            mMainHandler.postAtTime(this, now + PROBE_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * 记录一次方法处理耗时
+     */
+    public synchronized void recordCall(long nanos) {
+        mCalls++;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mMainCalls++;
+            mMainNanos += nanos;
+            mMaxMainNanos = Math.max(mMaxMainNanos, nanos);
+        }
+    }
+
+    /**
+     * 开启/关闭主线程延迟探针
+     */
+    public void setProbeEnabled(boolean enabled) {
+        synchronized (this) {
+            if (mProbing == enabled) {
+                return;
+            }
+            mProbing = enabled;
+            mProbeDue = SystemClock.uptimeMillis() + PROBE_INTERVAL_MS;
+        }
+        mMainHandler.removeCallbacks(mProbe);
+        if (enabled) {
+            mMainHandler.postAtTime(mProbe, mProbeDue);
+        }
+    }
+
+    public synchronized void reset() {
+        mCalls = 0;
+        mMainCalls = 0;
+        mMainNanos = 0;
+        mMaxMainNanos = 0;
+        mSamples = 0;
+        mTotalLagMs = 0;
+        mMaxLagMs = 0;
+        mLagOverFrame = 0;
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("calls", mCalls);
+        stats.put("mainThreadCalls", mMainCalls);
+        stats.put("mainThreadMs", mMainNanos / 1000000);
+        stats.put("maxMainThreadMs", mMaxMainNanos / 1000000);
+        stats.put("probeSamples", mSamples);
+        stats.put("avgLagMs", mSamples > 0 ? mTotalLagMs / mSamples : 0);
+        stats.put("maxLagMs", mMaxLagMs);
+        stats.put("lagOverFrame", mLagOverFrame);
+        return stats;
+    }
+}
@@ -0,0 +1,209 @@
+package com.fuse.fuse_printer.usbtool;
+
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.util.Log;
+
+import com.fuse.fuse_printer.usbtool.usbprinter.LabelTemplate;
+import com.fuse.fuse_printer.usbtool.usbprinter.USBUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模块：多打印机连接池
+ * <p>
+ * 主打印机按 vendorId/productId 连接（printInit），其他打印机按设备名加入连接池，
+ * 之后按 vendorId/productId/序列号识别，重新插拔后设备名变化时连接池跟随更新。
+ * 每台打印机是一个独立的 {@link USBCommunicationPlugin}：各自的USB连接、端点、调度线程和自动连接状态机，
+ * 互不阻塞，总吞吐随打印机数量增加。标签模板在池内共用。
+ * <p>
+ * 任务指定 deviceId 时发到该打印机，否则按路由策略选择：
+ * ROUTE_PRIMARY 总是主打印机；ROUTE_LEAST_QUEUED 选排队任务最少的已连接打印机；
+ * ROUTE_ROUND_ROBIN 在已连接打印机间轮流。
+ */
+public class PrinterPool {
+
+    private static final String TAG = "PrinterPool";
+
+    public static final String ROUTE_PRIMARY = "primary";
+    public static final String ROUTE_LEAST_QUEUED = "leastQueued";
+    public static final String ROUTE_ROUND_ROBIN = "roundRobin";
+
+    private final USBCommunicationPlugin mPrimary;
+    private final Map<String, LabelTemplate> mTemplates;
+    // 按加入顺序保存，轮询时顺序稳定；键为当前设备名
+    private Map<String, USBCommunicationPlugin> mPrinters = new LinkedHashMap<>();
+    // 池内打印机占用的设备名，主打印机重连时跳过
+    private final Set<String> mClaimed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile String mPolicy = ROUTE_PRIMARY;
+    private int mNext;
+
+    public PrinterPool(USBCommunicationPlugin primary) {
+        this.mPrimary = primary;
+        this.mTemplates = primary.getTemplates();
+        primary.setExcludedDevices(mClaimed);
+    }
+
+    /**
+     * 打开指定设备并加入连接池，已在池中时直接返回
+     * listener 该打印机的事件监听
+     * @return 设备不存在或是主打印机当前连接的设备时返回null
+     */
+    public synchronized USBCommunicationPlugin open(Context context, String deviceName,
+                                                    USBCommunicationPlugin.USBStateListener listener) {
+        USBCommunicationPlugin printer = mPrinters.get(deviceName);
+        if (printer != null) {
+            return printer;
+        }
+        if (deviceName.equals(mPrimary.getDeviceName())) {
+            Log.w(TAG, deviceName + " 已由主打印机连接");
+            return null;
+        }
+        UsbDevice device = USBUtil.getInstance(context).findUsbDeviceByName(deviceName);
+        if (device == null) {
+            Log.e(TAG, "未找到USB设备：" + deviceName);
+            return null;
+        }
+        printer = new USBCommunicationPlugin(mTemplates);
+        printer.setUSBStateListener(listener);
+        mClaimed.add(deviceName);
+        mPrinters.put(deviceName, printer);
+        printer.initDevice(context, device, this::onDeviceNameChanged);
+        Log.i(TAG, "打印机加入连接池：" + deviceName + "，共 " + (mPrinters.size() + 1) + " 台");
+        return printer;
+    }
+
+    /**
+     * 池内打印机重新插入后设备名变化（在该打印机的热插拔线程上调用）
+     * 新设备名已被池内其他打印机或主打印机占用时拒绝
+     */
+    private synchronized boolean onDeviceNameChanged(USBCommunicationPlugin printer, String oldName,
+                                                     String newName) {
+        if (mPrinters.get(oldName) != printer) {
+            // 已移出连接池
+            return false;
+        }
+        if (mClaimed.contains(newName) || newName.equals(mPrimary.getDeviceName())) {
+            return false;
+        }
+        mClaimed.add(newName);
+        mClaimed.remove(oldName);
+        // 保持加入顺序换键
+        Map<String, USBCommunicationPlugin> printers = new LinkedHashMap<>();
+        for (Map.Entry<String, USBCommunicationPlugin> entry : mPrinters.entrySet()) {
+            printers.put(entry.getKey().equals(oldName) ? newName : entry.getKey(), entry.getValue());
+        }
+        mPrinters = printers;
+        return true;
+    }
+
+    /**
+     * 关闭并移出连接池，未排队执行的任务以取消结束
+     */
+    public synchronized boolean close(String deviceName) {
+        USBCommunicationPlugin printer = mPrinters.remove(deviceName);
+        if (printer == null) {
+            return false;
+        }
+        printer.setUSBStateListener(null);
+        printer.close();
+        mClaimed.remove(deviceName);
+        return true;
+    }
+
+    /**
+     * 关闭池中的所有打印机，主打印机由调用方关闭
+     */
+    public synchronized void closeAll() {
+        for (String deviceName : new ArrayList<>(mPrinters.keySet())) {
+            close(deviceName);
+        }
+    }
+
+    /**
+     * 路由策略：ROUTE_PRIMARY / ROUTE_LEAST_QUEUED / ROUTE_ROUND_ROBIN
+     */
+    public boolean setPolicy(String policy) {
+        if (!ROUTE_PRIMARY.equals(policy) && !ROUTE_LEAST_QUEUED.equals(policy)
+                && !ROUTE_ROUND_ROBIN.equals(policy)) {
+            return false;
+        }
+        mPolicy = policy;
+        return true;
+    }
+
+    public String getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * 选择任务的目标打印机
+     * deviceId 为空时按路由策略选择；指定了但不在池中时返回null
+     */
+    public synchronized USBCommunicationPlugin select(String deviceId) {
+        if (deviceId != null && !deviceId.isEmpty()) {
+            USBCommunicationPlugin printer = mPrinters.get(deviceId);
+            if (printer == null && deviceId.equals(mPrimary.getDeviceName())) {
+                printer = mPrimary;
+            }
+            return printer;
+        }
+        String policy = mPolicy;
+        if (ROUTE_PRIMARY.equals(policy) || mPrinters.isEmpty()) {
+            return mPrimary;
+        }
+        List<USBCommunicationPlugin> connected = new ArrayList<>(mPrinters.size() + 1);
+        if (mPrimary.getPrinterStatus()) {
+            connected.add(mPrimary);
+        }
+        for (USBCommunicationPlugin printer : mPrinters.values()) {
+            if (printer.getPrinterStatus()) {
+                connected.add(printer);
+            }
+        }
+        if (connected.isEmpty()) {
+            // 都未连接时仍交给主打印机，由它报告未连接
+            return mPrimary;
+        }
+        if (ROUTE_ROUND_ROBIN.equals(policy)) {
+            int index = mNext % connected.size();
+            mNext = index + 1;
+            return connected.get(index);
+        }
+        USBCommunicationPlugin best = connected.get(0);
+        for (USBCommunicationPlugin printer : connected) {
+            if (printer.getPendingJobCount() < best.getPendingJobCount()) {
+                best = printer;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 池内打印机（含主打印机）的连接和队列情况
+     */
+    public synchronized List<Map<String, Object>> getPrinters() {
+        List<Map<String, Object>> list = new ArrayList<>(mPrinters.size() + 1);
+        list.add(describe(mPrimary, true));
+        for (USBCommunicationPlugin printer : mPrinters.values()) {
+            list.add(describe(printer, false));
+        }
+        return list;
+    }
+
+    private static Map<String, Object> describe(USBCommunicationPlugin printer, boolean primary) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("deviceId", printer.getDeviceName());
+        map.put("primary", primary);
+        map.put("connected", printer.getPrinterStatus());
+        map.put("pending", printer.getPendingJobCount());
+        return map;
+    }
+}
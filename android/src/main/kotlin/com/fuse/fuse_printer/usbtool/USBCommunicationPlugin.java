@@ -12,27 +12,62 @@ import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.fuse.fuse_printer.usbtool.usbprinter.BandPipeline;
+import com.fuse.fuse_printer.usbtool.usbprinter.BatchLabel;
+import com.fuse.fuse_printer.usbtool.usbprinter.BitmapBandEncoder;
+import com.fuse.fuse_printer.usbtool.usbprinter.BitmapPayloadCache;
+import com.fuse.fuse_printer.usbtool.usbprinter.BitmapRasterizer;
+import com.fuse.fuse_printer.usbtool.usbprinter.ConnectionStateMachine;
+import com.fuse.fuse_printer.usbtool.usbprinter.JobReport;
+import com.fuse.fuse_printer.usbtool.usbprinter.LabelImageEncoder;
+import com.fuse.fuse_printer.usbtool.usbprinter.LabelTemplate;
+import com.fuse.fuse_printer.usbtool.usbprinter.PrintJobScheduler;
+import com.fuse.fuse_printer.usbtool.usbprinter.PrintSpool;
+import com.fuse.fuse_printer.usbtool.usbprinter.PrinterStatus;
+import com.fuse.fuse_printer.usbtool.usbprinter.RawCommandStream;
+import com.fuse.fuse_printer.usbtool.usbprinter.StatusMonitor;
+import com.fuse.fuse_printer.usbtool.usbprinter.TsplWriter;
 import com.fuse.fuse_printer.usbtool.usbprinter.USBUtil;
+import com.fuse.fuse_printer.usbtool.usbprinter.UsbBulkWriter;
+import com.fuse.fuse_printer.usbtool.usbprinter.UsbDeviceIdentity;
+import com.fuse.fuse_printer.usbtool.usbprinter.UsbDeviceIndex;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class USBCommunicationPlugin {
 
@@ -41,14 +76,61 @@ public class USBCommunicationPlugin {
     // 设备信息由外部传入
     private int mVendorId = 0;
     private int mProductId = 0;
+    // 指定设备名时只连接该设备（同型号多台打印机），为空时按 vendorId/productId 匹配；
+    // 重新插拔后设备名会变，按 mIdentity 找回设备后更新
+    private volatile String mDeviceName;
+    // 连接池中打印机的稳定标识，主打印机为null
+    private UsbDeviceIdentity mIdentity;
+    // 设备名变化时通知连接池
+    private DeviceNameListener mDeviceNameListener;
+    // 连接池中其他打印机占用的设备，按 vendorId/productId 匹配时跳过
+    private Set<String> mExcludedDevices = Collections.emptySet();
 
     private Context mContext;
     private USBStateListener mUSBStateListener;
 
     private USBUtil usbUtil;
 
-    private Timer timer;
-    private boolean isAutoConnecting = false;
+    // 打印任务调度器，所有 doPrint* 都经由它串行写入
+    private PrintJobScheduler mPrintScheduler;
+    // 任务间查询打印机状态，不可打印时调度器暂缓任务
+    private StatusMonitor mStatusMonitor;
+    // 合并写入器，仅在调度线程上使用
+    private UsbBulkWriter mWriter;
+    // 分带图像流水线，复用带缓冲，仅在调度线程上使用
+    private final BandPipeline mBandPipeline = new BandPipeline();
+    // 逐带选择跳过/裁剪/压缩/原样发送，仅在调度线程上使用
+    private final BitmapBandEncoder mBandEncoder = new BitmapBandEncoder();
+    // 是否使用 BITMAP 压缩，通道线程写入，调度线程在每张图片开始时读取一次
+    private volatile boolean mBitmapCompression;
+    // 光栅化后的图片指令缓存
+    private final BitmapPayloadCache mImageCache = new BitmapPayloadCache(BitmapPayloadCache.DEFAULT_MAX_BYTES);
+    // 标签指令构建器，仅在调度线程上使用
+    private final TsplWriter mTspl = new TsplWriter();
+    // 已注册的标签模板，连接池中的打印机共用
+    private final Map<String, LabelTemplate> mTemplates;
+    // 已 DOWNLOAD 到打印机的模板，断开后失效
+    private final Set<String> mStoredTemplates = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // 批次编号
+    private final AtomicLong mBatchIds = new AtomicLong();
+    // 文件打印编号
+    private final AtomicLong mFileIds = new AtomicLong();
+    // 分块上传中的指令流，ID在连接池内唯一
+    private static final AtomicLong sRawStreamIds = new AtomicLong();
+    private final Map<Long, RawStreamJob> mRawStreams = new ConcurrentHashMap<>();
+    // 持久化打印队列，按设备分目录；打不开时为null，此时不支持续打
+    private volatile PrintSpool mSpool;
+    // 已提交到调度器、尚未结束的续打任务
+    private final Set<Long> mSpoolQueued = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // 每次连接成功加一，续打任务据此判断结束前是否发生过重新连接
+    private final AtomicLong mConnectionGeneration = new AtomicLong();
+
+    // 自动连接状态机及其线程，插拔广播和重试都在该线程上处理
+    private HandlerThread mHotplugThread;
+    private Handler mHotplugHandler;
+    private ConnectionStateMachine mConnection;
+    // 插拔广播接收器是否已注册，设备索引按已注册的接收器数判断是否可信
+    private boolean mReceiverRegistered;
 
     // 时间格式
     private final SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
@@ -72,16 +154,57 @@ public class USBCommunicationPlugin {
                     String data = (String) msg.obj;
                     plugin.mUSBStateListener.onUSBReceiveWeightData(data);
                     break;
+                case USB_DEVICE_ATTACHED:
+                    plugin.mUSBStateListener.onUSBDeviceAttached();
+                    break;
+                case USB_DEVICE_DETACHED:
+                    plugin.mUSBStateListener.onUSBDeviceDetached();
+                    break;
                 case USB_STATE_CHANGED:
                     boolean connected = (boolean) msg.obj;
                     plugin.mUSBStateListener.onUSBPrintStateChanged(connected);
                     break;
+                case BATCH_PROGRESS:
+                    long[] progress = (long[]) msg.obj;
+                    plugin.mUSBStateListener.onBatchProgress(progress[0], (int) progress[1], (int) progress[2]);
+                    break;
+                case JOB_FINISHED:
+                    plugin.mUSBStateListener.onJobFinished((JobReport) msg.obj);
+                    break;
+                case PRINTER_STATUS:
+                    plugin.mUSBStateListener.onPrinterStatusChanged((PrinterStatus) msg.obj);
+                    break;
+                case SPOOL_PROGRESS:
+                    long[] spool = (long[]) msg.obj;
+                    plugin.mUSBStateListener.onSpoolProgress(spool[0], (int) spool[1], (int) spool[2]);
+                    break;
+                case FILE_PROGRESS:
+                    Object[] file = (Object[]) msg.obj;
+                    plugin.mUSBStateListener.onFileProgress((long) file[0], (String) file[1],
+                            (long) file[2], (long) file[3]);
+                    break;
             }
         }
     }
 
     private static final int REC_DATA = 2;
     private static final int USB_STATE_CHANGED = 1001;
+    private static final int BATCH_PROGRESS = 1002;
+    private static final int JOB_FINISHED = 1003;
+    private static final int PRINTER_STATUS = 1004;
+    private static final int USB_DEVICE_ATTACHED = 1005;
+    private static final int USB_DEVICE_DETACHED = 1006;
+    private static final int FILE_PROGRESS = 1007;
+    private static final int SPOOL_PROGRESS = 1008;
+
+    // 批量打印进度事件的最小间隔
+    private static final long BATCH_PROGRESS_INTERVAL_MS = 100;
+    // 打印文件时每次映射的区间，限制占用的地址空间
+    private static final long FILE_MAP_WINDOW_BYTES = 4 * 1024 * 1024;
+    // 打印文件时单次写入的大小，决定检查进度的粒度
+    private static final int FILE_SLICE_BYTES = 64 * 1024;
+    // 持久化打印队列所在目录（应用 files 目录下）
+    private static final String SPOOL_DIR = "print_spool";
 
     private final Handler mHandler = new SafeHandler(this);
 
@@ -90,81 +213,276 @@ public class USBCommunicationPlugin {
         void onUSBDeviceAttached();
         void onUSBPrintStateChanged(boolean connected);
         void onUSBReceiveWeightData(String data);
+        void onBatchProgress(long batchId, int printed, int total);
+        void onFileProgress(long fileId, String path, long sent, long total);
+        void onSpoolProgress(long spoolId, int printed, int total);
+        void onJobFinished(JobReport report);
+        void onPrinterStatusChanged(PrinterStatus status);
+    }
+
+    public USBCommunicationPlugin() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    USBCommunicationPlugin(Map<String, LabelTemplate> templates) {
+        this.mTemplates = templates;
     }
 
     public void setUSBStateListener(USBStateListener listener) {
         this.mUSBStateListener = listener;
     }
 
-    public void init(Context context, int vendorId, int productId) {
+    // 方法调用在后台队列上，引擎分离时的 close 在主线程上，两者互斥
+    public synchronized void init(Context context, int vendorId, int productId) {
         this.mContext = context.getApplicationContext();
         this.mVendorId = vendorId;
         this.mProductId = productId;
 
         // 初始化 USBUtil
         usbUtil = USBUtil.getInstance(mContext);
+        start();
+    }
 
-        // 注册广播
-        registerUSBStateReceiver();
+    /**
+     * 重新插拔后设备名变化，返回false表示新设备名已被占用，不切换到该设备
+     */
+    interface DeviceNameListener {
+        boolean onDeviceNameChanged(USBCommunicationPlugin printer, String oldName, String newName);
+    }
 
-        // 自动连接
+    /**
+     * 连接指定设备，用于连接池中的其他打印机：独立的连接、端点和调度线程
+     */
+    synchronized void initDevice(Context context, UsbDevice device, DeviceNameListener listener) {
+        this.mContext = context.getApplicationContext();
+        this.mDeviceName = device.getDeviceName();
+        this.mVendorId = device.getVendorId();
+        this.mProductId = device.getProductId();
+        this.mIdentity = UsbDeviceIdentity.of(device);
+        this.mDeviceNameListener = listener;
+        if (mIdentity.getSerial() == null) {
+            Log.w(TAG, mDeviceName + " 未读取到序列号，重新插拔后按总线号识别");
+        }
+        if (usbUtil == null) {
+            usbUtil = USBUtil.create(mContext);
+        }
+        start();
+    }
+
+    private void start() {
+        if (mPrintScheduler == null) {
+            String name = mDeviceName != null ? mDeviceName : "usb";
+            mPrintScheduler = new PrintJobScheduler(name, PrintJobScheduler.DEFAULT_QUEUE_CAPACITY);
+            mWriter = new UsbBulkWriter(usbUtil);
+            mStatusMonitor = new StatusMonitor(usbUtil,
+                    status -> mHandler.obtainMessage(PRINTER_STATUS, status).sendToTarget());
+            mPrintScheduler.setStatusGate(mStatusMonitor);
+        }
+        openSpool();
+
+        // 自动连接，由插拔广播驱动
         startAutoConnect();
     }
 
-    public void close() {
+    /**
+     * 当前连接的设备名，未连接时为指定的设备名或null
+     */
+    public String getDeviceName() {
+        if (mDeviceName != null) {
+            return mDeviceName;
+        }
+        UsbDevice device = usbUtil != null ? usbUtil.getUsbDevice() : null;
+        return device != null && usbUtil.isConnected() ? device.getDeviceName() : null;
+    }
+
+    /**
+     * 排队中（含正在发送）的任务数，用于连接池的负载均衡
+     */
+    public int getPendingJobCount() {
+        PrintJobScheduler scheduler = mPrintScheduler;
+        return scheduler != null ? scheduler.getPendingCount() : 0;
+    }
+
+    public synchronized void close() {
         stopAutoConnect();
-        unRegisterUSBStateReceiver();
+        if (mPrintScheduler != null) {
+            // 光栅化线程在调度线程退出前关闭，此时不会有图像正在流水线中
+            mPrintScheduler.shutdown(mBandPipeline::shutdown);
+            mPrintScheduler = null;
+            mStatusMonitor = null;
+        }
+        mStoredTemplates.clear();
         if (usbUtil != null) {
             usbUtil.close();
         }
+        // 未完成的续打任务留在日志中，下次打开时恢复
+        if (mSpool != null) {
+            mSpool.close();
+            mSpool = null;
+        }
+        mSpoolQueued.clear();
     }
 
-    private void startAutoConnect() {
-        if (isAutoConnecting) return;
-        isAutoConnecting = true;
-
-        timer = new Timer();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                connectUSBPrinter();
+    /**
+     * 打开本设备的持久化队列：主打印机按 vendorId/productId 分目录，
+     * 连接池中的打印机按设备标识（序列号或总线号）区分，重新插拔后仍是同一个目录
+     */
+    private void openSpool() {
+        File root = new File(mContext.getFilesDir(), SPOOL_DIR);
+        File directory;
+        if (mIdentity != null) {
+            directory = new File(root, mIdentity.getKey());
+            // 旧版本按设备名中的数字分目录，首次打开时迁移过来
+            File legacy = new File(root, String.format(Locale.US, "%04x_%04x_%s", mVendorId, mProductId,
+                    mDeviceName.replaceAll("[^0-9]", "")));
+            if (!directory.exists() && legacy.isDirectory() && !legacy.renameTo(directory)) {
+                Log.w(TAG, "迁移打印队列失败：" + legacy);
             }
-        }, 100, 2000);
+        } else {
+            directory = new File(root, String.format(Locale.US, "%04x_%04x", mVendorId, mProductId));
+        }
+        PrintSpool spool = mSpool;
+        if (spool != null && spool.getDirectory().equals(directory)) {
+            return;
+        }
+        if (spool != null) {
+            spool.close();
+            mSpoolQueued.clear();
+        }
+        try {
+            mSpool = new PrintSpool(directory);
+        } catch (IOException e) {
+            Log.e(TAG, "打开打印队列失败：" + directory, e);
+            mSpool = null;
+        }
+    }
+
+    private void startAutoConnect() {
+        if (mHotplugThread == null) {
+            mHotplugThread = new HandlerThread(mDeviceName != null ? "fuse-usb-hotplug-" + mDeviceName : "fuse-usb-hotplug");
+            mHotplugThread.start();
+            mHotplugHandler = new Handler(mHotplugThread.getLooper());
+            mConnection = new ConnectionStateMachine(mConnectionDriver);
+            registerUSBStateReceiver();
+        }
+        // 已在运行时按新的 vendorId/productId 立即重连
+        mHotplugHandler.post(() -> mConnection.start(SystemClock.elapsedRealtime()));
     }
 
     private void stopAutoConnect() {
-        isAutoConnecting = false;
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+        if (mHotplugThread == null) {
+            return;
         }
+        unRegisterUSBStateReceiver();
+        ConnectionStateMachine connection = mConnection;
+        mHotplugHandler.post(connection::stop);
+        mHotplugThread.quitSafely();
+        mHotplugThread = null;
+        mHotplugHandler = null;
     }
 
     /**
-     * 尝试连接USB打印机
+     * 自动连接的唤醒统计，未初始化时返回空表
      */
-    private void connectUSBPrinter() {
-        Log.i(TAG, "检查连接的USBPrinter...");
-        if (usbUtil.isConnected()) {
-            mHandler.obtainMessage(USB_STATE_CHANGED, true).sendToTarget();
-            return;
+    public Map<String, Object> getConnectionStats() {
+        Handler handler = mHotplugHandler;
+        ConnectionStateMachine connection = mConnection;
+        if (handler == null || connection == null) {
+            return Collections.emptyMap();
+        }
+        // 状态机只在热插拔线程上访问
+        FutureTask<Map<String, Object>> task =
+                new FutureTask<>(() -> connection.getStats(SystemClock.elapsedRealtime()));
+        handler.post(task);
+        try {
+            return task.get(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            Log.w(TAG, "获取连接统计失败", e);
+            return Collections.emptyMap();
         }
+    }
 
-        // 查找设备
-        UsbDevice mUsbDevice = usbUtil.findUsbDevice(mVendorId, mProductId);
-        if (mUsbDevice == null) {
-            Log.w(TAG, "未找到匹配的USB设备:VendorID=" + mVendorId + ", ProductID=" + mProductId);
-            mHandler.obtainMessage(USB_STATE_CHANGED, false).sendToTarget();
-            return;
+    private boolean isTargetDevice(UsbDevice device) {
+        if (mIdentity != null) {
+            return mIdentity.matches(device);
+        }
+        return device.getVendorId() == mVendorId && device.getProductId() == mProductId;
+    }
+
+    /**
+     * 连接池中的打印机重新插入后设备名变了，切换到新设备名并通知连接池
+     * @return 新设备名已被其他打印机占用时返回false
+     */
+    private boolean retarget(UsbDevice device) {
+        String oldName = mDeviceName;
+        String newName = device.getDeviceName();
+        if (newName.equals(oldName)) {
+            return true;
+        }
+        DeviceNameListener listener = mDeviceNameListener;
+        if (listener != null && !listener.onDeviceNameChanged(this, oldName, newName)) {
+            return false;
+        }
+        Log.i(TAG, "打印机重新插入，设备名 " + oldName + " -> " + newName);
+        mDeviceName = newName;
+        return true;
+    }
+
+    private UsbDevice findTargetDevice() {
+        if (mIdentity != null) {
+            UsbDevice device = usbUtil.findUsbDeviceByName(mDeviceName);
+            if (device != null && isTargetDevice(device)) {
+                return device;
+            }
+            // 没有收到插入广播（接收器注册前插回）时在这里找回
+            for (UsbDevice candidate : usbUtil.getDeviceIndex().findAll(mVendorId, mProductId)) {
+                if (isTargetDevice(candidate) && retarget(candidate)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+        if (mExcludedDevices.isEmpty()) {
+            return usbUtil.findUsbDevice(mVendorId, mProductId);
+        }
+        for (UsbDevice device : usbUtil.getDeviceIndex().findAll(mVendorId, mProductId)) {
+            if (!mExcludedDevices.contains(device.getDeviceName())) {
+                return device;
+            }
         }
+        return null;
+    }
+
+    Map<String, LabelTemplate> getTemplates() {
+        return mTemplates;
+    }
 
-        // 请求权限或初始化
-        if (!usbUtil.initUsbDevice(mVendorId, mProductId)) {
-            // 需要请求权限
-            Log.i(TAG, "请求USB权限...");
+    void setExcludedDevices(Set<String> deviceNames) {
+        this.mExcludedDevices = deviceNames;
+    }
+
+    // 状态机的设备操作，都在热插拔线程上调用
+    private final ConnectionStateMachine.Driver mConnectionDriver = new ConnectionStateMachine.Driver() {
+        private final Runnable mRetry = () -> mConnection.onRetry();
 
-            String action = USBUtil.getInstance(mContext).getPermissionAction();
-            Intent intent = new Intent(action);
+        @Override
+        public boolean isDevicePresent() {
+            return findTargetDevice() != null;
+        }
+
+        @Override
+        public boolean hasPermission() {
+            UsbDevice device = findTargetDevice();
+            return device != null && usbUtil.hasPermission(device);
+        }
+
+        @Override
+        public void requestPermission() {
+            UsbDevice device = findTargetDevice();
+            if (device == null) {
+                return;
+            }
+            Intent intent = new Intent(usbUtil.getPermissionAction());
             intent.setPackage(mContext.getPackageName()); // 显式 Intent
 
             PendingIntent pendingIntent;
@@ -175,55 +493,108 @@ public class USBCommunicationPlugin {
                 // Android 12 以下仍可用 MUTABLE
                 pendingIntent = PendingIntent.getBroadcast(mContext, 0, intent, PendingIntent.FLAG_MUTABLE);
             }
-            ((UsbManager) mContext.getSystemService(Context.USB_SERVICE)).requestPermission(mUsbDevice, pendingIntent);
-        } else {
-            Log.i(TAG, "USB设备已连接");
-            mHandler.obtainMessage(USB_STATE_CHANGED, true).sendToTarget();
+            ((UsbManager) mContext.getSystemService(Context.USB_SERVICE)).requestPermission(device, pendingIntent);
+        }
+
+        @Override
+        public boolean open() {
+            UsbDevice device = findTargetDevice();
+            return device != null && usbUtil.initUsbDevice(device);
         }
-    }
 
-    // 广播接收器
+        @Override
+        public void close() {
+            usbUtil.close();
+            mStoredTemplates.clear();
+        }
+
+        @Override
+        public void scheduleRetry(long delayMs) {
+            Handler handler = mHotplugHandler;
+            if (handler != null) {
+                handler.removeCallbacks(mRetry);
+                handler.postDelayed(mRetry, delayMs);
+            }
+        }
+
+        @Override
+        public void cancelRetry() {
+            Handler handler = mHotplugHandler;
+            if (handler != null) {
+                handler.removeCallbacks(mRetry);
+            }
+        }
+
+        @Override
+        public void onConnectionChanged(boolean connected) {
+            mHandler.obtainMessage(USB_STATE_CHANGED, connected).sendToTarget();
+            if (connected) {
+                StatusMonitor monitor = mStatusMonitor;
+                if (monitor != null) {
+                    monitor.reset();
+                }
+                mConnectionGeneration.incrementAndGet();
+                resumeSpool();
+            }
+        }
+    };
+
+    // 广播接收器，在热插拔线程上回调
     private final BroadcastReceiver mUsbReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
             if (action == null) return;
-            Log.i(TAG, "接收到Action:"+action);
             UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+            if (usbUtil.getPermissionAction().equals(action)) {
+                // Android 12+ 的 PendingIntent 是 IMMUTABLE，系统无法填入设备和授权结果，
+                // 没有附加数据时按目标设备处理，状态机会重新检查 hasPermission()
+                Log.i(TAG, "接收到权限结果, deviceName=" + (device != null ? device.getDeviceName() : "(无)"));
+                if (device == null || isTargetDevice(device)) {
+                    mConnection.onPermissionResult(
+                            intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false));
+                }
+                return;
+            }
             if (device == null) return;
+            Log.i(TAG, "接收到Action:" + action + ", deviceName=" + device.getDeviceName());
 
-            if (USBUtil.getInstance(context).getPermissionAction().equals(action)) {
-                boolean granted = intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false);
-                if (granted) {
-                    Log.i(TAG, "USB权限已授予，尝试初始化");
-                    connectUSBPrinter(); // 重新尝试连接
-                } else {
-                    Log.e(TAG, "用户拒绝了USB权限");
-                }
-            } else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
-                if (mUSBStateListener != null) {
-                    mUSBStateListener.onUSBDeviceDetached();
-                    mHandler.obtainMessage(USB_STATE_CHANGED, false).sendToTarget();
+            if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
+                // 先更新设备索引，监听者收到事件时设备列表已是最新
+                usbUtil.getDeviceIndex().onDetached(device);
+                mHandler.sendEmptyMessage(USB_DEVICE_DETACHED);
+                // 只处理当前打开的设备，其他设备拔出不影响连接
+                UsbDevice current = usbUtil.getUsbDevice();
+                boolean ours = current != null
+                        ? current.getDeviceName().equals(device.getDeviceName())
+                        : isTargetDevice(device);
+                if (ours) {
+                    mConnection.onDetached();
                 }
-                usbUtil.close();
             } else if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(action)) {
-                if (mUSBStateListener != null) {
-                    mUSBStateListener.onUSBDeviceAttached();
+                usbUtil.getDeviceIndex().onAttached(device);
+                mHandler.sendEmptyMessage(USB_DEVICE_ATTACHED);
+                if (isTargetDevice(device) && (mIdentity == null || retarget(device))) {
+                    mConnection.onAttached();
                 }
-                connectUSBPrinter();
             }
         }
     };
 
     private void registerUSBStateReceiver() {
         IntentFilter filter = new IntentFilter();
-        filter.addAction(USBUtil.getInstance(mContext).getPermissionAction());
+        filter.addAction(usbUtil.getPermissionAction());
         filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
         filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            mContext.registerReceiver(mUsbReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+            mContext.registerReceiver(mUsbReceiver, filter, null, mHotplugHandler, Context.RECEIVER_NOT_EXPORTED);
         } else {
-            mContext.registerReceiver(mUsbReceiver, filter);
+            mContext.registerReceiver(mUsbReceiver, filter, null, mHotplugHandler);
+        }
+        if (!mReceiverRegistered) {
+            mReceiverRegistered = true;
+            // 先注册再通知索引：没有接收器期间的插拔在下次查找时重新枚举补上
+            usbUtil.getDeviceIndex().onReceiverRegistered();
         }
     }
 
@@ -233,124 +604,477 @@ public class USBCommunicationPlugin {
         } catch (Exception e) {
             Log.e(TAG, "unregisterReceiver failed", e);
         }
+        if (mReceiverRegistered) {
+            mReceiverRegistered = false;
+            usbUtil.getDeviceIndex().onReceiverUnregistered();
+        }
     }
 
-    private void sendCommand(String cmd) {
-        usbUtil.sendData(cmd.getBytes(StandardCharsets.UTF_8));
+    private boolean sendCommand(String cmd) {
+        return mWriter.write(cmd.getBytes(StandardCharsets.UTF_8));
     }
 
-    // 打印文本
-    public boolean doPrintText(String text) {
+    /**
+     * 提交打印任务到调度器
+     * 任务结束后先通过 onJobFinished 报告本任务的发送统计，再触发 callback
+     * @return 是否已入队；未连接或队列已满时返回false，此时不会触发回调
+     */
+    private boolean submitJob(String what, PrintJobScheduler.PrintJob job, PrintJobScheduler.JobCallback callback) {
         if (!usbUtil.isConnected()) {
-            Log.e(TAG, "USB未连接，无法打印");
+            Log.e(TAG, "USB未连接，无法" + what);
             return false;
         }
-        new Thread(() -> {
+        UsbBulkWriter writer = mWriter;
+        // 调度线程上写入、回调里读取：{字节数, 传输次数, 耗时ms, 错误码}
+        long[] stats = new long[4];
+        PrintJobScheduler.PrintJob framed = () -> {
+            long start = SystemClock.elapsedRealtime();
+            boolean success;
             try {
-                Log.i(TAG, "打印内容:"+text);
-                byte[] init = new byte[] { 0x1B, 0x40}; // 初始化
-                byte[] data = text.getBytes(StandardCharsets.UTF_8);
-                usbUtil.sendData(init);
-                usbUtil.sendData(data);
-
-//                File file = new File(mContext.getFilesDir(), "123.bin");
-//                byte[] data = null;
-//                try {
-//                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-//                        data = Files.readAllBytes(file.toPath());
-//                    }else{
-//                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-//                        try (InputStream is = new FileInputStream(file)) {
-//                            byte[] buffer = new byte[1024];
-//                            int read;
-//                            while ((read = is.read(buffer)) != -1) {
-//                                baos.write(buffer, 0, read);
-//                            }
-//                        }
-//                        data = baos.toByteArray();
-//                    }
-//                    if (data != null && data.length > 0) {
-//                        // 截取最后 200 字节，如果不足 200，则从头开始
-//                        int start = Math.max(0, data.length - 200);
-//                        byte[] tail = Arrays.copyOfRange(data, start, data.length);
-//                        // 打印十六进制
-//                        StringBuilder sb = new StringBuilder();
-//                        for (byte b : tail) {
-//                            sb.append(String.format("%02X ", b));
-//                        }
-//                        Log.i("UsbPrinter", "123.bin 最后 200 字节: " + sb.toString());
-//                    }
-//                } catch (IOException e) {
-//                    e.printStackTrace();
-//                }
-//                usbUtil.sendData(data);
-
-                Log.i(TAG, "打印完成");
+                success = job.run();
             } catch (Exception e) {
-                Log.e(TAG, "打印异常", e);
+                writer.discardJob();
+                recordJobStats(stats, writer, start, JobReport.ERROR_EXCEPTION);
+                throw e;
+            }
+            // 任务边界：发出缓冲区剩余数据
+            if (!writer.endJob()) {
+                // 传输中断时打印机上存储的模板是否完整未知，下次重新下载
+                mStoredTemplates.clear();
+                recordJobStats(stats, writer, start, JobReport.ERROR_TRANSFER);
+                return false;
+            }
+            recordJobStats(stats, writer, start, success ? JobReport.ERROR_NONE : JobReport.ERROR_JOB);
+            return success;
+        };
+        PrintJobScheduler.JobCallback reporting = new PrintJobScheduler.JobCallback() {
+            @Override
+            public void onJobQueued(long jobId) {
+                if (callback != null) {
+                    callback.onJobQueued(jobId);
+                }
             }
-        }).start();
-        return true; 
+
+            @Override
+            public void onJobFinished(long jobId, boolean success, Exception error) {
+                int errorCode = error instanceof CancellationException
+                        ? JobReport.ERROR_CANCELLED : (int) stats[3];
+                JobReport report = new JobReport(jobId, success, stats[0], (int) stats[1], stats[2], errorCode);
+                if (!success) {
+                    Log.w(TAG, what + report);
+                }
+                mHandler.obtainMessage(JOB_FINISHED, report).sendToTarget();
+                if (callback != null) {
+                    callback.onJobFinished(jobId, success, error);
+                }
+            }
+        };
+        if (mPrintScheduler == null || mPrintScheduler.submit(framed, reporting) == null) {
+            Log.e(TAG, "打印队列不可用，无法" + what);
+            return false;
+        }
+        return true;
+    }
+
+    private static void recordJobStats(long[] stats, UsbBulkWriter writer, long start, int errorCode) {
+        stats[0] = writer.getLastJobBytes();
+        stats[1] = writer.getLastJobTransfers();
+        stats[2] = SystemClock.elapsedRealtime() - start;
+        stats[3] = errorCode;
+    }
+
+    // 打印文本
+    public boolean doPrintText(String text) {
+        return doPrintText(text, null);
+    }
+
+    public boolean doPrintText(String text, PrintJobScheduler.JobCallback callback) {
+        return submitJob("打印", () -> {
+            Log.i(TAG, "打印内容:"+text);
+            byte[] init = new byte[] { 0x1B, 0x40}; // 初始化
+            byte[] data = text.getBytes(StandardCharsets.UTF_8);
+            boolean sent = mWriter.write(init);
+            if (data.length > 0) {
+                sent = mWriter.write(data);
+            }
+
+            Log.i(TAG, "打印完成");
+            return sent;
+        }, callback);
     }
 
     // 打印扩展文本
     public boolean doPrintTextEx(byte[] data) {
-        if (!usbUtil.isConnected()) {
-            Log.e(TAG, "USB未连接，无法打印");
+        return doPrintTextEx(data, null);
+    }
+
+    public boolean doPrintTextEx(byte[] data, PrintJobScheduler.JobCallback callback) {
+        return doPrintTextEx(data, 0, data.length, callback);
+    }
+
+    /**
+     * 打印扩展文本，data 可以是二进制任务帧所在数组的一段，不复制
+     */
+    public boolean doPrintTextEx(byte[] data, int offset, int length, PrintJobScheduler.JobCallback callback) {
+        return submitJob("打印", () -> {
+            byte[] init = new byte[] {0x1B, 0x40}; // 标准初始化
+            boolean sent = mWriter.write(init);
+            if (length > 0) {
+                sent = mWriter.write(data, offset, length);
+            }
+            Log.i(TAG, "打印完成");
+            return sent;
+        }, callback);
+    }
+
+    /**
+     * 原样发送数据，不附加任何指令
+     */
+    public boolean doPrintRaw(byte[] data, int offset, int length, PrintJobScheduler.JobCallback callback) {
+        return submitJob("发送数据", () -> mWriter.write(data, offset, length), callback);
+    }
+
+    /**
+     * 原样发送文件内容，path 为相对路径时相对于应用的 files 目录。
+     * 文件按 FILE_MAP_WINDOW_BYTES 分段映射（FileChannel.map），经写入器的复用缓冲区发送，
+     * 整个文件不进入Java堆；通过 onFileProgress 报告进度（最多每 BATCH_PROGRESS_INTERVAL_MS 一次）
+     * @return 文件不存在或为空时返回false
+     */
+    public boolean doPrintFile(String path, PrintJobScheduler.JobCallback callback) {
+        File file = new File(path);
+        if (!file.isAbsolute() && mContext != null) {
+            file = new File(mContext.getFilesDir(), path);
+        }
+        if (!file.isFile() || file.length() == 0) {
+            Log.e(TAG, "打印文件不存在或为空：" + file);
             return false;
         }
-        new Thread(() -> {
-            try {
-                byte[] init = new byte[] {0x1B, 0x40}; // 标准初始化
-                usbUtil.sendData(init);
-                usbUtil.sendData(data);
-                Log.i(TAG, "打印完成");
-            } catch (Exception e) {
-                Log.e(TAG, "打印异常", e);
-            }
-        }).start();
-        return true; 
-    }
-
-    // 绘图方法
-    public void tspl_drawGraphic(int start_x, int start_y, Bitmap bmp) {
-        int bmp_size_x = bmp.getWidth();
-        int bmp_size_y = bmp.getHeight();
-        int byteWidth = (bmp_size_x - 1) / 8 + 1;
-        if (byteWidth <= 0 || bmp_size_y <= 0) return;
-
-        int unitHeight = 2048 / byteWidth;
-        int unitCount = (bmp_size_y - 1) / unitHeight + 1;
-        int startY, endY;
-        byte[] dataByte;
-        int color, A, R, G, B;
-
-        for (int n = 0; n < unitCount; n++) {
-            startY = n * unitHeight;
-            endY = Math.min((startY + unitHeight), bmp_size_y);
-            int byteLen = (endY - startY) * byteWidth;
-            dataByte = new byte[byteLen];
-
-            for (int y = startY; y < endY; y++) {
-                for (int x = 0; x < bmp_size_x; x++) {
-                    color = bmp.getPixel(x, y);
-                    A = color >>> 24;
-                    R = color >>> 16 & 0xFF;
-                    G = color >>> 8 & 0xFF;
-                    B = color & 0xFF;
-                    if (A == 0 || R * 0.3 + G * 0.59 + B * 0.11 > 127) {
-                        dataByte[(y - startY) * byteWidth + x / 8] |= (byte) (0x80 >> (x % 8));
+        File target = file;
+        long fileId = mFileIds.incrementAndGet();
+        return submitJob("打印文件", () -> {
+            long start = SystemClock.elapsedRealtime();
+            try (FileChannel channel = new RandomAccessFile(target, "r").getChannel()) {
+                long total = channel.size();
+                long sent = 0;
+                long lastReport = start;
+                postFileProgress(fileId, path, 0, total);
+                while (sent < total) {
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, sent,
+                            Math.min(FILE_MAP_WINDOW_BYTES, total - sent));
+                    while (window.hasRemaining()) {
+                        // 分片写入，片间检查进度间隔
+                        window.limit(Math.min(window.position() + FILE_SLICE_BYTES, window.capacity()));
+                        int n = window.remaining();
+                        if (!mWriter.write(window)) {
+                            Log.e(TAG, "打印文件中断，已发送 " + sent + "/" + total);
+                            postFileProgress(fileId, path, sent, total);
+                            return false;
+                        }
+                        window.limit(window.capacity());
+                        sent += n;
+                        long now = SystemClock.elapsedRealtime();
+                        if (now - lastReport >= BATCH_PROGRESS_INTERVAL_MS && sent < total) {
+                            lastReport = now;
+                            postFileProgress(fileId, path, sent, total);
+                        }
                     }
                 }
+                postFileProgress(fileId, path, sent, total);
+                Log.i(TAG, "打印文件 " + target.getName() + "，" + total + " 字节，耗时 "
+                        + (SystemClock.elapsedRealtime() - start) + "ms");
+                return true;
+            }
+        }, callback);
+    }
+
+    private void postFileProgress(long fileId, String path, long sent, long total) {
+        mHandler.obtainMessage(FILE_PROGRESS, new Object[]{fileId, path, sent, total}).sendToTarget();
+    }
+
+    /**
+     * 把任务写入持久化队列后再发送：units 为若干单元（通常一个单元是一张完整标签的指令），
+     * 每个单元送达后记录检查点。未连接时任务留在队列中，连接后自动发送；
+     * 进程被杀或拔线后，重新连接时从第一个未送达的单元继续。进度通过 onSpoolProgress 报告
+     * @return 队列中的任务ID，写入队列失败时返回-1
+     */
+    public long doSpoolPrint(List<byte[]> units) {
+        PrintSpool spool = mSpool;
+        if (spool == null || units.isEmpty()) {
+            return -1;
+        }
+        long spoolId;
+        try {
+            spoolId = spool.append(units);
+        } catch (IOException e) {
+            Log.e(TAG, "写入打印队列失败", e);
+            return -1;
+        }
+        if (usbUtil.isConnected()) {
+            submitSpoolJob(spool, spool.get(spoolId));
+        }
+        return spoolId;
+    }
+
+    /**
+     * 持久化队列中未完成的任务：spoolId/printed/total/queued
+     */
+    public List<Map<String, Object>> getSpooledJobs() {
+        PrintSpool spool = mSpool;
+        List<Map<String, Object>> jobs = new ArrayList<>();
+        if (spool == null) {
+            return jobs;
+        }
+        for (PrintSpool.Entry entry : spool.getPending()) {
+            Map<String, Object> job = new HashMap<>();
+            job.put("spoolId", entry.getId());
+            job.put("printed", entry.getPrinted());
+            job.put("total", entry.getTotal());
+            job.put("queued", mSpoolQueued.contains(entry.getId()));
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    /**
+     * 从持久化队列删除任务，正在发送时在当前单元之后停止
+     */
+    public boolean cancelSpooledJob(long spoolId) {
+        PrintSpool spool = mSpool;
+        try {
+            return spool != null && spool.remove(spoolId);
+        } catch (IOException e) {
+            Log.e(TAG, "删除打印队列任务失败", e);
+            return false;
+        }
+    }
+
+    // 连接后提交队列中所有未完成、未提交的任务
+    private void resumeSpool() {
+        PrintSpool spool = mSpool;
+        if (spool == null) {
+            return;
+        }
+        for (PrintSpool.Entry entry : spool.getPending()) {
+            submitSpoolJob(spool, entry);
+        }
+    }
+
+    private void submitSpoolJob(PrintSpool spool, PrintSpool.Entry entry) {
+        if (entry == null || !mSpoolQueued.add(entry.getId())) {
+            return;
+        }
+        long generation = mConnectionGeneration.get();
+        if (entry.getPrinted() > 0) {
+            Log.i(TAG, "续打任务 " + entry.getId() + "，从第 " + (entry.getPrinted() + 1) + "/" + entry.getTotal() + " 个单元开始");
+        }
+        boolean queued = submitJob("打印队列任务", () -> {
+            long lastReport = SystemClock.elapsedRealtime();
+            for (int i = entry.getPrinted(); i < entry.getTotal(); i++) {
+                if (spool.get(entry.getId()) == null) {
+                    Log.i(TAG, "打印队列任务 " + entry.getId() + " 已删除");
+                    return false;
+                }
+                byte[] unit = spool.readUnit(entry, i);
+                // 等到单元确实送达再记录检查点
+                if (!mWriter.write(unit) || !mWriter.flush()) {
+                    postSpoolProgress(entry.getId(), i, entry.getTotal());
+                    return false;
+                }
+                spool.checkpoint(entry.getId(), i + 1);
+                long now = SystemClock.elapsedRealtime();
+                if (now - lastReport >= BATCH_PROGRESS_INTERVAL_MS || i + 1 == entry.getTotal()) {
+                    lastReport = now;
+                    postSpoolProgress(entry.getId(), i + 1, entry.getTotal());
+                }
+            }
+            return true;
+        }, (jobId, success, error) -> {
+            mSpoolQueued.remove(entry.getId());
+            // 旧连接上的任务还在收尾时打印机已重新连接，resumeSpool 跳过了它，这里补交；
+            // 只在连接代数变化时补交，同一连接上反复失败不会循环提交
+            if (!success && mConnectionGeneration.get() != generation && mSpool == spool
+                    && usbUtil.isConnected()) {
+                submitSpoolJob(spool, spool.get(entry.getId()));
+            }
+        });
+        if (!queued) {
+            mSpoolQueued.remove(entry.getId());
+        }
+    }
+
+    private void postSpoolProgress(long spoolId, int printed, int total) {
+        mHandler.obtainMessage(SPOOL_PROGRESS, new long[]{spoolId, printed, total}).sendToTarget();
+    }
+
+    /**
+     * 开始一个分块上传的原始指令任务：任务立即入队，轮到它时边接收边发送，
+     * 之后用 writeRawStream 送入分块、endRawStream 结束
+     * @return 流ID，未入队时返回-1
+     */
+    public long beginRawStream() {
+        RawStreamJob raw = new RawStreamJob(new RawCommandStream(sRawStreamIds.incrementAndGet()));
+        mRawStreams.put(raw.stream.getId(), raw);
+        boolean queued = submitJob("发送指令流", () -> {
+            boolean sent = true;
+            byte[] chunk;
+            while ((chunk = raw.stream.next()) != null) {
+                sent = mWriter.write(chunk);
+                if (!sent) {
+                    break;
+                }
             }
+            return sent;
+        }, raw);
+        if (!queued) {
+            mRawStreams.remove(raw.stream.getId());
+            return -1;
+        }
+        return raw.stream.getId();
+    }
 
-            int curUnitHeight = n == unitCount - 1 ? (bmp_size_y - (n * unitHeight)) : unitHeight;
-            String cmdHeader = "BITMAP " + start_x + "," + (start_y + startY) + "," + byteWidth + "," + curUnitHeight + ",0,";
-            usbUtil.sendData(cmdHeader.getBytes(StandardCharsets.UTF_8));
-            usbUtil.sendData(dataByte);
+    /**
+     * 送入一个分块，缓冲满时立即返回 OFFER_FULL：方法通道是串行的 TaskQueue，
+     * 在这里等待会挡住其他所有方法，由 Dart 端退避后重试
+     * @return RawCommandStream.OFFER_ACCEPTED / OFFER_FULL（稍后重试） / OFFER_CLOSED（流不存在或任务已结束）
+     */
+    public int writeRawStream(long streamId, byte[] data) {
+        RawStreamJob raw = mRawStreams.get(streamId);
+        if (raw == null) {
+            return RawCommandStream.OFFER_CLOSED;
+        }
+        try {
+            return raw.stream.offer(data, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RawCommandStream.OFFER_FULL;
         }
     }
 
+    /**
+     * 结束指令流，abort 为true时放弃未发送的数据；任务结束后触发 callback
+     * @return 流不存在时返回false，此时不会触发回调
+     */
+    public boolean endRawStream(long streamId, boolean abort, PrintJobScheduler.JobCallback callback) {
+        RawStreamJob raw = mRawStreams.get(streamId);
+        if (raw == null) {
+            return false;
+        }
+        if (abort) {
+            raw.stream.close();
+        } else {
+            raw.stream.end();
+        }
+        raw.onEnd(callback);
+        return true;
+    }
+
+    /**
+     * 指令流任务：任务结束时关闭流，并把结果交给 endRawStream 的回调（结束调用可能早于或晚于任务完成）
+     */
+    private final class RawStreamJob implements PrintJobScheduler.JobCallback {
+        final RawCommandStream stream;
+        private boolean mFinished;
+        private long mJobId;
+        private boolean mSuccess;
+        private Exception mError;
+        private PrintJobScheduler.JobCallback mEndCallback;
+
+        RawStreamJob(RawCommandStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void onJobFinished(long jobId, boolean success, Exception error) {
+            // 发送端之后的 offer 立即返回 OFFER_CLOSED
+            stream.close();
+            mRawStreams.remove(stream.getId());
+            PrintJobScheduler.JobCallback callback;
+            synchronized (this) {
+                mFinished = true;
+                mJobId = jobId;
+                mSuccess = success;
+                mError = error;
+                callback = mEndCallback;
+            }
+            if (callback != null) {
+                callback.onJobFinished(jobId, success, error);
+            }
+        }
+
+        void onEnd(PrintJobScheduler.JobCallback callback) {
+            synchronized (this) {
+                if (!mFinished) {
+                    mEndCallback = callback;
+                    return;
+                }
+            }
+            if (callback != null) {
+                callback.onJobFinished(mJobId, mSuccess, mError);
+            }
+        }
+    }
+
+    // 绘图方法：光栅化与发送分带流水线进行
+    public boolean tspl_drawGraphic(int start_x, int start_y, Bitmap bmp) {
+        // 调用方可能在已有内容上覆盖绘制，白色行也要发送
+        return drawGraphic(start_x, start_y, bmp, BitmapRasterizer.DEFAULT_THRESHOLD,
+                LabelImageEncoder.DitherMode.THRESHOLD, mBitmapCompression, false, null);
+    }
+
+    /**
+     * 绘制图片，capture 不为空时同时记录发出的完整 BITMAP 指令用于缓存
+     * afterCls 为 true 表示目标区域刚清空，全白行可以不发送
+     * dither 为二值化方式，阈值以外的方式在光栅化线程上逐带抖动
+     * compressed 为本张图片的编码方式，整张图片不随中途切换而变化
+     */
+    private boolean drawGraphic(int start_x, int start_y, Bitmap bmp, int threshold,
+                                LabelImageEncoder.DitherMode dither, boolean compressed, boolean afterCls,
+                                ByteArrayOutputStream capture) {
+        BitmapBandEncoder encoder = mBandEncoder;
+        encoder.setCompressionEnabled(compressed);
+        encoder.resetStats();
+        int width = bmp.getWidth();
+        try {
+            boolean success = mBandPipeline.run(bmp, threshold, dither, (y, rows, byteWidth, data, length) -> {
+                if (!encoder.encode(start_x, start_y + y, width, rows, data, afterCls)) {
+                    return true;
+                }
+                if (capture != null) {
+                    capture.write(encoder.getHeader(), 0, encoder.getHeaderLength());
+                    capture.write(encoder.getPayload(), encoder.getPayloadOffset(), encoder.getPayloadLength());
+                }
+                mWriter.write(encoder.getHeader(), 0, encoder.getHeaderLength());
+                return mWriter.write(encoder.getPayload(), encoder.getPayloadOffset(), encoder.getPayloadLength());
+            });
+            Log.i(TAG, "图片点阵 " + encoder.getRawBytes() + " 字节，实际发送 " + encoder.getSentBytes()
+                    + " 字节（原样" + encoder.getRawBands() + "带，压缩" + encoder.getCompressedBands()
+                    + "带，跳过" + encoder.getSkippedBands() + "带）");
+            return success;
+        } catch (Exception e) {
+            Log.e(TAG, "绘制图片异常", e);
+            return false;
+        }
+    }
+
+    /**
+     * 是否使用打印机端 BITMAP 压缩（mode 3），需固件支持，默认关闭
+     */
+    public void setBitmapCompression(boolean enabled) {
+        // 编码器只在调度线程上切换；缓存键带编码方式，进行中的任务写入的旧指令不会被新方式命中
+        if (mBitmapCompression != enabled) {
+            mBitmapCompression = enabled;
+            // 旧编码方式的指令不会再用到，提前释放
+            mImageCache.clear();
+        }
+    }
+
+    /**
+     * 设置图片分带高度（行），0 表示自动
+     */
+    public void setImageBandHeight(int rows) {
+        mBandPipeline.setBandHeight(rows);
+    }
+
     private Bitmap getImageFromAssetsFile(String fileName) {
         try (InputStream is = mContext.getAssets().open(fileName)) {
             return BitmapFactory.decodeStream(is);
@@ -361,95 +1085,256 @@ public class USBCommunicationPlugin {
     }
     // 打印条码
     public boolean doPrintBarcode(String code, String type, int height) {
-        if (!usbUtil.isConnected()) {
-            Log.e(TAG, "USB未连接，无法打印条码");
-            return false;
-        }
-        try {
+        return doPrintBarcode(code, type, height, null);
+    }
+
+    public boolean doPrintBarcode(String code, String type, int height, PrintJobScheduler.JobCallback callback) {
+        return submitJob("打印条码", () -> {
             // 这里只实现TSC模式下的常见条码命令
             String cmd = "BARCODE 50,50,\"" + type + "\",80,1,0,2,2,\"" + code + "\"\n";
-            sendCommand("CLS\n");
-            sendCommand(cmd);
-            sendCommand("PRINT 1,1\n");
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "打印条码异常", e);
-            return false;
-        }
+            return sendCommand("CLS\n") && sendCommand(cmd) && sendCommand("PRINT 1,1\n");
+        }, callback);
     }
 
     // 打印二维码
     public boolean doPrintQRCode(String content, int size) {
-        if (!usbUtil.isConnected()) {
-            Log.e(TAG, "USB未连接，无法打印二维码");
-            return false;
-        }
-        try {
+        return doPrintQRCode(content, size, null);
+    }
+
+    public boolean doPrintQRCode(String content, int size, PrintJobScheduler.JobCallback callback) {
+        return submitJob("打印二维码", () -> {
             String cmd = "QRCODE 50,50,H," + size + ",A,0,\"" + content + "\"\n";
-            sendCommand("CLS\n");
-            sendCommand(cmd);
-            sendCommand("PRINT 1,1\n");
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "打印二维码异常", e);
-            return false;
-        }
+            return sendCommand("CLS\n") && sendCommand(cmd) && sendCommand("PRINT 1,1\n");
+        }, callback);
     }
 
     // 打印图片（假设imagePath为assets路径）
     public boolean doPrintImage(String imagePath) {
-        if (!usbUtil.isConnected()) {
-            Log.e(TAG, "USB未连接，无法打印图片");
-            return false;
-        }
-        try {
+        return doPrintImage(imagePath, null);
+    }
+
+    public boolean doPrintImage(String imagePath, PrintJobScheduler.JobCallback callback) {
+        return doPrintImage(imagePath, 50, 50, 0, 0, BitmapRasterizer.DEFAULT_THRESHOLD, callback);
+    }
+
+    public boolean doPrintImage(String imagePath, int x, int y, int width, int height, int threshold,
+                                PrintJobScheduler.JobCallback callback) {
+        return doPrintImage(imagePath, x, y, width, height, threshold, LabelImageEncoder.DitherMode.THRESHOLD,
+                callback);
+    }
+
+    /**
+     * 打印图片
+     * x/y 打印位置
+     * width/height 目标尺寸，0 表示使用原图尺寸
+     * threshold 黑白阈值
+     * dither 二值化方式，照片类图片用误差扩散或有序抖动保留灰阶
+     */
+    public boolean doPrintImage(String imagePath, int x, int y, int width, int height, int threshold,
+                                LabelImageEncoder.DitherMode dither, PrintJobScheduler.JobCallback callback) {
+        return submitJob("打印图片", () -> {
+            boolean compressed = mBitmapCompression;
+            BitmapPayloadCache.Key key = new BitmapPayloadCache.Key(imagePath, x, y, width, height, threshold,
+                    dither, compressed);
+            byte[] payload = mImageCache.get(key);
+            if (payload != null) {
+                // 缓存命中：直接发送光栅化好的 BITMAP 指令
+                return sendCommand("CLS\n") && mWriter.write(payload) && sendCommand("PRINT 1,1\n");
+            }
+
             Bitmap bitmap = getImageFromAssetsFile(imagePath);
             if (bitmap == null) {
                 Log.e(TAG, "图片加载失败: " + imagePath);
                 return false;
             }
-            sendCommand("CLS\n");
-            tspl_drawGraphic(50, 50, bitmap);
-            sendCommand("PRINT 1,1\n");
+            if (width > 0 && height > 0 && (bitmap.getWidth() != width || bitmap.getHeight() != height)) {
+                bitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
+            }
+            // 预估指令大小，放不进缓存的图片不做记录
+            long estimate = (long) ((bitmap.getWidth() + 7) / 8) * bitmap.getHeight() + 4096;
+            ByteArrayOutputStream capture = mImageCache.accepts(estimate)
+                    ? new ByteArrayOutputStream((int) estimate) : null;
+            if (!sendCommand("CLS\n") || !drawGraphic(x, y, bitmap, threshold, dither, compressed, true, capture)
+                    || !sendCommand("PRINT 1,1\n")) {
+                return false;
+            }
+            if (capture != null) {
+                mImageCache.put(key, capture.toByteArray());
+            }
             return true;
-        } catch (Exception e) {
-            Log.e(TAG, "打印图片异常", e);
+        }, callback);
+    }
+
+    /**
+     * 注册标签模板，同名模板会被替换
+     * @return 模板语法是否正确
+     */
+    public boolean registerLabelTemplate(String name, String source) {
+        LabelTemplate template;
+        try {
+            template = LabelTemplate.compile(name, source);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "模板编译失败: " + name, e);
             return false;
         }
+        mTemplates.put(name, template);
+        // 内容可能已变化，打印机上的旧版本不再可用
+        mStoredTemplates.remove(name);
+        Log.i(TAG, "模板已注册: " + name + "，变量 " + template.getVariables() + "，固定部分 "
+                + template.getStaticLength() + " 字节");
+        return true;
     }
 
-    // 切纸（ESCPOS模式常见命令，TSC部分机型支持）
-    public boolean doCutPaper() {
-        if (!usbUtil.isConnected()) {
-            Log.e(TAG, "USB未连接，无法切纸");
+    /**
+     * 按模板打印
+     * values 变量值
+     * copies 份数
+     * stored 为 true 时模板首次使用前 DOWNLOAD 到打印机，之后每张只发送变量和 RUN
+     */
+    public boolean doPrintTemplate(String name, Map<String, ?> values, int copies, boolean stored,
+                                   PrintJobScheduler.JobCallback callback) {
+        LabelTemplate template = mTemplates.get(name);
+        if (template == null) {
+            Log.e(TAG, "模板不存在: " + name);
             return false;
         }
+        return submitJob("打印模板", () -> writeTemplateLabel(template, values, copies, stored), callback);
+    }
+
+    /**
+     * 在调度线程上写入一张模板标签及 PRINT
+     */
+    private boolean writeTemplateLabel(LabelTemplate template, Map<String, ?> values, int copies, boolean stored) {
+        String name = template.getName();
+        TsplWriter tspl = mTspl.reset();
+        boolean download = stored && !mStoredTemplates.contains(name);
+        if (download) {
+            template.writeDownload(tspl);
+        }
+        if (stored) {
+            template.fillStored(tspl, values);
+        } else {
+            template.fill(tspl, values);
+        }
+        tspl.print(Math.max(1, copies), 1);
+        if (!mWriter.write(tspl.buffer(), 0, tspl.size())) {
+            return false;
+        }
+        if (download) {
+            mStoredTemplates.add(name);
+        }
+        return true;
+    }
+
+    /**
+     * 批量打印：整批作为一个任务连续发送，相同的相邻标签合并为 PRINT n，
+     * 发送过程中通过 onBatchProgress 报告进度（最多每 BATCH_PROGRESS_INTERVAL_MS 一次）
+     * specs 标签描述，格式见 {@link BatchLabel}
+     */
+    public boolean doPrintBatch(List<? extends Map<String, ?>> specs, PrintJobScheduler.JobCallback callback) {
+        List<BatchLabel> labels;
         try {
-            // ESCPOS常用切纸命令
-            byte[] cut = new byte[]{0x1D, 0x56, 0x00};
-            usbUtil.sendData(cut);
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "切纸异常", e);
+            labels = BatchLabel.parseBatch(specs);
+            for (BatchLabel label : labels) {
+                if (BatchLabel.TYPE_TEMPLATE.equals(label.getType()) && !mTemplates.containsKey(label.getTemplateName())) {
+                    throw new IllegalArgumentException("模板不存在: " + label.getTemplateName());
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "批量打印参数错误", e);
             return false;
         }
+        long batchId = mBatchIds.incrementAndGet();
+        int total = BatchLabel.totalCopies(labels);
+        return submitJob("批量打印", () -> {
+            long start = SystemClock.elapsedRealtime();
+            long lastReport = start;
+            int printed = 0;
+            postBatchProgress(batchId, 0, total);
+            for (BatchLabel label : labels) {
+                boolean ok;
+                if (BatchLabel.TYPE_TEMPLATE.equals(label.getType())) {
+                    ok = writeTemplateLabel(mTemplates.get(label.getTemplateName()), label.getValues(),
+                            label.getCopies(), label.isStored());
+                } else {
+                    TsplWriter tspl = mTspl.reset();
+                    label.writeBody(tspl);
+                    tspl.print(label.getCopies(), 1);
+                    ok = mWriter.write(tspl.buffer(), 0, tspl.size());
+                }
+                if (!ok) {
+                    Log.e(TAG, "批量打印中断，已发送 " + printed + "/" + total);
+                    postBatchProgress(batchId, printed, total);
+                    return false;
+                }
+                printed += label.getCopies();
+                long now = SystemClock.elapsedRealtime();
+                if (now - lastReport >= BATCH_PROGRESS_INTERVAL_MS && printed < total) {
+                    lastReport = now;
+                    postBatchProgress(batchId, printed, total);
+                }
+            }
+            postBatchProgress(batchId, printed, total);
+            Log.i(TAG, "批量打印 " + total + " 张（" + labels.size() + " 组），耗时 "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+            return true;
+        }, callback);
+    }
+
+    private void postBatchProgress(long batchId, int printed, int total) {
+        mHandler.obtainMessage(BATCH_PROGRESS, new long[]{batchId, printed, total}).sendToTarget();
+    }
+
+    /**
+     * 图片缓存命中/未命中/淘汰计数
+     */
+    public Map<String, Long> getImageCacheStats() {
+        return mImageCache.getStats();
+    }
+
+    /**
+     * 发送流控统计：drainRateBps/windowBytes/transfers/timeouts/pauses/pausedMs
+     */
+    public Map<String, Long> getFlowControlStats() {
+        USBUtil util = usbUtil;
+        return util != null ? util.getFlowStats() : Collections.emptyMap();
+    }
+
+    // 切纸（ESCPOS模式常见命令，TSC部分机型支持）
+    public boolean doCutPaper() {
+        return doCutPaper(null);
+    }
+
+    public boolean doCutPaper(PrintJobScheduler.JobCallback callback) {
+        return submitJob("切纸", () -> {
+            // ESCPOS常用切纸命令
+            byte[] cut = new byte[]{0x1D, 0x56, 0x00};
+            return mWriter.write(cut);
+        }, callback);
     }
 
     // 进纸
     public boolean doFeedPaper(int lines) {
-        if (!usbUtil.isConnected()) {
-            Log.e(TAG, "USB未连接，无法进纸");
-            return false;
-        }
-        try {
+        return doFeedPaper(lines, null);
+    }
+
+    public boolean doFeedPaper(int lines, PrintJobScheduler.JobCallback callback) {
+        return submitJob("进纸", () -> {
             // ESCPOS进纸命令
             byte[] feed = new byte[]{0x1B, 0x64, (byte) lines};
-            usbUtil.sendData(feed);
+            return mWriter.write(feed);
+        }, callback);
+    }
+
+    /**
+     * 切换USB传输模式（阻塞/异步流水线），在调度线程上排队执行，不影响在途任务
+     */
+    public boolean setTransferMode(int mode, int depth) {
+        return submitJob("切换传输模式", () -> {
+            usbUtil.setTransferMode(mode, depth);
+            Log.i(TAG, "传输模式已切换，" + usbUtil.getThroughputReport());
             return true;
-        } catch (Exception e) {
-            Log.e(TAG, "进纸异常", e);
-            return false;
-        }
+        }, null);
     }
 
     // 获取打印机状态（简单实现，返回true表示连接）
@@ -457,44 +1342,63 @@ public class USBCommunicationPlugin {
         return usbUtil.isConnected();
     }
 
+    /**
+     * 最近一次查询到的打印机状态，未查询或打印机不响应时为 PrinterStatus.UNKNOWN
+     */
+    public PrinterStatus getPrinterStatusDetail() {
+        StatusMonitor monitor = mStatusMonitor;
+        return monitor != null ? monitor.getStatus() : PrinterStatus.UNKNOWN;
+    }
+
+    /**
+     * 开关状态轮询；关闭后不再查询状态，也不再暂缓任务
+     * protocol 查询指令协议 "tspl" 或 "escpos"；调用之前不发送任何查询指令
+     */
+    public void setStatusPolling(boolean enabled, String protocol) {
+        StatusMonitor monitor = mStatusMonitor;
+        if (monitor == null || mPrintScheduler == null) {
+            return;
+        }
+        monitor.setProtocol(protocol);
+        mPrintScheduler.setStatusGate(enabled ? monitor : null);
+    }
+
     /**
      * 获取所有连接的USB设备列表
      * @return USB设备列表的JSON字符串
      */
     public String getAllUSBDevices() {
-        StringBuilder jsonBuilder = new StringBuilder();
-        jsonBuilder.append("[");
-        
-        List<UsbDevice> devices = usbUtil.getAllUsbDevices();
-        if (devices != null && !devices.isEmpty()) {
-            for (int i = 0; i < devices.size(); i++) {
-                UsbDevice device = devices.get(i);
-                jsonBuilder.append("{");
-                jsonBuilder.append("\"vendorId\":").append(device.getVendorId()).append(",");
-                jsonBuilder.append("\"productId\":").append(device.getProductId()).append(",");
-                jsonBuilder.append("\"deviceName\":\"").append(device.getDeviceName()).append("\",");
-                jsonBuilder.append("\"manufacturerName\":");
-                if (device.getManufacturerName() != null) {
-                    jsonBuilder.append("\"").append(device.getManufacturerName()).append("\"");
-                } else {
-                    jsonBuilder.append("null");
-                }
-                jsonBuilder.append(",");
-                jsonBuilder.append("\"productName\":");
-                if (device.getProductName() != null) {
-                    jsonBuilder.append("\"").append(device.getProductName()).append("\"");
-                } else {
-                    jsonBuilder.append("null");
-                }
-                jsonBuilder.append("}");
-                
-                if (i < devices.size() - 1) {
-                    jsonBuilder.append(",");
+        return getAllUSBDevices(false);
+    }
+
+    /**
+     * 获取所有连接的USB设备列表
+     * rescan 为true时重新枚举设备，否则使用插拔广播维护的设备索引
+     */
+    public String getAllUSBDevices(boolean rescan) {
+        if (rescan) {
+            usbUtil.getDeviceIndex().rescan();
+        }
+        JSONArray devices = new JSONArray();
+        try {
+            for (Map<String, Object> info : getDeviceSnapshot().getDevices()) {
+                JSONObject device = new JSONObject();
+                for (Map.Entry<String, Object> entry : info.entrySet()) {
+                    // 保留值为空的字段，与之前的格式一致
+                    device.put(entry.getKey(), entry.getValue() != null ? entry.getValue() : JSONObject.NULL);
                 }
+                devices.put(device);
             }
+        } catch (JSONException e) {
+            Log.e(TAG, "设备列表序列化失败", e);
         }
-        
-        jsonBuilder.append("]");
-        return jsonBuilder.toString();
+        return devices.toString();
+    }
+
+    /**
+     * 设备列表快照，带版本号，设备信息已预先生成；事件通道据此发送全量列表和增量变化
+     */
+    public UsbDeviceIndex.Snapshot getDeviceSnapshot() {
+        return usbUtil.getDeviceIndex().getSnapshot();
     }
 }
\ No newline at end of file
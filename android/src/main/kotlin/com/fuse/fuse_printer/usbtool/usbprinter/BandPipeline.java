@@ -0,0 +1,209 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 模块：分带图像流水线
+ * <p>
+ * 光栅化线程把位图逐带写入少量循环使用的缓冲区，调用线程（调度线程）同时把已完成的带发送出去，
+ * 第 n+1 带的光栅化与第 n 带的USB传输重叠进行。同一时间只能有一个 {@link #run} 在执行。
+ * <p>
+ * 缓冲区在两个队列间只用不阻塞的 offer 归还（容量足够），光栅化线程或调用线程被中断时也不会丢失缓冲区。
+ */
+public class BandPipeline {
+
+    private static final String TAG = "BandPipeline";
+
+    // 自动带高时每带的目标字节数（与旧实现一致）
+    public static final int DEFAULT_BAND_BYTES = 2048;
+
+    // 循环使用的带缓冲数量：一块在光栅化、一块在发送、一块备用
+    private static final int POOL_SIZE = 3;
+
+    /**
+     * 接收已光栅化的带，在调用 {@link #run} 的线程上回调
+     */
+    public interface BandSink {
+        boolean onBand(int y, int rows, int byteWidth, byte[] data, int length) throws Exception;
+    }
+
+    private static final class Band {
+        byte[] data = new byte[0];
+        int y;
+        int rows;
+        int length;
+    }
+
+    // 结束标记
+    private static final Band END = new Band();
+
+    private final BlockingQueue<Band> mFree = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Band> mFilled = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+    private final BitmapRasterizer mRasterizer = new BitmapRasterizer();
+    // 由 executor()/shutdown() 在锁内读写，两者可能在新旧调度线程上并发调用
+    private ExecutorService mRasterExecutor;
+    private int mBandHeight;
+
+    public BandPipeline() {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            mFree.add(new Band());
+        }
+    }
+
+    /**
+     * 设置带高（行），0 表示按 DEFAULT_BAND_BYTES / 每行字节数 自动计算
+     */
+    public void setBandHeight(int rows) {
+        this.mBandHeight = Math.max(0, rows);
+    }
+
+    public int getBandHeight(int byteWidth) {
+        return mBandHeight > 0 ? mBandHeight : Math.max(1, DEFAULT_BAND_BYTES / byteWidth);
+    }
+
+    /**
+     * 光栅化整张位图并逐带交给 sink
+     *
+     * @return sink 是否全部返回成功
+     */
+    public boolean run(Bitmap bmp, int threshold, BandSink sink) throws Exception {
+        return run(bmp, threshold, LabelImageEncoder.DitherMode.THRESHOLD, sink);
+    }
+
+    /**
+     * 按指定二值化方式光栅化；各带在同一个光栅化线程上按顺序生成，抖动误差可以跨带延续
+     */
+    public boolean run(Bitmap bmp, int threshold, LabelImageEncoder.DitherMode mode, BandSink sink)
+            throws Exception {
+        int width = bmp.getWidth();
+        int height = bmp.getHeight();
+        int byteWidth = (width + 7) / 8;
+        if (byteWidth <= 0 || height <= 0) {
+            return true;
+        }
+        int bandHeight = getBandHeight(byteWidth);
+        long start = System.nanoTime();
+        long firstBand = 0;
+
+        AtomicBoolean aborted = new AtomicBoolean();
+        Future<?> producer = executor().submit(() -> {
+            produce(bmp, height, byteWidth, bandHeight, threshold, mode, aborted);
+            return null;
+        });
+        boolean success = true;
+        boolean ended = false;
+        try {
+            // 生产端无论成功、失败还是被中止都会放入 END，消费端一直取到 END 为止，
+            // 保证返回时光栅化线程不再持有任何缓冲区
+            while (true) {
+                Band band = mFilled.take();
+                if (band == END) {
+                    ended = true;
+                    break;
+                }
+                if (firstBand == 0) {
+                    firstBand = System.nanoTime();
+                }
+                try {
+                    if (success && !aborted.get()) {
+                        success = sink.onBand(band.y, band.rows, byteWidth, band.data, band.length);
+                    }
+                } catch (Exception e) {
+                    aborted.set(true);
+                    throw e;
+                } finally {
+                    mFree.offer(band);
+                }
+                if (!success) {
+                    // 发送失败，停止光栅化，剩余的带直接回收
+                    aborted.set(true);
+                }
+            }
+            producer.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            if (!ended) {
+                // sink 抛出异常或等待被中断时提前离开了循环
+                aborted.set(true);
+                drainUntilEnd();
+            }
+        }
+        long end = System.nanoTime();
+        Log.i(TAG, "图像 " + width + "x" + height + "，带高" + bandHeight + "，首带 "
+                + (firstBand > 0 ? (firstBand - start) / 1000000 : -1) + "ms，总计 " + (end - start) / 1000000 + "ms");
+        return success;
+    }
+
+    /**
+     * 关闭光栅化线程，应在没有 {@link #run} 执行时调用（如调度线程退出前）；之后再次 run 会重新创建线程
+     */
+    public synchronized void shutdown() {
+        if (mRasterExecutor != null) {
+            mRasterExecutor.shutdown();
+            mRasterExecutor = null;
+        }
+    }
+
+    private void produce(Bitmap bmp, int height, int byteWidth, int bandHeight, int threshold,
+                         LabelImageEncoder.DitherMode mode, AtomicBoolean aborted) throws InterruptedException {
+        Band band = null;
+        try {
+            for (int y = 0; y < height && !aborted.get(); y += bandHeight) {
+                band = mFree.take();
+                if (aborted.get()) {
+                    break;
+                }
+                int rows = Math.min(bandHeight, height - y);
+                int length = rows * byteWidth;
+                if (band.data.length < length) {
+                    band.data = new byte[length];
+                }
+                mRasterizer.rasterize(bmp, y, y + rows, threshold, mode, band.data, 0);
+                band.y = y;
+                band.rows = rows;
+                band.length = length;
+                mFilled.offer(band);
+                band = null;
+            }
+        } finally {
+            // 中途退出（中止、异常或中断）时手上的缓冲区放回空闲队列
+            if (band != null) {
+                mFree.offer(band);
+            }
+            // 带数量少于队列容量，END 总能放入；用 offer 不受中断影响
+            mFilled.offer(END);
+        }
+    }
+
+    private void drainUntilEnd() throws InterruptedException {
+        while (true) {
+            Band band = mFilled.take();
+            if (band == END) {
+                return;
+            }
+            mFree.offer(band);
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (mRasterExecutor == null) {
+            mRasterExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "fuse-raster");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return mRasterExecutor;
+    }
+}
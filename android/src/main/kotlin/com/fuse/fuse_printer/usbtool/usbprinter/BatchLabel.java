@@ -0,0 +1,187 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模块：批量打印的标签描述
+ * <p>
+ * 由 Flutter 传入的 Map 解析而来：
+ * <ul>
+ * <li>{"type":"barcode", "code", "barcodeType"(默认128), "height"(默认80)}</li>
+ * <li>{"type":"qrcode", "content", "size"(默认6)}</li>
+ * <li>{"type":"template", "name", "values", "stored"(默认false)}</li>
+ * <li>{"type":"tspl", "commands"} 原样发送的标签内容（不含 PRINT）</li>
+ * </ul>
+ * 每项都可带 "copies"(默认1)。内容相同的连续标签合并为一次 PRINT n。
+ */
+public class BatchLabel {
+
+    public static final String TYPE_BARCODE = "barcode";
+    public static final String TYPE_QRCODE = "qrcode";
+    public static final String TYPE_TEMPLATE = "template";
+    public static final String TYPE_TSPL = "tspl";
+
+    final String type;
+    // barcode: 内容；qrcode: 内容；template: 模板名；tspl: 指令
+    final String content;
+    // barcode: 条码类型
+    final String barcodeType;
+    // barcode: 高度；qrcode: 单元宽度
+    final int size;
+    final Map<String, ?> values;
+    final boolean stored;
+    int copies;
+
+    private BatchLabel(String type, String content, String barcodeType, int size, Map<String, ?> values,
+                       boolean stored, int copies) {
+        this.type = type;
+        this.content = content;
+        this.barcodeType = barcodeType;
+        this.size = size;
+        this.values = values;
+        this.stored = stored;
+        this.copies = copies;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * 模板名（仅 template 类型）
+     */
+    public String getTemplateName() {
+        return content;
+    }
+
+    public Map<String, ?> getValues() {
+        return values;
+    }
+
+    public boolean isStored() {
+        return stored;
+    }
+
+    public int getCopies() {
+        return copies;
+    }
+
+    /**
+     * 解析一项标签描述
+     *
+     * @throws IllegalArgumentException 类型未知或缺少必要字段
+     */
+    public static BatchLabel fromMap(Map<String, ?> spec) {
+        String type = string(spec, "type", null);
+        int copies = Math.max(1, integer(spec, "copies", 1));
+        if (TYPE_BARCODE.equals(type)) {
+            return new BatchLabel(type, required(spec, "code"), string(spec, "barcodeType", "128"),
+                    integer(spec, "height", 80), null, false, copies);
+        } else if (TYPE_QRCODE.equals(type)) {
+            return new BatchLabel(type, required(spec, "content"), null, integer(spec, "size", 6),
+                    null, false, copies);
+        } else if (TYPE_TEMPLATE.equals(type)) {
+            Object values = spec.get("values");
+            if (values != null && !(values instanceof Map)) {
+                throw new IllegalArgumentException("values 必须是 Map");
+            }
+            Map<String, ?> map = values != null ? castMap(values) : Collections.<String, Object>emptyMap();
+            return new BatchLabel(type, required(spec, "name"), null, 0, map,
+                    Boolean.TRUE.equals(spec.get("stored")), copies);
+        } else if (TYPE_TSPL.equals(type)) {
+            return new BatchLabel(type, required(spec, "commands"), null, 0, null, false, copies);
+        }
+        throw new IllegalArgumentException("未知的标签类型: " + type);
+    }
+
+    /**
+     * 解析整个批次，内容相同的相邻标签合并份数
+     */
+    public static List<BatchLabel> parseBatch(List<? extends Map<String, ?>> specs) {
+        List<BatchLabel> labels = new ArrayList<>(specs.size());
+        BatchLabel last = null;
+        for (Map<String, ?> spec : specs) {
+            BatchLabel label = fromMap(spec);
+            if (last != null && last.sameContent(label)) {
+                last.copies += label.copies;
+            } else {
+                labels.add(label);
+                last = label;
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * 批次中的标签总张数
+     */
+    public static int totalCopies(List<BatchLabel> labels) {
+        int total = 0;
+        for (BatchLabel label : labels) {
+            total += label.copies;
+        }
+        return total;
+    }
+
+    /**
+     * 写入标签内容（不含 PRINT），template 类型由调用方处理
+     */
+    public void writeBody(TsplWriter out) {
+        switch (type) {
+            case TYPE_BARCODE:
+                out.cls().barcode(50, 50, barcodeType, size, 1, 0, 2, 2, content);
+                break;
+            case TYPE_QRCODE:
+                out.cls().qrcode(50, 50, 'H', size, 'A', 0, content);
+                break;
+            case TYPE_TSPL:
+                out.commands(content);
+                break;
+            default:
+                throw new IllegalStateException("需要模板处理的标签类型: " + type);
+        }
+    }
+
+    boolean sameContent(BatchLabel other) {
+        return type.equals(other.type) && content.equals(other.content) && size == other.size
+                && stored == other.stored
+                && (barcodeType == null ? other.barcodeType == null : barcodeType.equals(other.barcodeType))
+                && (values == null ? other.values == null : values.equals(other.values));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> castMap(Object value) {
+        return (Map<String, ?>) value;
+    }
+
+    private static String required(Map<String, ?> spec, String key) {
+        String value = string(spec, key, null);
+        if (value == null) {
+            throw new IllegalArgumentException("缺少字段: " + key);
+        }
+        return value;
+    }
+
+    private static String string(Map<String, ?> spec, String key, String defaultValue) {
+        Object value = spec.get(key);
+        return value != null ? value.toString() : defaultValue;
+    }
+
+    private static int integer(Map<String, ?> spec, String key, int defaultValue) {
+        Object value = spec.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(key + " 不是整数: " + value);
+            }
+        }
+        return defaultValue;
+    }
+}
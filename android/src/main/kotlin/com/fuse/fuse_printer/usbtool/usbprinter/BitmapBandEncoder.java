@@ -0,0 +1,182 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.util.zip.Deflater;
+
+/**
+ * 模块：BITMAP分带编码
+ * <p>
+ * 逐带选择发送方式：
+ * <ul>
+ * <li>去白边：在刚 CLS 过的区域上，整带全白直接跳过，带首尾的全白行裁掉（白色本来就是底色）</li>
+ * <li>压缩：固件支持 BITMAP 压缩模式(mode 3, zlib)时，压缩后明显更小则发送压缩数据</li>
+ * <li>其余情况按原样发送 mode 0 点阵</li>
+ * </ul>
+ * 编码结果放在复用的缓冲区中，下一次 {@link #encode} 前有效。只能在单个线程上使用。
+ */
+public class BitmapBandEncoder {
+
+    // 压缩后不足原始大小的该比例才使用压缩，避免为少量收益增加打印机解压开销
+    private static final int COMPRESS_MAX_PERCENT = 80;
+
+    private static final byte WHITE = (byte) 0xFF;
+
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] mCompressed = new byte[0];
+    private volatile boolean mCompressionEnabled;
+
+    // 本次编码结果
+    private final TsplWriter mHeader = new TsplWriter(64);
+    private byte[] mPayload;
+    private int mPayloadOffset;
+    private int mPayloadLength;
+
+    // 统计
+    private long mRawBytes;
+    private long mSentBytes;
+    private int mSkippedBands;
+    private int mCompressedBands;
+    private int mRawBands;
+
+    /**
+     * 是否允许使用打印机端压缩（需固件支持 BITMAP mode 3）
+     */
+    public void setCompressionEnabled(boolean enabled) {
+        this.mCompressionEnabled = enabled;
+    }
+
+    public boolean isCompressionEnabled() {
+        return mCompressionEnabled;
+    }
+
+    /**
+     * 编码一带点阵
+     *
+     * @param width             图像宽度（点），行尾不足8点的填充位不参与空白判断
+     * @param blankIsBackground 目标区域是否为空白（CLS 之后），是则可以跳过/裁掉全白行
+     * @return false 表示整带无需发送
+     */
+    public boolean encode(int x, int y, int width, int rows, byte[] data, boolean blankIsBackground) {
+        int byteWidth = (width + 7) / 8;
+        mRawBytes += (long) byteWidth * rows;
+        int first = 0;
+        int last = rows - 1;
+        if (blankIsBackground) {
+            int padMask = 0xFF >> (((width - 1) & 7) + 1);
+            while (first <= last && isWhiteRow(data, first * byteWidth, byteWidth, padMask)) {
+                first++;
+            }
+            if (first > last) {
+                mSkippedBands++;
+                return false;
+            }
+            while (last > first && isWhiteRow(data, last * byteWidth, byteWidth, padMask)) {
+                last--;
+            }
+        }
+        int offset = first * byteWidth;
+        int usedRows = last - first + 1;
+        int rawLength = usedRows * byteWidth;
+
+        if (mCompressionEnabled && compress(data, offset, rawLength)) {
+            mHeader.reset().bitmapHeader(x, y + first, byteWidth, usedRows, 3).num(mPayloadLength).comma();
+            mPayload = mCompressed;
+            mPayloadOffset = 0;
+            mCompressedBands++;
+        } else {
+            mHeader.reset().bitmapHeader(x, y + first, byteWidth, usedRows, 0);
+            mPayload = data;
+            mPayloadOffset = offset;
+            mPayloadLength = rawLength;
+            mRawBands++;
+        }
+        mSentBytes += mHeader.size() + mPayloadLength;
+        return true;
+    }
+
+    /**
+     * 指令头，有效内容为 [0, getHeaderLength())
+     */
+    public byte[] getHeader() {
+        return mHeader.buffer();
+    }
+
+    public int getHeaderLength() {
+        return mHeader.size();
+    }
+
+    public byte[] getPayload() {
+        return mPayload;
+    }
+
+    public int getPayloadOffset() {
+        return mPayloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return mPayloadLength;
+    }
+
+    /**
+     * 原始点阵字节数
+     */
+    public long getRawBytes() {
+        return mRawBytes;
+    }
+
+    /**
+     * 实际发送字节数（含指令头）
+     */
+    public long getSentBytes() {
+        return mSentBytes;
+    }
+
+    public int getSkippedBands() {
+        return mSkippedBands;
+    }
+
+    public int getCompressedBands() {
+        return mCompressedBands;
+    }
+
+    public int getRawBands() {
+        return mRawBands;
+    }
+
+    public void resetStats() {
+        mRawBytes = 0;
+        mSentBytes = 0;
+        mSkippedBands = 0;
+        mCompressedBands = 0;
+        mRawBands = 0;
+    }
+
+    private boolean compress(byte[] data, int offset, int length) {
+        int limit = (int) ((long) length * COMPRESS_MAX_PERCENT / 100);
+        if (limit <= 0) {
+            return false;
+        }
+        if (mCompressed.length < limit + 1) {
+            mCompressed = new byte[limit + 1];
+        }
+        mDeflater.reset();
+        mDeflater.setInput(data, offset, length);
+        mDeflater.finish();
+        int n = mDeflater.deflate(mCompressed, 0, limit + 1);
+        if (!mDeflater.finished() || n > limit) {
+            // 压缩收益不够
+            return false;
+        }
+        mPayloadLength = n;
+        return true;
+    }
+
+    private static boolean isWhiteRow(byte[] data, int offset, int byteWidth, int padMask) {
+        int end = offset + byteWidth - 1;
+        for (int i = offset; i < end; i++) {
+            if (data[i] != WHITE) {
+                return false;
+            }
+        }
+        return ((data[end] & 0xFF) | padMask) == 0xFF;
+    }
+}
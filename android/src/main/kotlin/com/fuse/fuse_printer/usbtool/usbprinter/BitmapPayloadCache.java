@@ -0,0 +1,144 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 模块：图片指令缓存
+ * <p>
+ * 按字节数限制的LRU缓存，保存可直接发送的 BITMAP 指令（含指令头和点阵数据）。
+ * 同一张图片（路径、位置、尺寸、阈值都相同）重复打印时跳过解码和光栅化。
+ */
+public class BitmapPayloadCache {
+
+    public static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * 缓存键：资源路径 + 目标位置 + 目标尺寸 + 阈值
+     */
+    public static final class Key {
+        final String path;
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+        final int threshold;
+        final LabelImageEncoder.DitherMode dither;
+        // 是否按 BITMAP 压缩（mode 3）编码，两种指令不能混用
+        final boolean compressed;
+
+        public Key(String path, int x, int y, int width, int height, int threshold) {
+            this(path, x, y, width, height, threshold, LabelImageEncoder.DitherMode.THRESHOLD);
+        }
+
+        public Key(String path, int x, int y, int width, int height, int threshold,
+                   LabelImageEncoder.DitherMode dither) {
+            this(path, x, y, width, height, threshold, dither, false);
+        }
+
+        public Key(String path, int x, int y, int width, int height, int threshold,
+                   LabelImageEncoder.DitherMode dither, boolean compressed) {
+            this.path = path;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.threshold = threshold;
+            this.dither = dither != null ? dither : LabelImageEncoder.DitherMode.THRESHOLD;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return x == k.x && y == k.y && width == k.width && height == k.height
+                    && threshold == k.threshold && dither == k.dither && compressed == k.compressed
+                    && path.equals(k.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = path.hashCode();
+            h = 31 * h + x;
+            h = 31 * h + y;
+            h = 31 * h + width;
+            h = 31 * h + height;
+            h = 31 * h + threshold;
+            h = 31 * h + dither.ordinal();
+            h = 31 * h + (compressed ? 1 : 0);
+            return h;
+        }
+    }
+
+    private final LinkedHashMap<Key, byte[]> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long mMaxBytes;
+    private long mBytes;
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    public BitmapPayloadCache(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    public synchronized byte[] get(Key key) {
+        byte[] payload = mEntries.get(key);
+        if (payload != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return payload;
+    }
+
+    /**
+     * 放入缓存，超出容量时按最近最少使用淘汰；单条超过容量的不缓存
+     */
+    public synchronized void put(Key key, byte[] payload) {
+        if (payload == null || payload.length > mMaxBytes) {
+            return;
+        }
+        byte[] old = mEntries.put(key, payload);
+        if (old != null) {
+            mBytes -= old.length;
+        }
+        mBytes += payload.length;
+        Iterator<Map.Entry<Key, byte[]>> it = mEntries.entrySet().iterator();
+        while (mBytes > mMaxBytes && it.hasNext()) {
+            Map.Entry<Key, byte[]> eldest = it.next();
+            mBytes -= eldest.getValue().length;
+            it.remove();
+            mEvictions++;
+        }
+    }
+
+    /**
+     * 单条指令是否有可能被缓存
+     */
+    public boolean accepts(long payloadBytes) {
+        return payloadBytes <= mMaxBytes;
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * 命中/未命中/淘汰计数及当前占用
+     */
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("hits", mHits);
+        stats.put("misses", mMisses);
+        stats.put("evictions", mEvictions);
+        stats.put("entries", (long) mEntries.size());
+        stats.put("bytes", mBytes);
+        stats.put("maxBytes", mMaxBytes);
+        return stats;
+    }
+}
@@ -0,0 +1,106 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.graphics.Bitmap;
+
+/**
+ * 模块：位图光栅化
+ * <p>
+ * 把位图转换为TSPL BITMAP点阵（1=白，0=黑，高位在左）。
+ * 按行批量 getPixels 到复用的 int[]，用整数定点亮度，一次写出8个像素。
+ * 阈值方式的结果与逐像素 getPixel + 浮点亮度的旧实现逐位一致；
+ * 抖动方式交给 {@link LabelImageEncoder} 逐行量化，误差跨带延续。
+ */
+public class BitmapRasterizer {
+
+    public static final int DEFAULT_THRESHOLD = 127;
+
+    // 每次 getPixels 读取的行数
+    private static final int ROW_BATCH = 16;
+
+    private int[] mPixels = new int[0];
+    private final LabelImageEncoder mDither = new LabelImageEncoder();
+
+    /**
+     * 光栅化 [startY, endY) 行到 out，每行 byteWidth = (width + 7) / 8 字节
+     */
+    public void rasterize(Bitmap bmp, int startY, int endY, int threshold, byte[] out, int outOffset) {
+        rasterize(bmp, startY, endY, threshold, LabelImageEncoder.DitherMode.THRESHOLD, out, outOffset);
+    }
+
+    /**
+     * 按指定二值化方式光栅化 [startY, endY) 行。
+     * 抖动方式下同一幅图必须从第0行开始按顺序分带调用，startY 为 0 时重新开始误差扩散
+     */
+    public void rasterize(Bitmap bmp, int startY, int endY, int threshold, LabelImageEncoder.DitherMode mode,
+                          byte[] out, int outOffset) {
+        boolean dither = mode != null && mode != LabelImageEncoder.DitherMode.THRESHOLD;
+        int width = bmp.getWidth();
+        int byteWidth = (width + 7) / 8;
+        int batch = Math.min(ROW_BATCH, endY - startY);
+        if (mPixels.length < width * batch) {
+            mPixels = new int[width * batch];
+        }
+        int[] pixels = mPixels;
+        if (dither && startY == 0) {
+            // 旧实现按“亮度大于阈值”为白，编码器按“大于等于”，阈值加1保持同样含义
+            mDither.setDitherMode(mode);
+            mDither.setThreshold(threshold + 1);
+            mDither.beginRows(width);
+        }
+        for (int y = startY; y < endY; y += batch) {
+            int rows = Math.min(batch, endY - y);
+            bmp.getPixels(pixels, 0, width, 0, y, width, rows);
+            for (int r = 0; r < rows; r++) {
+                int dst = outOffset + (y - startY + r) * byteWidth;
+                if (dither) {
+                    mDither.encodeRow(y + r, pixels, r * width, width, out, dst);
+                } else {
+                    packRow(pixels, r * width, width, threshold, out, dst);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把一行ARGB像素打包为点阵字节，直接覆盖 out 中对应字节
+     */
+    public static void packRow(int[] argb, int offset, int width, int threshold, byte[] out, int outOffset) {
+        int full = width >> 3;
+        int p = offset;
+        for (int i = 0; i < full; i++) {
+            int bits = 0;
+            for (int k = 0; k < 8; k++) {
+                bits = (bits << 1) | (isWhite(argb[p++], threshold) ? 1 : 0);
+            }
+            out[outOffset + i] = (byte) bits;
+        }
+        int rest = width & 7;
+        if (rest > 0) {
+            int bits = 0;
+            for (int k = 0; k < rest; k++) {
+                bits = (bits << 1) | (isWhite(argb[p++], threshold) ? 1 : 0);
+            }
+            out[outOffset + full] = (byte) (bits << (8 - rest));
+        }
+    }
+
+    /**
+     * 透明或亮度高于阈值视为白点。
+     * 亮度 R*0.3 + G*0.59 + B*0.11 放大100倍用整数比较；恰好相等时浮点结果取决于舍入，
+     * 回退到原浮点表达式以保证与旧实现一致。
+     */
+    static boolean isWhite(int color, int threshold) {
+        if ((color >>> 24) == 0) {
+            return true;
+        }
+        int r = color >>> 16 & 0xFF;
+        int g = color >>> 8 & 0xFF;
+        int b = color & 0xFF;
+        int luma100 = r * 30 + g * 59 + b * 11;
+        int limit = threshold * 100;
+        if (luma100 != limit) {
+            return luma100 > limit;
+        }
+        return r * 0.3 + g * 0.59 + b * 0.11 > threshold;
+    }
+}
@@ -0,0 +1,44 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+/**
+ * 模块：批量传输通道
+ * <p>
+ * USB OUT端点的最小抽象，供缓冲写入器使用；IN端点只用于读取打印机状态
+ */
+public interface BulkTransport {
+
+    /**
+     * OUT端点最大包长，未连接时返回0
+     */
+    int getMaxPacketSize();
+
+    /**
+     * 发送 data[offset, offset + length)
+     *
+     * @return 实际写出的字节数，小于 length 表示传输未完成
+     */
+    int writeData(byte[] data, int offset, int length);
+
+    /**
+     * 最近一次 writeData 实际发起的USB传输次数；按流控窗口分块发送时一次 writeData 对应多次传输
+     */
+    default int getLastWriteTransfers() {
+        return 1;
+    }
+
+    /**
+     * 等待已提交的数据全部发送完成
+     *
+     * @return 是否全部成功
+     */
+    boolean flush();
+
+    /**
+     * 从IN端点读取最多 length 字节，最多等待 timeoutMs
+     *
+     * @return 实际读到的字节数，超时为0，不支持或未连接时返回-1
+     */
+    default int readData(byte[] buffer, int offset, int length, int timeoutMs) {
+        return -1;
+    }
+}
@@ -0,0 +1,219 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模块：USB连接状态机
+ * <p>
+ * 由插拔广播和权限结果驱动，取代固定 2 秒的轮询定时器：
+ * <pre>
+ * STOPPED --start--> DISCONNECTED --设备在且已授权--> CONNECTED
+ *                    DISCONNECTED --设备在但未授权--> PERMISSION_PENDING --授权--> CONNECTED
+ *                    CONNECTED --拔出--> DISCONNECTED
+ * </pre>
+ * 只有 DISCONNECTED 会定时重试，间隔从 INITIAL_BACKOFF_MS 起逐次加倍到 MAX_BACKOFF_MS，
+ * 插入事件会重置间隔并立即尝试；用户拒绝授权后不再重试，等下一次插入。
+ * CONNECTED 和 PERMISSION_PENDING 没有任何定时唤醒。
+ * 连接状态只在真正变化时通知。所有方法都必须在同一线程上调用。
+ */
+public class ConnectionStateMachine {
+
+    private static final String TAG = "ConnectionStateMachine";
+
+    static final long INITIAL_BACKOFF_MS = 1000;
+    static final long MAX_BACKOFF_MS = 60000;
+
+    public enum State {
+        STOPPED, DISCONNECTED, PERMISSION_PENDING, CONNECTED
+    }
+
+    /**
+     * 设备操作和定时，由平台层实现
+     */
+    public interface Driver {
+        /** 目标设备是否已插入 */
+        boolean isDevicePresent();
+
+        boolean hasPermission();
+
+        void requestPermission();
+
+        /** 打开设备，成功返回true */
+        boolean open();
+
+        void close();
+
+        /** delayMs 后调用 onRetry，覆盖之前的安排 */
+        void scheduleRetry(long delayMs);
+
+        void cancelRetry();
+
+        /** 连接状态变化 */
+        void onConnectionChanged(boolean connected);
+    }
+
+    private final Driver mDriver;
+    private State mState = State.STOPPED;
+    private long mBackoff = INITIAL_BACKOFF_MS;
+    private boolean mPermissionDenied;
+
+    private long mStartedAt;
+    private long mWakeups;
+    private long mRetries;
+    private long mTransitions;
+
+    public ConnectionStateMachine(Driver driver) {
+        this.mDriver = driver;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * 开始自动连接；已在运行时立即重新尝试（如更换了目标设备）
+     * now 当前时间（毫秒），用于计算每小时唤醒次数
+     */
+    public void start(long now) {
+        mWakeups++;
+        if (mState == State.STOPPED) {
+            mStartedAt = now;
+        }
+        if (mState == State.CONNECTED) {
+            mDriver.close();
+            setState(State.DISCONNECTED);
+        } else if (mState == State.STOPPED) {
+            setState(State.DISCONNECTED);
+        }
+        mPermissionDenied = false;
+        mBackoff = INITIAL_BACKOFF_MS;
+        tryConnect();
+    }
+
+    public void stop() {
+        mDriver.cancelRetry();
+        if (mState == State.CONNECTED) {
+            mDriver.close();
+        }
+        setState(State.STOPPED);
+    }
+
+    /**
+     * 目标设备插入
+     */
+    public void onAttached() {
+        mWakeups++;
+        if (mState == State.STOPPED || mState == State.CONNECTED) {
+            return;
+        }
+        mPermissionDenied = false;
+        mBackoff = INITIAL_BACKOFF_MS;
+        tryConnect();
+    }
+
+    /**
+     * 目标设备拔出
+     */
+    public void onDetached() {
+        mWakeups++;
+        if (mState == State.STOPPED) {
+            return;
+        }
+        mDriver.close();
+        mPermissionDenied = false;
+        mBackoff = INITIAL_BACKOFF_MS;
+        setState(State.DISCONNECTED);
+        // 主要靠插入事件重连，退避重试只作兜底（部分系统不向非Activity组件发插入广播）
+        scheduleBackoff();
+    }
+
+    /**
+     * 权限请求的结果广播；granted 取自广播附加数据，
+     * 不可变 PendingIntent 收到的广播没有附加数据，因此以 Driver.hasPermission() 为准
+     */
+    public void onPermissionResult(boolean granted) {
+        mWakeups++;
+        if (mState != State.PERMISSION_PENDING) {
+            return;
+        }
+        setState(State.DISCONNECTED);
+        if (granted || mDriver.hasPermission()) {
+            tryConnect();
+        } else {
+            Log.e(TAG, "用户拒绝了USB权限，等待设备重新插入");
+            mPermissionDenied = true;
+        }
+    }
+
+    /**
+     * scheduleRetry 到期
+     */
+    public void onRetry() {
+        mWakeups++;
+        if (mState != State.DISCONNECTED) {
+            return;
+        }
+        mRetries++;
+        tryConnect();
+    }
+
+    private void tryConnect() {
+        if (!mDriver.isDevicePresent()) {
+            scheduleBackoff();
+            return;
+        }
+        if (!mDriver.hasPermission()) {
+            if (mPermissionDenied) {
+                return;
+            }
+            Log.i(TAG, "请求USB权限...");
+            mDriver.cancelRetry();
+            setState(State.PERMISSION_PENDING);
+            mDriver.requestPermission();
+            return;
+        }
+        if (mDriver.open()) {
+            mDriver.cancelRetry();
+            mBackoff = INITIAL_BACKOFF_MS;
+            setState(State.CONNECTED);
+        } else {
+            scheduleBackoff();
+        }
+    }
+
+    private void scheduleBackoff() {
+        mDriver.scheduleRetry(mBackoff);
+        mBackoff = Math.min(mBackoff * 2, MAX_BACKOFF_MS);
+    }
+
+    private void setState(State state) {
+        if (mState == state) {
+            return;
+        }
+        boolean wasConnected = mState == State.CONNECTED;
+        Log.i(TAG, "连接状态：" + mState + " -> " + state);
+        mState = state;
+        mTransitions++;
+        if (wasConnected != (state == State.CONNECTED)) {
+            mDriver.onConnectionChanged(!wasConnected);
+        }
+    }
+
+    /**
+     * 唤醒统计；now 与 start 使用同一时钟
+     */
+    public Map<String, Object> getStats(long now) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", mState.name());
+        stats.put("wakeups", mWakeups);
+        stats.put("retries", mRetries);
+        stats.put("transitions", mTransitions);
+        stats.put("backoffMs", mBackoff);
+        long elapsed = now - mStartedAt;
+        stats.put("wakeupsPerHour", elapsed > 0 ? mWakeups * 3600000L / elapsed : 0L);
+        return stats;
+    }
+}
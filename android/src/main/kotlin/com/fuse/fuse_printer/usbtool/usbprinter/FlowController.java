@@ -0,0 +1,164 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模块：USB发送流控
+ * <p>
+ * 打印机缓冲区满时会对OUT端点回NAK，bulkTransfer 一直阻塞到超时，超时后不知道已发出多少字节，
+ * 只能让整个任务失败。这里按实测的排空速率决定每次发送的窗口：
+ * <ul>
+ * <li>窗口 = 排空速率 × windowMs，按包长对齐，上限为分块大小、下限为一个包</li>
+ * <li>超时 = max(原超时策略, 窗口预计耗时 × TIMEOUT_FACTOR)，缓冲区满时窗口也能在超时前发完</li>
+ * <li>单包窗口是原子的（整包要么被接收要么没有），超时或无进展后可以暂停重试，
+ * 暂停时间按 PAUSE_MIN_MS 起逐次加倍，直到有进展</li>
+ * </ul>
+ * 排空速率由每次传输的 字节数/耗时 估计：打印机缓冲区未满时测到的是USB速率，满了之后降到打印机的实际消化速度。
+ * 下降时直接采用新值（缓冲区一满窗口立刻缩小），上升时按指数加权平均缓慢恢复。
+ * 稳定后的排空速率即该机型的持续接收能力，可据此确定发送窗口。
+ * <p>
+ * 预热：连接后（{@link #reset()}）还没见过缓冲区满，测到的只是USB速率，多包传输一旦超时任务就会失败。
+ * 此时窗口从一个包开始、每次成功后翻倍，超时至少按 WARMUP_DRAIN_BPS 的保守排空速率计算；
+ * 速率降到峰值一半以下或发生超时，说明缓冲区已满，之后改用实测速率。
+ */
+public class FlowController {
+
+    public static final long DEFAULT_WINDOW_MS = 200;
+    static final int TIMEOUT_FACTOR = 4;
+    static final long PAUSE_MIN_MS = 20;
+    static final long PAUSE_MAX_MS = 1000;
+    private static final double ALPHA = 0.25;
+    // 预热期按此排空速率（字节/秒）估计超时，低于它的打印机才可能在预热期超时
+    static final int WARMUP_DRAIN_BPS = 4 * 1024;
+
+    private final long mWindowMs;
+    // 字节/秒，0 表示尚未测量
+    private double mDrainRate;
+    private long mPauseMs = PAUSE_MIN_MS;
+    // 预热期的窗口上限，0 表示一个包
+    private int mRampWindow;
+    private double mPeakRate;
+    private boolean mSaturated;
+
+    private long mTransfers;
+    private long mTimeouts;
+    private long mPauses;
+    private long mPausedMs;
+
+    public FlowController() {
+        this(DEFAULT_WINDOW_MS);
+    }
+
+    public FlowController(long windowMs) {
+        this.mWindowMs = Math.max(1, windowMs);
+    }
+
+    /**
+     * 下一次发送的字节数
+     * remaining 剩余待发送字节数；maxChunk 分块上限；packetSize 端点最大包长
+     */
+    public synchronized int nextChunk(int remaining, int maxChunk, int packetSize) {
+        int packet = Math.max(1, packetSize);
+        int window = maxChunk;
+        if (mDrainRate > 0) {
+            long byRate = (long) (mDrainRate * mWindowMs / 1000);
+            window = (int) Math.min(maxChunk, Math.max(packet, byRate / packet * packet));
+        }
+        if (!mSaturated) {
+            window = Math.min(window, Math.max(packet, mRampWindow));
+        }
+        return Math.max(1, Math.min(remaining, window));
+    }
+
+    /**
+     * 本次发送的超时时间，不小于 policyTimeoutMs
+     */
+    public synchronized int timeoutMs(int chunk, int policyTimeoutMs) {
+        long timeout = policyTimeoutMs;
+        if (mDrainRate > 0) {
+            long expected = (long) (chunk * 1000.0 / mDrainRate);
+            timeout = Math.max(timeout, expected * TIMEOUT_FACTOR);
+        }
+        if (!mSaturated) {
+            // 预热期缓冲区可能在这一块中途被填满
+            timeout = Math.max(timeout, chunk * 1000L / WARMUP_DRAIN_BPS);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, timeout);
+    }
+
+    /**
+     * 记录一次成功的传输
+     */
+    public synchronized void onTransfer(int bytes, long nanos) {
+        if (bytes <= 0) {
+            return;
+        }
+        mTransfers++;
+        double rate = bytes * 1e9 / Math.max(1, nanos);
+        mDrainRate = mDrainRate <= 0 || rate < mDrainRate ? rate : mDrainRate + ALPHA * (rate - mDrainRate);
+        mPauseMs = PAUSE_MIN_MS;
+        if (!mSaturated) {
+            if (rate < mPeakRate / 2) {
+                mSaturated = true;
+            }
+            mPeakRate = Math.max(mPeakRate, rate);
+            mRampWindow = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(mRampWindow, bytes)) * 2;
+        }
+    }
+
+    /**
+     * 传输超时：chunk 字节在 timeoutMs 内没有发完，排空速率不会超过 chunk / timeoutMs，
+     * 取它和当前估计减半中较小的一个，使后续窗口立刻缩小
+     */
+    public synchronized void onTimeout(int chunk, int timeoutMs) {
+        mTimeouts++;
+        mSaturated = true;
+        double bound = chunk * 1000.0 / Math.max(1, timeoutMs);
+        mDrainRate = mDrainRate > 0 ? Math.min(mDrainRate / 2, bound) : bound;
+    }
+
+    /**
+     * 打印机暂时不接收数据，重试前应暂停的毫秒数，连续暂停时逐次加倍
+     */
+    public synchronized long nextPause() {
+        mPauses++;
+        long pause = mPauseMs;
+        mPausedMs += pause;
+        mPauseMs = Math.min(mPauseMs * 2, PAUSE_MAX_MS);
+        return pause;
+    }
+
+    /**
+     * 更换设备时清空测量
+     */
+    public synchronized void reset() {
+        mDrainRate = 0;
+        mPauseMs = PAUSE_MIN_MS;
+        mRampWindow = 0;
+        mPeakRate = 0;
+        mSaturated = false;
+    }
+
+    /**
+     * 是否仍在预热（尚未观察到打印机缓冲区满）
+     */
+    public synchronized boolean isWarmingUp() {
+        return !mSaturated;
+    }
+
+    public synchronized double getDrainRate() {
+        return mDrainRate;
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("drainRateBps", (long) mDrainRate);
+        stats.put("windowBytes", (long) (mDrainRate * mWindowMs / 1000));
+        stats.put("transfers", mTransfers);
+        stats.put("timeouts", mTimeouts);
+        stats.put("pauses", mPauses);
+        stats.put("pausedMs", mPausedMs);
+        return stats;
+    }
+}
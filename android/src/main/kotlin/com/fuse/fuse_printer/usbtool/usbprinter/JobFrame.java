@@ -0,0 +1,116 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 模块：二进制打印任务帧
+ * <p>
+ * 任务通道 com.fuse.printer/jobs 使用 BinaryCodec，每条消息是一帧（大端序）：
+ * <pre>
+ * [u8 操作码][u32 任务ID][u32 数据长度][数据...]
+ * </pre>
+ * 回复为 [u32 任务ID][u8 状态]。
+ * 相比方法通道省掉了 StandardMethodCodec 的 Map 编解码，但不是零拷贝：Dart 端组帧复制一次，
+ * 引擎把消息交给原生端时复制一次；平台通道传来的是只在回调期间有效的直接缓冲区，
+ * 数据部分还要再复制一份交给调度线程。只有堆缓冲区才直接引用其后备数组。
+ */
+public final class JobFrame {
+
+    public static final int HEADER_SIZE = 9;
+    public static final int REPLY_SIZE = 5;
+
+    // 操作码
+    /** 数据原样发送 */
+    public static final int OP_RAW = 0x01;
+    /** 初始化(ESC @)后发送数据，同 printTextEx */
+    public static final int OP_TEXT_EX = 0x02;
+    /** 切纸，无数据 */
+    public static final int OP_CUT = 0x03;
+    /** 进纸，数据为 u32 行数 */
+    public static final int OP_FEED = 0x04;
+
+    // 回复状态
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_FAILED = 1;
+    public static final int STATUS_REJECTED = 2;
+    public static final int STATUS_MALFORMED = 3;
+
+    public final int opcode;
+    public final int jobId;
+    public final byte[] data;
+    public final int offset;
+    public final int length;
+
+    private JobFrame(int opcode, int jobId, byte[] data, int offset, int length) {
+        this.opcode = opcode;
+        this.jobId = jobId;
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * 从缓冲区当前位置读取一帧，读取后 position 移到帧尾
+     *
+     * @throws IllegalArgumentException 帧头不完整或长度越界
+     */
+    public static JobFrame read(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("帧头不完整: " + buffer.remaining() + " 字节");
+        }
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int opcode = buffer.get(start) & 0xFF;
+        int jobId = buffer.getInt(start + 1);
+        int length = buffer.getInt(start + 5);
+        buffer.order(order);
+        if (length < 0 || length > buffer.remaining() - HEADER_SIZE) {
+            throw new IllegalArgumentException("数据长度越界: " + (length & 0xFFFFFFFFL));
+        }
+        int dataStart = start + HEADER_SIZE;
+        buffer.position(dataStart + length);
+        if (buffer.hasArray()) {
+            return new JobFrame(opcode, jobId, buffer.array(), buffer.arrayOffset() + dataStart, length);
+        }
+        // 直接缓冲区只在回调期间有效，复制一份
+        byte[] copy = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(dataStart);
+        slice.get(copy, 0, length);
+        return new JobFrame(opcode, jobId, copy, 0, length);
+    }
+
+    /**
+     * 数据部分的 u32 参数（如进纸行数），数据不足4字节时返回 defaultValue
+     */
+    public int intArgument(int defaultValue) {
+        if (length < 4) {
+            return defaultValue;
+        }
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * 写入一帧
+     */
+    public static void write(ByteBuffer out, int opcode, int jobId, byte[] data, int offset, int length) {
+        ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        out.put((byte) opcode).putInt(jobId).putInt(length);
+        out.order(order);
+        out.put(data, offset, length);
+    }
+
+    /**
+     * 构造回复，平台通道要求直接缓冲区
+     */
+    public static ByteBuffer reply(int jobId, int status) {
+        ByteBuffer reply = ByteBuffer.allocateDirect(REPLY_SIZE).order(ByteOrder.BIG_ENDIAN);
+        reply.putInt(jobId).put((byte) status);
+        reply.flip();
+        return reply;
+    }
+}
@@ -0,0 +1,57 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模块：打印任务完成报告
+ * <p>
+ * 每个入队的任务结束（成功、失败或取消）后生成一份，通过事件通道以 "job" 事件发给 Flutter，
+ * 应用可以同时保持多个任务在途，事后按任务ID对账。
+ */
+public final class JobReport {
+
+    // 错误码
+    public static final int ERROR_NONE = 0;
+    /** USB 传输失败或未写完 */
+    public static final int ERROR_TRANSFER = 1;
+    /** 任务自身返回失败（图片解码失败、模板不存在等） */
+    public static final int ERROR_JOB = 2;
+    /** 任务执行时抛出异常 */
+    public static final int ERROR_EXCEPTION = 3;
+    /** 调度器关闭，任务未执行 */
+    public static final int ERROR_CANCELLED = 4;
+
+    public final long jobId;
+    public final boolean success;
+    public final long bytesSent;
+    public final int transfers;
+    public final long durationMs;
+    public final int errorCode;
+
+    public JobReport(long jobId, boolean success, long bytesSent, int transfers, long durationMs, int errorCode) {
+        this.jobId = jobId;
+        this.success = success;
+        this.bytesSent = bytesSent;
+        this.transfers = transfers;
+        this.durationMs = durationMs;
+        this.errorCode = errorCode;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("jobId", jobId);
+        map.put("success", success);
+        map.put("bytesSent", bytesSent);
+        map.put("transfers", transfers);
+        map.put("durationMs", durationMs);
+        map.put("errorCode", errorCode);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "任务" + jobId + (success ? "成功" : "失败(" + errorCode + ")") + "：" + bytesSent + "字节，传输"
+                + transfers + "次，耗时" + durationMs + "ms";
+    }
+}
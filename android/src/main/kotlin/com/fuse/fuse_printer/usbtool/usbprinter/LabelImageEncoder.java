@@ -0,0 +1,307 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+
+/**
+ * 模块：标签图像编码器
+ * <p>
+ * 缩放、灰度、二值化在同一遍逐行处理中完成：每个目标行只读取一行源像素到复用的行缓冲，
+ * 不再生成灰度副本和缩放副本两张中间位图。输出为TSPL BITMAP点阵（1=白，0=黑，高位在左）。
+ * 支持阈值、Floyd–Steinberg、Atkinson 和 Bayer 4x4/8x8 抖动，误差缓冲只保存一到两行，内存为 O(宽度)。
+ * 同一实例只能在单个线程上使用。
+ */
+public class LabelImageEncoder {
+
+    public static final int DEFAULT_THRESHOLD = 128;
+
+    /**
+     * 二值化方式
+     */
+    public enum DitherMode {
+        THRESHOLD,
+        FLOYD_STEINBERG,
+        ATKINSON,
+        BAYER_4X4,
+        BAYER_8X8
+    }
+
+    // 误差缓冲左右各留2格，省去边界判断
+    private static final int ERR_PAD = 2;
+
+    private static final int[] BAYER_4X4 = bayerThresholds(4);
+    private static final int[] BAYER_8X8 = bayerThresholds(8);
+
+    /**
+     * 按行提供ARGB像素的图像源
+     */
+    public interface RowSource {
+        int getWidth();
+
+        int getHeight();
+
+        void readRow(int y, int[] dst);
+    }
+
+    /**
+     * 位图行源，每次 getPixels 读取一行
+     */
+    public static RowSource of(Bitmap bitmap) {
+        return new RowSource() {
+            @Override
+            public int getWidth() {
+                return bitmap.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return bitmap.getHeight();
+            }
+
+            @Override
+            public void readRow(int y, int[] dst) {
+                bitmap.getPixels(dst, 0, bitmap.getWidth(), 0, y, bitmap.getWidth(), 1);
+            }
+        };
+    }
+
+    private int[] mSrcRow = new int[0];
+    private int[] mXMap = new int[0];
+    private int[] mLum = new int[0];
+    // 误差缓冲：当前行、下一行、下下行（仅 Atkinson 使用）
+    private int[] mErr0 = new int[0];
+    private int[] mErr1 = new int[0];
+    private int[] mErr2 = new int[0];
+    private int mThreshold = DEFAULT_THRESHOLD;
+    private DitherMode mDitherMode = DitherMode.THRESHOLD;
+
+    public void setThreshold(int threshold) {
+        this.mThreshold = threshold;
+    }
+
+    public void setDitherMode(DitherMode mode) {
+        this.mDitherMode = mode != null ? mode : DitherMode.THRESHOLD;
+    }
+
+    /**
+     * 每行点阵字节数
+     */
+    public static int bytesPerLine(int width) {
+        return (width + 7) / 8;
+    }
+
+    /**
+     * 把源图缩放到 dstWidth x dstHeight 并编码到 out[offset...]，需要 bytesPerLine(dstWidth) * dstHeight 字节
+     */
+    public void encode(RowSource src, int dstWidth, int dstHeight, byte[] out, int offset) {
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int bytesPerLine = bytesPerLine(dstWidth);
+        if (mSrcRow.length < srcWidth) {
+            mSrcRow = new int[srcWidth];
+        }
+        if (mXMap.length < dstWidth) {
+            mXMap = new int[dstWidth];
+        }
+        beginRows(dstWidth);
+        int[] row = mSrcRow;
+        int[] xMap = mXMap;
+        int[] lum = mLum;
+        // 最近邻采样，取目标像素中心对应的源像素
+        for (int x = 0; x < dstWidth; x++) {
+            xMap[x] = (int) (((2L * x + 1) * srcWidth) / (2L * dstWidth));
+        }
+
+        int loadedRow = -1;
+        for (int y = 0; y < dstHeight; y++) {
+            int sy = (int) (((2L * y + 1) * srcHeight) / (2L * dstHeight));
+            if (sy != loadedRow) {
+                src.readRow(sy, row);
+                loadedRow = sy;
+            }
+            for (int x = 0; x < dstWidth; x++) {
+                lum[x] = luminance(row[xMap[x]]);
+            }
+            quantizeRow(y, lum, dstWidth);
+            packDots(lum, dstWidth, out, offset + y * bytesPerLine);
+        }
+    }
+
+    /**
+     * 开始逐行编码宽度为 width 的图像：准备行缓冲并清空误差，之后按行号递增调用 {@link #encodeRow}
+     */
+    public void beginRows(int width) {
+        if (mLum.length < width) {
+            mLum = new int[width];
+        }
+        boolean diffusion = mDitherMode == DitherMode.FLOYD_STEINBERG || mDitherMode == DitherMode.ATKINSON;
+        if (diffusion && mErr0.length < width + 2 * ERR_PAD) {
+            mErr0 = new int[width + 2 * ERR_PAD];
+            mErr1 = new int[width + 2 * ERR_PAD];
+            mErr2 = new int[width + 2 * ERR_PAD];
+        }
+        if (diffusion) {
+            Arrays.fill(mErr0, 0);
+            Arrays.fill(mErr1, 0);
+            Arrays.fill(mErr2, 0);
+        }
+    }
+
+    /**
+     * 编码一行不缩放的ARGB像素到 out[outOffset...]，需要 bytesPerLine(width) 字节。
+     * 误差扩散依赖上一行的结果，同一幅图的各行必须按顺序调用
+     */
+    public void encodeRow(int y, int[] argb, int offset, int width, byte[] out, int outOffset) {
+        int[] lum = mLum;
+        for (int x = 0; x < width; x++) {
+            lum[x] = luminance(argb[offset + x]);
+        }
+        quantizeRow(y, lum, width);
+        packDots(lum, width, out, outOffset);
+    }
+
+    private static void packDots(int[] dots, int width, byte[] out, int p) {
+        int bits = 0;
+        for (int x = 0; x < width; x++) {
+            bits = (bits << 1) | dots[x];
+            if ((x & 7) == 7) {
+                out[p++] = (byte) bits;
+                bits = 0;
+            }
+        }
+        int rest = width & 7;
+        if (rest > 0) {
+            // 行尾不足8点的部分补白
+            out[p] = (byte) ((bits << (8 - rest)) | (0xFF >> rest));
+        }
+    }
+
+    /**
+     * 把一行灰度就地转换为点（1=白，0=黑）
+     */
+    private void quantizeRow(int y, int[] lum, int width) {
+        int threshold = mThreshold;
+        switch (mDitherMode) {
+            case FLOYD_STEINBERG: {
+                int[] cur = mErr0;
+                int[] next = mErr1;
+                for (int x = 0; x < width; x++) {
+                    int v = lum[x] + (cur[x + ERR_PAD] >> 4);
+                    int white = v >= threshold ? 1 : 0;
+                    int e = v - (white == 1 ? 255 : 0);
+                    lum[x] = white;
+                    // 误差按 7/16 右、3/16 左下、5/16 下、1/16 右下 扩散（放大16倍保存）
+                    cur[x + ERR_PAD + 1] += e * 7;
+                    next[x + ERR_PAD - 1] += e * 3;
+                    next[x + ERR_PAD] += e * 5;
+                    next[x + ERR_PAD + 1] += e;
+                }
+                rotateErrors();
+                break;
+            }
+            case ATKINSON: {
+                int[] cur = mErr0;
+                int[] next = mErr1;
+                int[] next2 = mErr2;
+                for (int x = 0; x < width; x++) {
+                    int v = lum[x] + cur[x + ERR_PAD];
+                    int white = v >= threshold ? 1 : 0;
+                    int e = (v - (white == 1 ? 255 : 0)) >> 3;
+                    lum[x] = white;
+                    // 只扩散 6/8 的误差，保留高光和暗部细节
+                    cur[x + ERR_PAD + 1] += e;
+                    cur[x + ERR_PAD + 2] += e;
+                    next[x + ERR_PAD - 1] += e;
+                    next[x + ERR_PAD] += e;
+                    next[x + ERR_PAD + 1] += e;
+                    next2[x + ERR_PAD] += e;
+                }
+                rotateErrors();
+                break;
+            }
+            case BAYER_4X4:
+                orderedRow(y, lum, width, BAYER_4X4, 4, threshold);
+                break;
+            case BAYER_8X8:
+                orderedRow(y, lum, width, BAYER_8X8, 8, threshold);
+                break;
+            case THRESHOLD:
+            default:
+                for (int x = 0; x < width; x++) {
+                    lum[x] = lum[x] >= threshold ? 1 : 0;
+                }
+                break;
+        }
+    }
+
+    private static void orderedRow(int y, int[] lum, int width, int[] matrix, int n, int threshold) {
+        // 阈值矩阵以128为中心，按设置的阈值整体平移
+        int shift = threshold - 128;
+        int base = (y % n) * n;
+        for (int x = 0; x < width; x++) {
+            lum[x] = lum[x] > matrix[base + x % n] + shift ? 1 : 0;
+        }
+    }
+
+    /**
+     * 误差缓冲下移一行，复用数组不重新分配
+     */
+    private void rotateErrors() {
+        int[] done = mErr0;
+        mErr0 = mErr1;
+        mErr1 = mErr2;
+        mErr2 = done;
+        Arrays.fill(mErr2, 0);
+    }
+
+    /**
+     * n x n Bayer 矩阵对应的 0-255 阈值
+     */
+    private static int[] bayerThresholds(int n) {
+        int[] index = {0};
+        int size = 1;
+        while (size < n) {
+            int next = size * 2;
+            int[] expanded = new int[next * next];
+            for (int y = 0; y < next; y++) {
+                for (int x = 0; x < next; x++) {
+                    int quadrant = (y / size) * 2 + (x / size);
+                    // 2x2 基础矩阵 [0 2; 3 1]
+                    int offset = quadrant == 0 ? 0 : quadrant == 1 ? 2 : quadrant == 2 ? 3 : 1;
+                    expanded[y * next + x] = 4 * index[(y % size) * size + (x % size)] + offset;
+                }
+            }
+            index = expanded;
+            size = next;
+        }
+        int[] thresholds = new int[n * n];
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i] = (2 * index[i] + 1) * 255 / (2 * n * n);
+        }
+        return thresholds;
+    }
+
+    /**
+     * 编码过程中使用的临时缓冲区字节数（不含输出）
+     */
+    public int getScratchBytes() {
+        return (mSrcRow.length + mXMap.length + mLum.length + mErr0.length + mErr1.length + mErr2.length) * 4;
+    }
+
+    /**
+     * 灰度：与 ColorMatrix.setSaturation(0) 相同的权重(0.213, 0.715, 0.072)，
+     * 透明度按白纸底色混合，全透明视为白
+     */
+    static int luminance(int argb) {
+        int a = argb >>> 24;
+        int r = argb >>> 16 & 0xFF;
+        int g = argb >>> 8 & 0xFF;
+        int b = argb & 0xFF;
+        int lum = (r * 54 + g * 183 + b * 19) >> 8;
+        if (a == 0xFF) {
+            return lum;
+        }
+        return 255 - (a * (255 - lum) + 127) / 255;
+    }
+}
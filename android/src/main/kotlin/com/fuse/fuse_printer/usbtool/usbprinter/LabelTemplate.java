@@ -0,0 +1,359 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 模块：标签模板
+ * <p>
+ * 把带变量的TSPL标签预编译为固定字节段 + 变量槽，填充时只复制固定段并编码变量值。
+ * 模板写法：
+ * <pre>
+ * SIZE 60,40
+ * CLS
+ * TEXT 20,20,"TSS24.BF2",0,1,1,"SKU: {sku}"
+ * TEXT 20,60,"TSS24.BF2",0,1,1,"￥{price}"
+ * BARCODE 20,100,"128",80,1,0,2,2,"{sku}"
+ * </pre>
+ * {name} 为文本变量（引号内按 UTF-8 编码并转义双引号），{name:int} 为整数变量，{{ 表示字面的 {。
+ * 换行统一为 CR LF。模板不含 PRINT，由调用方决定份数。
+ * <p>
+ * 存储模式：{@link #writeDownload} 用 DOWNLOAD 把固定部分作为 BASIC 程序存到打印机，
+ * 之后每张标签只需 {@link #fillStored} 发送变量赋值和 RUN。
+ * 编译后的模板不可变，可在多个线程间共享。
+ */
+public class LabelTemplate {
+
+    /**
+     * 变量类型
+     */
+    public enum SlotType {
+        TEXT,
+        INT
+    }
+
+    private final String mName;
+    private final String mFileName;
+    // 固定字节，第 i 个槽位于 mSegmentEnds[i] 处，最后一段到 mStatic.length 为止
+    private final byte[] mStatic;
+    private final int[] mSegmentEnds;
+    private final int[] mSlotVariables;
+    private final boolean[] mSlotQuoted;
+    private final String[] mVariables;
+    private final SlotType[] mVariableTypes;
+
+    private LabelTemplate(String name, byte[] fixed, int[] segmentEnds, int[] slotVariables, boolean[] slotQuoted,
+                          String[] variables, SlotType[] variableTypes) {
+        this.mName = name;
+        this.mFileName = storedFileName(name);
+        this.mStatic = fixed;
+        this.mSegmentEnds = segmentEnds;
+        this.mSlotVariables = slotVariables;
+        this.mSlotQuoted = slotQuoted;
+        this.mVariables = variables;
+        this.mVariableTypes = variableTypes;
+    }
+
+    /**
+     * 编译模板
+     *
+     * @throws IllegalArgumentException 模板语法错误
+     */
+    public static LabelTemplate compile(String name, String source) {
+        String text = source.replace("\r\n", "\n").replace('\r', '\n');
+        if (!text.isEmpty() && !text.endsWith("\n")) {
+            text = text + "\n";
+        }
+        StringBuilder fixed = new StringBuilder(text.length() + 16);
+        List<Integer> segmentEnds = new ArrayList<>();
+        List<Integer> slotVariables = new ArrayList<>();
+        List<Boolean> slotQuoted = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        List<SlotType> variableTypes = new ArrayList<>();
+        boolean quoted = false;
+        int byteLength = 0;
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '{' && i + 1 < n && text.charAt(i + 1) == '{') {
+                fixed.append('{');
+                byteLength++;
+                i++;
+            } else if (c == '{') {
+                int close = text.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("模板变量未闭合: " + text.substring(i));
+                }
+                String spec = text.substring(i + 1, close).trim();
+                String variable = spec;
+                SlotType type = SlotType.TEXT;
+                int colon = spec.indexOf(':');
+                if (colon >= 0) {
+                    variable = spec.substring(0, colon).trim();
+                    type = parseType(spec.substring(colon + 1).trim());
+                }
+                if (variable.isEmpty()) {
+                    throw new IllegalArgumentException("模板变量名为空");
+                }
+                int index = variables.indexOf(variable);
+                if (index < 0) {
+                    index = variables.size();
+                    variables.add(variable);
+                    variableTypes.add(type);
+                } else if (variableTypes.get(index) != type) {
+                    throw new IllegalArgumentException("变量类型不一致: " + variable);
+                }
+                segmentEnds.add(byteLength);
+                slotVariables.add(index);
+                slotQuoted.add(quoted);
+                i = close;
+            } else {
+                if (c == '\n') {
+                    fixed.append('\r');
+                    byteLength++;
+                    quoted = false;
+                } else if (c == '\\' && text.startsWith("\\[\"]", i)) {
+                    // 转义的双引号不影响引号内外的判断
+                    fixed.append("\\[\"]");
+                    byteLength += 4;
+                    i += 3;
+                    continue;
+                } else if (c == '"') {
+                    quoted = !quoted;
+                }
+                fixed.append(c);
+                byteLength += utf8Length(text, i);
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    fixed.append(text.charAt(++i));
+                }
+            }
+        }
+        byte[] bytes = fixed.toString().getBytes(StandardCharsets.UTF_8);
+        return new LabelTemplate(name, bytes, toIntArray(segmentEnds), toIntArray(slotVariables),
+                toBooleanArray(slotQuoted), variables.toArray(new String[0]),
+                variableTypes.toArray(new SlotType[0]));
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 变量名，按在模板中首次出现的顺序
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(Arrays.asList(mVariables));
+    }
+
+    public SlotType getVariableType(int index) {
+        return mVariableTypes[index];
+    }
+
+    /**
+     * 变量序号，不存在返回 -1
+     */
+    public int indexOf(String variable) {
+        for (int i = 0; i < mVariables.length; i++) {
+            if (mVariables[i].equals(variable)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 固定部分字节数
+     */
+    public int getStaticLength() {
+        return mStatic.length;
+    }
+
+    /**
+     * 填充一张标签，values 按 {@link #getVariables()} 的顺序
+     */
+    public void fill(TsplWriter out, Object... values) {
+        checkCount(values);
+        int start = 0;
+        for (int i = 0; i < mSegmentEnds.length; i++) {
+            int end = mSegmentEnds[i];
+            out.raw(mStatic, start, end - start);
+            int variable = mSlotVariables[i];
+            writeValue(out, variable, values[variable]);
+            start = end;
+        }
+        out.raw(mStatic, start, mStatic.length - start);
+    }
+
+    /**
+     * 按变量名填充一张标签
+     */
+    public void fill(TsplWriter out, Map<String, ?> values) {
+        fill(out, toArray(values));
+    }
+
+    /**
+     * 打印机中存储的程序文件名
+     */
+    public String getFileName() {
+        return mFileName;
+    }
+
+    /**
+     * 写入 DOWNLOAD 指令，把模板作为 BASIC 程序存到打印机。
+     * 引号内的变量改为字符串拼接，例如 "SKU: {sku}" 变为 "SKU: "+V0$+""
+     */
+    public void writeDownload(TsplWriter out) {
+        out.ascii("DOWNLOAD ").quoted(mFileName).crlf();
+        int start = 0;
+        for (int i = 0; i < mSegmentEnds.length; i++) {
+            int end = mSegmentEnds[i];
+            out.raw(mStatic, start, end - start);
+            int variable = mSlotVariables[i];
+            boolean text = mVariableTypes[variable] == SlotType.TEXT;
+            if (mSlotQuoted[i]) {
+                out.ascii("\"+");
+                if (text) {
+                    out.ascii('V').num(variable).ascii('$');
+                } else {
+                    out.ascii("STR$(V").num(variable).ascii(')');
+                }
+                out.ascii("+\"");
+            } else {
+                out.ascii('V').num(variable);
+                if (text) {
+                    out.ascii('$');
+                }
+            }
+            start = end;
+        }
+        out.raw(mStatic, start, mStatic.length - start);
+        out.ascii("EOP").crlf();
+    }
+
+    /**
+     * 使用已存储的程序填充一张标签：变量赋值后 RUN，需先发送过 {@link #writeDownload}
+     */
+    public void fillStored(TsplWriter out, Object... values) {
+        checkCount(values);
+        for (int i = 0; i < mVariables.length; i++) {
+            out.ascii('V').num(i);
+            if (mVariableTypes[i] == SlotType.TEXT) {
+                out.ascii("$=\"");
+                writeValue(out, i, values[i]);
+                out.ascii('"');
+            } else {
+                out.ascii('=');
+                writeValue(out, i, values[i]);
+            }
+            out.crlf();
+        }
+        out.ascii("RUN ").quoted(mFileName).crlf();
+    }
+
+    public void fillStored(TsplWriter out, Map<String, ?> values) {
+        fillStored(out, toArray(values));
+    }
+
+    private void writeValue(TsplWriter out, int variable, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("缺少变量: " + mVariables[variable]);
+        }
+        if (mVariableTypes[variable] == SlotType.INT) {
+            out.num(toInt(variable, value));
+        } else {
+            out.escaped(value instanceof String ? (String) value : String.valueOf(value));
+        }
+    }
+
+    private int toInt(int variable, Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("变量 " + mVariables[variable] + " 不是整数: " + value);
+        }
+    }
+
+    private Object[] toArray(Map<String, ?> values) {
+        Object[] array = new Object[mVariables.length];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(mVariables[i]);
+        }
+        return array;
+    }
+
+    private void checkCount(Object[] values) {
+        if (values.length != mVariables.length) {
+            throw new IllegalArgumentException("模板 " + mName + " 需要 " + mVariables.length + " 个变量，实际 " + values.length);
+        }
+    }
+
+    private static SlotType parseType(String type) {
+        switch (type.toLowerCase(Locale.US)) {
+            case "":
+            case "text":
+                return SlotType.TEXT;
+            case "int":
+                return SlotType.INT;
+            default:
+                throw new IllegalArgumentException("未知的变量类型: " + type);
+        }
+    }
+
+    /**
+     * 打印机文件名只用大写字母和数字，最多8个字符，不合适时用名称的哈希
+     */
+    private static String storedFileName(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+            } else if (c >= 'a' && c <= 'z') {
+                sb.append((char) (c - 'a' + 'A'));
+            }
+        }
+        if (sb.length() == 0 || sb.length() > 8 || sb.length() != name.length()) {
+            sb.setLength(0);
+            sb.append('T').append(String.format(Locale.US, "%07X", name.hashCode() & 0xFFFFFFF));
+        }
+        return sb.append(".BAS").toString();
+    }
+
+    private static int utf8Length(String s, int i) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            return 4;
+        }
+        return Character.isSurrogate(c) ? 1 : 3;
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static boolean[] toBooleanArray(List<Boolean> list) {
+        boolean[] array = new boolean[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,272 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模块：打印任务调度器
+ * <p>
+ * 每台设备一个写线程 + 一个有界队列：任务按提交顺序(FIFO)串行写入OUT端点，
+ * 不同任务的字节不会交错；队列满时拒绝（或限时等待）新任务，形成背压。
+ * 设置 {@link StatusGate} 后，写线程在任务之间查询打印机状态，打印机不可打印时暂缓任务。
+ */
+public class PrintJobScheduler {
+
+    private static final String TAG = "PrintJobScheduler";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * 打印任务，在调度线程上执行
+     */
+    public interface PrintJob {
+        boolean run() throws Exception;
+    }
+
+    /**
+     * 任务完成回调，在调度线程上触发
+     */
+    public interface JobCallback {
+        /**
+         * 任务已入队，在提交线程上调用；保证先于 onJobFinished
+         */
+        default void onJobQueued(long jobId) {
+        }
+
+        void onJobFinished(long jobId, boolean success, Exception error);
+    }
+
+    /**
+     * 任务间的状态检查，所有方法都在调度线程上调用
+     */
+    public interface StatusGate {
+        /**
+         * 空闲时两次 onIdle 的间隔，也是任务暂缓时重新检查的间隔
+         */
+        long getPollIntervalMs();
+
+        /**
+         * 队列空闲 getPollIntervalMs 后调用
+         */
+        void onIdle();
+
+        /**
+         * 任务执行前调用，返回false时任务暂缓
+         */
+        boolean isReadyForJob();
+    }
+
+    private final BlockingQueue<JobTask> mQueue;
+    private final AtomicLong mJobIdSeq = new AtomicLong();
+    private final Thread mWorker;
+    private volatile boolean mRunning = true;
+    private volatile JobTask mCurrent;
+    private volatile StatusGate mGate;
+    private volatile boolean mHolding;
+    private volatile Runnable mOnStopped;
+    // 只用于唤醒写线程的空任务
+    private final JobTask mWake = new JobTask(0, () -> true, null);
+
+    public PrintJobScheduler(String deviceName, int queueCapacity) {
+        mQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        mWorker = new Thread(this::loop, "fuse-print-" + deviceName);
+        mWorker.setDaemon(true);
+        mWorker.start();
+    }
+
+    /**
+     * 提交任务，队列已满时立即拒绝，不阻塞调用线程（平台线程使用）
+     *
+     * @return 任务Future，被拒绝时返回null
+     */
+    public Future<Boolean> submit(PrintJob job, JobCallback callback) {
+        return submit(job, callback, 0);
+    }
+
+    /**
+     * 提交任务，队列已满时最多等待 timeoutMs（后台线程使用）
+     *
+     * @return 任务Future，超时或调度器已关闭时返回null
+     */
+    public Future<Boolean> submit(PrintJob job, JobCallback callback, long timeoutMs) {
+        if (!mRunning) {
+            Log.e(TAG, "调度器已关闭，拒绝任务");
+            return null;
+        }
+        JobTask task = new JobTask(mJobIdSeq.incrementAndGet(), job, callback);
+        boolean queued;
+        // 持有任务锁直到 onJobQueued 返回，任务即使立刻执行完，done() 也要等这里结束
+        synchronized (task) {
+            try {
+                queued = timeoutMs > 0
+                        ? mQueue.offer(task, timeoutMs, TimeUnit.MILLISECONDS)
+                        : mQueue.offer(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+            if (queued && callback != null) {
+                callback.onJobQueued(task.mJobId);
+            }
+        }
+        if (!queued) {
+            Log.w(TAG, "打印队列已满，拒绝任务：" + task.mJobId);
+            return null;
+        }
+        return task;
+    }
+
+    /**
+     * 设置任务间的状态检查，null 表示不检查
+     */
+    public void setStatusGate(StatusGate gate) {
+        mGate = gate;
+        // 唤醒空闲等待，按新的间隔重新计时；不能中断写线程，它可能正在传输
+        mQueue.offer(mWake);
+    }
+
+    /**
+     * 是否因打印机不可打印而暂缓任务
+     */
+    public boolean isHolding() {
+        return mHolding;
+    }
+
+    /**
+     * 当前排队 + 执行中的任务数
+     */
+    public int getPendingCount() {
+        return mQueue.size() + (mCurrent != null ? 1 : 0);
+    }
+
+    /**
+     * 关闭调度器，未执行的任务以取消结束
+     */
+    public void shutdown() {
+        shutdown(null);
+    }
+
+    /**
+     * 关闭调度器，onStopped 在写线程退出前于写线程上执行，用于释放只能在写线程上使用的资源
+     */
+    public void shutdown(Runnable onStopped) {
+        mOnStopped = onStopped;
+        mRunning = false;
+        mWorker.interrupt();
+        JobTask task;
+        while ((task = mQueue.poll()) != null) {
+            task.cancel(false);
+        }
+    }
+
+    private void loop() {
+        try {
+            runLoop();
+        } finally {
+            Runnable onStopped = mOnStopped;
+            if (onStopped != null) {
+                onStopped.run();
+            }
+        }
+    }
+
+    private void runLoop() {
+        while (mRunning) {
+            JobTask task;
+            try {
+                StatusGate gate = mGate;
+                if (gate == null) {
+                    task = mQueue.take();
+                } else {
+                    task = mQueue.poll(gate.getPollIntervalMs(), TimeUnit.MILLISECONDS);
+                    if (task == null) {
+                        gate.onIdle();
+                        continue;
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (task == mWake) {
+                continue;
+            }
+            mCurrent = task;
+            if (!awaitReady()) {
+                task.cancel(false);
+                mCurrent = null;
+                break;
+            }
+            task.run();
+            mCurrent = null;
+        }
+    }
+
+    /**
+     * 打印机不可打印时暂缓当前任务，直到恢复或状态检查被移除
+     *
+     * @return false 表示调度器已关闭
+     */
+    private boolean awaitReady() {
+        StatusGate gate;
+        while ((gate = mGate) != null && !gate.isReadyForJob()) {
+            if (!mHolding) {
+                mHolding = true;
+                Log.w(TAG, "打印机不可打印，暂缓任务");
+            }
+            try {
+                Thread.sleep(gate.getPollIntervalMs());
+            } catch (InterruptedException e) {
+                if (!mRunning) {
+                    mHolding = false;
+                    return false;
+                }
+            }
+        }
+        if (mHolding) {
+            mHolding = false;
+            Log.i(TAG, "打印机恢复，继续任务");
+        }
+        return true;
+    }
+
+    private static final class JobTask extends FutureTask<Boolean> {
+        private final long mJobId;
+        private final JobCallback mCallback;
+
+        JobTask(long jobId, PrintJob job, JobCallback callback) {
+            super(job::run);
+            this.mJobId = jobId;
+            this.mCallback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (mCallback == null) return;
+            boolean success = false;
+            Exception error = null;
+            try {
+                success = Boolean.TRUE.equals(get());
+            } catch (CancellationException e) {
+                error = e;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                error = cause instanceof Exception ? (Exception) cause : e;
+                Log.e(TAG, "打印任务异常：" + mJobId, cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = e;
+            }
+            synchronized (this) {
+                mCallback.onJobFinished(mJobId, success, error);
+            }
+        }
+    }
+}
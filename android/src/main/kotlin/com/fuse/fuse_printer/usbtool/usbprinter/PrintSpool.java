@@ -0,0 +1,293 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模块：持久化打印队列
+ * <p>
+ * 任务先追加到应用存储中的日志文件再发送，进程被杀或拔线后重新连接时从检查点继续。
+ * 一个任务由若干单元组成（通常一个单元是一张完整标签的指令），每个单元确认送达后追加一条检查点，
+ * 续打从第一个未确认的单元开始，不会从半张标签中间续发。
+ * <p>
+ * 日志只追加，记录格式（大端序）：
+ * 添加 [u8 1][u64 任务ID][u32 单元数]([u32 长度][数据])*；检查点 [u8 2][u64 任务ID][u32 已完成单元数]；
+ * 删除 [u8 3][u64 任务ID]。打开时重放日志，末尾不完整的记录（写入中途进程退出）被截掉。
+ * 写入不做 fsync：进程退出后数据仍在系统页缓存中，每个单元只多一次13字节的追加，对任务延迟的影响有上限；
+ * 掉电可能丢失最后几条检查点，此时会重发已打印的单元。队列清空时日志截断为0。
+ * 单元数据留在文件中，内存里只保存偏移和长度。
+ */
+public class PrintSpool {
+
+    private static final String TAG = "PrintSpool";
+
+    private static final String LOG_NAME = "spool.log";
+
+    private static final int RECORD_ADD = 1;
+    private static final int RECORD_CHECKPOINT = 2;
+    private static final int RECORD_REMOVE = 3;
+
+    /**
+     * 队列中的任务
+     */
+    public static final class Entry {
+        private final long mId;
+        private final long[] mOffsets;
+        private final int[] mLengths;
+        private volatile int mPrinted;
+
+        Entry(long id, long[] offsets, int[] lengths) {
+            this.mId = id;
+            this.mOffsets = offsets;
+            this.mLengths = lengths;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public int getTotal() {
+            return mLengths.length;
+        }
+
+        /**
+         * 已确认送达的单元数
+         */
+        public int getPrinted() {
+            return mPrinted;
+        }
+    }
+
+    private final File mDirectory;
+    private final RandomAccessFile mLog;
+    // 按添加顺序
+    private final Map<Long, Entry> mEntries = new LinkedHashMap<>();
+    private long mLength;
+    private long mNextId = 1;
+
+    public PrintSpool(File directory) throws IOException {
+        this.mDirectory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建目录：" + directory);
+        }
+        File file = new File(directory, LOG_NAME);
+        replay(file);
+        mLog = new RandomAccessFile(file, "rw");
+        if (mEntries.isEmpty()) {
+            mLength = 0;
+        }
+        if (mLog.length() != mLength) {
+            mLog.setLength(mLength);
+        }
+        if (!mEntries.isEmpty()) {
+            Log.i(TAG, "恢复未完成的任务 " + mEntries.size() + " 个");
+        }
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * 追加一个任务，返回任务ID
+     */
+    public synchronized long append(List<byte[]> units) throws IOException {
+        if (units.isEmpty()) {
+            throw new IllegalArgumentException("任务没有内容");
+        }
+        long id = mNextId++;
+        long[] offsets = new long[units.size()];
+        int[] lengths = new int[units.size()];
+        mLog.seek(mLength);
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.put((byte) RECORD_ADD).putLong(id).putInt(units.size());
+        mLog.write(header.array());
+        long position = mLength + header.capacity();
+        byte[] length = new byte[4];
+        for (int i = 0; i < units.size(); i++) {
+            byte[] unit = units.get(i);
+            ByteBuffer.wrap(length).putInt(unit.length);
+            mLog.write(length);
+            mLog.write(unit);
+            offsets[i] = position + 4;
+            lengths[i] = unit.length;
+            position += 4 + unit.length;
+        }
+        // 整条记录写完才计入，写入中途失败时下次追加覆盖
+        mLength = position;
+        mEntries.put(id, new Entry(id, offsets, lengths));
+        return id;
+    }
+
+    /**
+     * 读取任务的第 index 个单元
+     */
+    public synchronized byte[] readUnit(Entry entry, int index) throws IOException {
+        byte[] unit = new byte[entry.mLengths[index]];
+        mLog.seek(entry.mOffsets[index]);
+        mLog.readFully(unit);
+        return unit;
+    }
+
+    /**
+     * 记录前 printed 个单元已送达，全部完成时移出队列
+     *
+     * @return 任务仍在队列中（未被删除）
+     */
+    public synchronized boolean checkpoint(long id, int printed) throws IOException {
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            return false;
+        }
+        entry.mPrinted = printed;
+        if (printed >= entry.getTotal()) {
+            mEntries.remove(id);
+            if (compactIfEmpty()) {
+                return true;
+            }
+        }
+        ByteBuffer record = ByteBuffer.allocate(13);
+        record.put((byte) RECORD_CHECKPOINT).putLong(id).putInt(printed);
+        appendRecord(record.array());
+        return true;
+    }
+
+    /**
+     * 删除任务，未发送的单元不再发送
+     */
+    public synchronized boolean remove(long id) throws IOException {
+        if (mEntries.remove(id) == null) {
+            return false;
+        }
+        if (!compactIfEmpty()) {
+            ByteBuffer record = ByteBuffer.allocate(9);
+            record.put((byte) RECORD_REMOVE).putLong(id);
+            appendRecord(record.array());
+        }
+        return true;
+    }
+
+    public synchronized Entry get(long id) {
+        return mEntries.get(id);
+    }
+
+    /**
+     * 未完成的任务，按添加顺序
+     */
+    public synchronized List<Entry> getPending() {
+        return new ArrayList<>(mEntries.values());
+    }
+
+    /**
+     * 日志文件当前的有效长度
+     */
+    public synchronized long getLogBytes() {
+        return mLength;
+    }
+
+    public synchronized void close() {
+        try {
+            mLog.close();
+        } catch (IOException e) {
+            Log.e(TAG, "关闭日志失败", e);
+        }
+    }
+
+    private void appendRecord(byte[] record) throws IOException {
+        mLog.seek(mLength);
+        mLog.write(record);
+        mLength += record.length;
+    }
+
+    private boolean compactIfEmpty() throws IOException {
+        if (!mEntries.isEmpty()) {
+            return false;
+        }
+        mLog.setLength(0);
+        mLength = 0;
+        return true;
+    }
+
+    private void replay(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long position = 0;
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                long id = in.readLong();
+                position += 9;
+                if (type == RECORD_ADD) {
+                    int count = in.readInt();
+                    position += 4;
+                    if (count <= 0) {
+                        break;
+                    }
+                    long[] offsets = new long[count];
+                    int[] lengths = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        int length = in.readInt();
+                        if (length < 0) {
+                            throw new EOFException();
+                        }
+                        offsets[i] = position + 4;
+                        lengths[i] = length;
+                        skipFully(in, length);
+                        position += 4 + length;
+                    }
+                    mEntries.put(id, new Entry(id, offsets, lengths));
+                } else if (type == RECORD_CHECKPOINT) {
+                    int printed = in.readInt();
+                    position += 4;
+                    Entry entry = mEntries.get(id);
+                    if (entry != null) {
+                        entry.mPrinted = printed;
+                        if (printed >= entry.getTotal()) {
+                            mEntries.remove(id);
+                        }
+                    }
+                } else if (type == RECORD_REMOVE) {
+                    mEntries.remove(id);
+                } else {
+                    // 无法识别的记录，之后的内容都不可信
+                    break;
+                }
+                mNextId = Math.max(mNextId, id + 1);
+                valid = position;
+            }
+        } catch (EOFException e) {
+            // 末尾记录不完整
+        }
+        mLength = valid;
+        if (valid < file.length()) {
+            Log.w(TAG, "日志末尾 " + (file.length() - valid) + " 字节不完整，已丢弃");
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            length -= skipped;
+        }
+    }
+}
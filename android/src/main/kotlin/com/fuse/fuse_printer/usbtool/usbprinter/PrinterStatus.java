@@ -0,0 +1,127 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模块：打印机实时状态
+ * <p>
+ * 由打印机通过IN端点返回的状态字节解码而来：
+ * <ul>
+ * <li>TSPL：&lt;ESC&gt;!? 返回1字节，bit0 打印头打开、bit1 卡纸、bit2 缺纸、bit3 缺碳带、
+ * bit4 暂停、bit5 打印中、bit7 其他错误</li>
+ * <li>ESC/POS：DLE EOT 2 返回脱机原因（bit2 上盖打开、bit5 缺纸停止、bit6 错误），
+ * DLE EOT 4 返回纸张传感器（bit2/3 纸将尽、bit5/6 纸尽）</li>
+ * </ul>
+ * 打印机不响应时为 {@link #UNKNOWN}，此时不阻止发送任务。
+ */
+public final class PrinterStatus {
+
+    public static final String PROTOCOL_TSPL = "tspl";
+    public static final String PROTOCOL_ESCPOS = "escpos";
+
+    public static final PrinterStatus UNKNOWN = new PrinterStatus(null, -1,
+            false, false, false, false, false, false, false, false);
+
+    /** 解码所用协议，未知时为null */
+    public final String protocol;
+    /** 原始状态值，ESC/POS 为 (脱机原因 << 8 | 纸张传感器)，未知时为-1 */
+    public final int raw;
+    public final boolean headOpen;
+    public final boolean paperJam;
+    public final boolean paperOut;
+    public final boolean paperNearEnd;
+    public final boolean ribbonOut;
+    public final boolean paused;
+    public final boolean printing;
+    public final boolean error;
+
+    private PrinterStatus(String protocol, int raw, boolean headOpen, boolean paperJam, boolean paperOut,
+                          boolean paperNearEnd, boolean ribbonOut, boolean paused, boolean printing,
+                          boolean error) {
+        this.protocol = protocol;
+        this.raw = raw;
+        this.headOpen = headOpen;
+        this.paperJam = paperJam;
+        this.paperOut = paperOut;
+        this.paperNearEnd = paperNearEnd;
+        this.ribbonOut = ribbonOut;
+        this.paused = paused;
+        this.printing = printing;
+        this.error = error;
+    }
+
+    /**
+     * 解码 TSPL &lt;ESC&gt;!? 的应答
+     */
+    public static PrinterStatus fromTspl(int status) {
+        int b = status & 0xFF;
+        return new PrinterStatus(PROTOCOL_TSPL, b,
+                (b & 0x01) != 0, (b & 0x02) != 0, (b & 0x04) != 0, false,
+                (b & 0x08) != 0, (b & 0x10) != 0, (b & 0x20) != 0, (b & 0x80) != 0);
+    }
+
+    /**
+     * 解码 ESC/POS DLE EOT 2（脱机原因）和 DLE EOT 4（纸张传感器）的应答
+     */
+    public static PrinterStatus fromEscPos(int offlineCause, int paperSensor) {
+        int cause = offlineCause & 0xFF;
+        int paper = paperSensor & 0xFF;
+        return new PrinterStatus(PROTOCOL_ESCPOS, cause << 8 | paper,
+                (cause & 0x04) != 0, false, (cause & 0x20) != 0 || (paper & 0x60) != 0, (paper & 0x0C) != 0,
+                false, false, false, (cause & 0x40) != 0);
+    }
+
+    public boolean isKnown() {
+        return protocol != null;
+    }
+
+    /**
+     * 是否可以发送打印任务；打印中、纸将尽不影响，状态未知时也视为可以
+     */
+    public boolean isReady() {
+        return !(headOpen || paperJam || paperOut || ribbonOut || paused || error);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("known", isKnown());
+        map.put("ready", isReady());
+        map.put("protocol", protocol);
+        map.put("raw", raw);
+        map.put("headOpen", headOpen);
+        map.put("paperJam", paperJam);
+        map.put("paperOut", paperOut);
+        map.put("paperNearEnd", paperNearEnd);
+        map.put("ribbonOut", ribbonOut);
+        map.put("paused", paused);
+        map.put("printing", printing);
+        map.put("error", error);
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PrinterStatus)) return false;
+        PrinterStatus other = (PrinterStatus) o;
+        // 其余字段都由协议和原始值决定
+        return raw == other.raw && (protocol == null ? other.protocol == null : protocol.equals(other.protocol));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (protocol != null ? protocol.hashCode() : 0) + raw;
+    }
+
+    @Override
+    public String toString() {
+        if (!isKnown()) {
+            return "状态未知";
+        }
+        return protocol + " 状态 0x" + Integer.toHexString(raw) + (isReady() ? " 就绪" : " 不可打印")
+                + (headOpen ? " 打印头打开" : "") + (paperJam ? " 卡纸" : "") + (paperOut ? " 缺纸" : "")
+                + (paperNearEnd ? " 纸将尽" : "") + (ribbonOut ? " 缺碳带" : "") + (paused ? " 暂停" : "")
+                + (printing ? " 打印中" : "") + (error ? " 错误" : "");
+    }
+}
@@ -0,0 +1,129 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.util.ArrayDeque;
+
+/**
+ * 模块：分块上传的原始指令流
+ * <p>
+ * 大指令文件（几百KB的TSPL/ESC-POS）分块经方法通道传入，不必一次传一个大数组。
+ * 方法通道线程 {@link #offer} 放入分块，调度线程上的任务 {@link #next} 取出后立即交给写入器发送。
+ * 缓冲的字节数不超过 maxBufferedBytes（单个分块超过上限时也只缓冲这一块），缓冲满时
+ * offer 最多等待 waitMs 后返回 OFFER_FULL，由调用方稍后重试，不会无限阻塞方法通道。
+ * <p>
+ * 发送端在 idleTimeoutMs 内既不送数据也不结束时任务失败，避免调用方异常退出后一直占用打印机。
+ */
+public class RawCommandStream {
+
+    public static final int DEFAULT_MAX_BUFFERED_BYTES = 256 * 1024;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+
+    public static final int OFFER_ACCEPTED = 1;
+    public static final int OFFER_FULL = 0;
+    public static final int OFFER_CLOSED = -1;
+
+    private final long mId;
+    private final int mMaxBufferedBytes;
+    private final long mIdleTimeoutMs;
+    private final ArrayDeque<byte[]> mChunks = new ArrayDeque<>();
+    private int mBufferedBytes;
+    private long mReceivedBytes;
+    private boolean mEnded;
+    // 取消、超时或任务已结束
+    private boolean mClosed;
+
+    public RawCommandStream(long id) {
+        this(id, DEFAULT_MAX_BUFFERED_BYTES, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    public RawCommandStream(long id, int maxBufferedBytes, long idleTimeoutMs) {
+        this.mId = id;
+        this.mMaxBufferedBytes = Math.max(1, maxBufferedBytes);
+        this.mIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * 放入一个分块，缓冲满时最多等待 waitMs
+     * @return OFFER_ACCEPTED / OFFER_FULL（稍后重试） / OFFER_CLOSED（流已结束或失败）
+     */
+    public synchronized int offer(byte[] chunk, long waitMs) throws InterruptedException {
+        if (mClosed || mEnded) {
+            return OFFER_CLOSED;
+        }
+        if (chunk == null || chunk.length == 0) {
+            return OFFER_ACCEPTED;
+        }
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (!mChunks.isEmpty() && mBufferedBytes + chunk.length > mMaxBufferedBytes) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return OFFER_FULL;
+            }
+            wait(remaining);
+            if (mClosed) {
+                return OFFER_CLOSED;
+            }
+        }
+        mChunks.addLast(chunk);
+        mBufferedBytes += chunk.length;
+        mReceivedBytes += chunk.length;
+        notifyAll();
+        return OFFER_ACCEPTED;
+    }
+
+    /**
+     * 数据已全部送出，缓冲发完后任务结束
+     */
+    public synchronized void end() {
+        mEnded = true;
+        notifyAll();
+    }
+
+    /**
+     * 放弃本流：丢弃缓冲，正在等待的 offer/next 立即返回
+     */
+    public synchronized void close() {
+        mClosed = true;
+        mChunks.clear();
+        mBufferedBytes = 0;
+        notifyAll();
+    }
+
+    /**
+     * 取下一个分块，在调度线程上调用
+     * @return 分块；数据已全部取完时返回null
+     * @throws IllegalStateException 流被放弃或发送端超时
+     */
+    public synchronized byte[] next() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + mIdleTimeoutMs;
+        while (mChunks.isEmpty()) {
+            if (mClosed) {
+                throw new IllegalStateException("指令流 " + mId + " 已取消");
+            }
+            if (mEnded) {
+                return null;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                mClosed = true;
+                throw new IllegalStateException("指令流 " + mId + " 超过 " + mIdleTimeoutMs + "ms 没有数据");
+            }
+            wait(remaining);
+        }
+        byte[] chunk = mChunks.pollFirst();
+        mBufferedBytes -= chunk.length;
+        notifyAll();
+        return chunk;
+    }
+
+    public synchronized int getBufferedBytes() {
+        return mBufferedBytes;
+    }
+
+    public synchronized long getReceivedBytes() {
+        return mReceivedBytes;
+    }
+}
@@ -0,0 +1,181 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 模块：打印机状态轮询
+ * <p>
+ * 作为调度器的 {@link PrintJobScheduler.StatusGate}，只在任务之间、在写线程上通过IN端点查询状态，
+ * 查询指令不会插进任务数据中间。
+ * <p>
+ * 轮询间隔自适应：状态变化、不可打印或刚发送过任务时按 MIN_INTERVAL_MS 查询，
+ * 状态稳定后逐次加倍到 MAX_INTERVAL_MS；发送任务前状态超过 STALE_MS 才重新查询。
+ * 连续 MAX_MISSES 次无应答视为打印机不支持状态查询，之后不再查询，重新连接或重新设置协议后才恢复。
+ * <p>
+ * 查询指令与协议相关（TSPL 的 ESC ! ? 在 ESC/POS 打印机上是 ESC ! n，会把打印模式改成粗体倍高倍宽），
+ * 因此设置协议之前不发送任何查询。
+ */
+public class StatusMonitor implements PrintJobScheduler.StatusGate {
+
+    private static final String TAG = "StatusMonitor";
+
+    static final long MIN_INTERVAL_MS = 250;
+    static final long MAX_INTERVAL_MS = 5000;
+    static final long STALE_MS = 1000;
+    private static final int READ_TIMEOUT_MS = 200;
+    static final int MAX_MISSES = 3;
+
+    private static final byte[] TSPL_STATUS = {0x1B, '!', '?'};
+    private static final byte[] ESCPOS_OFFLINE_CAUSE = {0x10, 0x04, 0x02};
+    private static final byte[] ESCPOS_PAPER_SENSOR = {0x10, 0x04, 0x04};
+
+    public interface Listener {
+        /**
+         * 状态变化，在调度线程上调用
+         */
+        void onStatusChanged(PrinterStatus status);
+    }
+
+    private final BulkTransport mTransport;
+    private final Listener mListener;
+    private final byte[] mReadBuffer = new byte[64];
+
+    // 为 null 表示未设置协议，不查询
+    private volatile String mProtocol;
+    private volatile PrinterStatus mStatus = PrinterStatus.UNKNOWN;
+    private volatile long mInterval = MIN_INTERVAL_MS;
+    private long mLastPoll;
+    private long mPollCount;
+    private volatile int mMisses;
+
+    public StatusMonitor(BulkTransport transport, Listener listener) {
+        this.mTransport = transport;
+        this.mListener = listener;
+    }
+
+    /**
+     * 状态查询指令的协议，PrinterStatus.PROTOCOL_TSPL 或 PROTOCOL_ESCPOS，null 表示不查询
+     */
+    public void setProtocol(String protocol) {
+        if (protocol == null) {
+            mProtocol = null;
+        } else {
+            mProtocol = PrinterStatus.PROTOCOL_ESCPOS.equals(protocol)
+                    ? PrinterStatus.PROTOCOL_ESCPOS : PrinterStatus.PROTOCOL_TSPL;
+        }
+        reset();
+    }
+
+    /**
+     * 重新连接后调用：清除无应答计数，新接入的打印机重新尝试查询
+     */
+    public void reset() {
+        mMisses = 0;
+        mInterval = MIN_INTERVAL_MS;
+    }
+
+    public PrinterStatus getStatus() {
+        return mStatus;
+    }
+
+    public long getPollCount() {
+        return mPollCount;
+    }
+
+    /**
+     * 打印机是否不响应状态查询
+     */
+    public boolean isUnresponsive() {
+        return mMisses >= MAX_MISSES;
+    }
+
+    /**
+     * 是否已设置协议并且打印机响应查询
+     */
+    public boolean isActive() {
+        return mProtocol != null && !isUnresponsive();
+    }
+
+    @Override
+    public long getPollIntervalMs() {
+        // 不查询时按最长间隔唤醒，避免空转
+        return isActive() ? mInterval : MAX_INTERVAL_MS;
+    }
+
+    @Override
+    public void onIdle() {
+        if (isActive()) {
+            poll();
+        }
+    }
+
+    @Override
+    public boolean isReadyForJob() {
+        if (!isActive()) {
+            return true;
+        }
+        PrinterStatus status = mStatus;
+        if (!status.isReady() || mPollCount == 0 || SystemClock.elapsedRealtime() - mLastPoll >= STALE_MS) {
+            status = poll();
+        }
+        // 任务发出后尽快确认打印机状态（缺纸常在打印过程中出现）
+        mInterval = MIN_INTERVAL_MS;
+        return status.isReady();
+    }
+
+    /**
+     * 查询一次状态，状态变化时通知监听者
+     */
+    PrinterStatus poll() {
+        mLastPoll = SystemClock.elapsedRealtime();
+        mPollCount++;
+        PrinterStatus status;
+        String protocol = mProtocol;
+        boolean queryable = protocol != null && mTransport.getMaxPacketSize() > 0;
+        if (!queryable) {
+            status = PrinterStatus.UNKNOWN;
+        } else if (PrinterStatus.PROTOCOL_ESCPOS.equals(protocol)) {
+            int cause = query(ESCPOS_OFFLINE_CAUSE);
+            int paper = cause < 0 ? -1 : query(ESCPOS_PAPER_SENSOR);
+            status = paper < 0 ? PrinterStatus.UNKNOWN : PrinterStatus.fromEscPos(cause, paper);
+        } else {
+            int b = query(TSPL_STATUS);
+            status = b < 0 ? PrinterStatus.UNKNOWN : PrinterStatus.fromTspl(b);
+        }
+
+        if (status.isKnown()) {
+            mMisses = 0;
+        } else if (queryable && mMisses < MAX_MISSES && ++mMisses == MAX_MISSES) {
+            Log.w(TAG, "打印机不响应状态查询（" + protocol + "），停止查询");
+        }
+
+        PrinterStatus previous = mStatus;
+        mStatus = status;
+        if (isUnresponsive()) {
+            mInterval = MAX_INTERVAL_MS;
+        } else if (!status.equals(previous) || !status.isReady()) {
+            mInterval = MIN_INTERVAL_MS;
+        } else {
+            mInterval = Math.min(mInterval * 2, MAX_INTERVAL_MS);
+        }
+        if (!status.equals(previous)) {
+            Log.i(TAG, "打印机" + status);
+            if (mListener != null) {
+                mListener.onStatusChanged(status);
+            }
+        }
+        return status;
+    }
+
+    /**
+     * 发送查询指令并读取应答，返回最后一个字节（之前的可能是残留数据），无应答返回-1
+     */
+    private int query(byte[] command) {
+        if (mTransport.writeData(command, 0, command.length) != command.length || !mTransport.flush()) {
+            return -1;
+        }
+        int n = mTransport.readData(mReadBuffer, 0, mReadBuffer.length, READ_TIMEOUT_MS);
+        return n > 0 ? mReadBuffer[n - 1] & 0xFF : -1;
+    }
+}
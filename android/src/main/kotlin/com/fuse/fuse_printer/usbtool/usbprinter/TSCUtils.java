@@ -1,14 +1,8 @@
 package com.fuse.fuse_printer.usbtool.usbprinter;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
 import android.util.Log;
 
-import java.io.IOException;
-
 /**
  * 作者：CaoLiulang
  * ❤
@@ -29,12 +23,27 @@ public class TSCUtils {
     public static final byte GS = 0x1D;
     public static final byte HT = 0x09;
 
+    // 每个线程复用一个指令构建器
+    private static final ThreadLocal<TsplWriter> COMMAND = new ThreadLocal<TsplWriter>() {
+        @Override
+        protected TsplWriter initialValue() {
+            return new TsplWriter();
+        }
+    };
+
+    // 每个线程复用一个图像编码器（行缓冲随最大宽度增长）
+    private static final ThreadLocal<LabelImageEncoder> IMAGE_ENCODER = new ThreadLocal<LabelImageEncoder>() {
+        @Override
+        protected LabelImageEncoder initialValue() {
+            return new LabelImageEncoder();
+        }
+    };
+
     /**
      * 初始化打印机
      */
     public static byte[] initPrinter() {
-        String command = "INIT" + CR + LF;
-        return command.getBytes();
+        return command().init().toByteArray();
     }
 
     /**
@@ -43,8 +52,7 @@ public class TSCUtils {
      * height 标签高度(mm)
      */
     public static byte[] setLabelSize(int width, int height) {
-        String command = "SIZE " + width + "," + height + CR + LF;
-        return command.getBytes();
+        return command().size(width, height).toByteArray();
     }
 
     /**
@@ -52,8 +60,7 @@ public class TSCUtils {
      * offset 偏移量(mm)
      */
     public static byte[] setGap(int offset) {
-        String command = "GAP " + offset + ",0" + CR + LF;
-        return command.getBytes();
+        return command().gap(offset, 0).toByteArray();
     }
 
     /**
@@ -61,8 +68,7 @@ public class TSCUtils {
      * direction 0:正向 1:反向
      */
     public static byte[] setDirection(int direction) {
-        String command = "DIRECTION " + direction + CR + LF;
-        return command.getBytes();
+        return command().direction(direction).toByteArray();
     }
 
     /**
@@ -70,8 +76,7 @@ public class TSCUtils {
      * speed 打印速度(1-6)
      */
     public static byte[] setPrintSpeed(int speed) {
-        String command = "SPEED " + speed + CR + LF;
-        return command.getBytes();
+        return command().speed(speed).toByteArray();
     }
 
     /**
@@ -79,8 +84,7 @@ public class TSCUtils {
      * density 打印浓度(0-15)
      */
     public static byte[] setPrintDensity(int density) {
-        String command = "DENSITY " + density + CR + LF;
-        return command.getBytes();
+        return command().density(density).toByteArray();
     }
 
     /**
@@ -89,8 +93,7 @@ public class TSCUtils {
      * y 参考点y坐标
      */
     public static byte[] setReference(int x, int y) {
-        String command = "REFERENCE " + x + "," + y + CR + LF;
-        return command.getBytes();
+        return command().reference(x, y).toByteArray();
     }
 
     /**
@@ -98,16 +101,14 @@ public class TSCUtils {
      * position 撕纸位置
      */
     public static byte[] setTearPosition(int position) {
-        String command = "TEAR " + position + CR + LF;
-        return command.getBytes();
+        return command().tear(position).toByteArray();
     }
 
     /**
      * 清除图像缓冲区
      */
     public static byte[] clearBuffer() {
-        String command = "CLS" + CR + LF;
-        return command.getBytes();
+        return command().cls().toByteArray();
     }
 
     /**
@@ -121,8 +122,7 @@ public class TSCUtils {
      * content 文本内容
      */
     public static byte[] printText(int x, int y, int font, int rotation, int x_multi, int y_multi, String content) {
-        String command = "TEXT " + x + "," + y + ",\"TSS24.BF2\"," + rotation + "," + x_multi + "," + y_multi + ",\"" + content + "\"" + CR + LF;
-        return command.getBytes();
+        return command().text(x, y, "TSS24.BF2", rotation, x_multi, y_multi, content).toByteArray();
     }
 
     /**
@@ -138,8 +138,7 @@ public class TSCUtils {
      * content 条码内容
      */
     public static byte[] printBarcode(int x, int y, String type, int height, int readable, int rotation, int narrow, int wide, String content) {
-        String command = "BARCODE " + x + "," + y + ",\"" + type + "\"," + height + "," + readable + "," + rotation + "," + narrow + "," + wide + ",\"" + content + "\"" + CR + LF;
-        return command.getBytes();
+        return command().barcode(x, y, type, height, readable, rotation, narrow, wide, content).toByteArray();
     }
 
     /**
@@ -152,8 +151,7 @@ public class TSCUtils {
      * content 二维码内容
      */
     public static byte[] printQRCode(int x, int y, String level, int cell_width, int rotation, String content) {
-        String command = "QRCODE " + x + "," + y + ",\"" + level + "\"," + cell_width + "," + rotation + ",\"" + content + "\"" + CR + LF;
-        return command.getBytes();
+        return command().qrcode(x, y, level.charAt(0), cell_width, 'A', rotation, content).toByteArray();
     }
 
     /**
@@ -165,14 +163,33 @@ public class TSCUtils {
      * bitmap 位图数据
      */
     public static byte[] printImage(int x, int y, int width, int height, Bitmap bitmap) {
+        return printImage(x, y, width, height, bitmap, LabelImageEncoder.DitherMode.THRESHOLD);
+    }
+
+    /**
+     * 打印图像
+     * x 图像x坐标
+     * y 图像y坐标
+     * width 图像宽度
+     * height 图像高度
+     * bitmap 位图数据
+     * ditherMode 二值化方式（阈值/误差扩散/有序抖动）
+     */
+    public static byte[] printImage(int x, int y, int width, int height, Bitmap bitmap,
+                                    LabelImageEncoder.DitherMode ditherMode) {
         try {
-            // 将位图转换为黑白
-            Bitmap grayBitmap = convertToGrayscale(bitmap);
-            // 将位图转换为TSC格式
-            byte[] imageData = convertBitmapToTSCData(grayBitmap, width, height);
-            // 构造打印图像命令
-            String command = "BITMAP " + x + "," + y + "," + (width / 8) + "," + height + ",1,";
-            return concatBytes(command.getBytes(), imageData, new byte[]{CR, LF});
+            int bytesPerLine = LabelImageEncoder.bytesPerLine(width);
+            TsplWriter header = command().bitmapHeader(x, y, bytesPerLine, height, 0);
+            int dataLength = bytesPerLine * height;
+            // 指令头、点阵数据、结束符直接写入同一个数组
+            byte[] command = new byte[header.size() + dataLength + 2];
+            System.arraycopy(header.buffer(), 0, command, 0, header.size());
+            LabelImageEncoder encoder = IMAGE_ENCODER.get();
+            encoder.setDitherMode(ditherMode);
+            encoder.encode(LabelImageEncoder.of(bitmap), width, height, command, header.size());
+            command[command.length - 2] = CR;
+            command[command.length - 1] = LF;
+            return command;
         } catch (Exception e) {
             Log.e(TAG, "转换图像失败: " + e.getMessage());
             e.printStackTrace();
@@ -185,127 +202,72 @@ public class TSCUtils {
      * copies 打印份数
      */
     public static byte[] setPrintCopies(int copies) {
-        String command = "PRINT " + copies + ",1" + CR + LF;
-        return command.getBytes();
+        return command().print(copies, 1).toByteArray();
     }
 
     /**
      * 进纸
      */
     public static byte[] feedPaper() {
-        String command = "FEED" + CR + LF;
-        return command.getBytes();
+        return command().feed().toByteArray();
     }
 
     /**
      * 回纸
      */
     public static byte[] backFeedPaper() {
-        String command = "BACKFEED" + CR + LF;
-        return command.getBytes();
+        return command().backFeed().toByteArray();
     }
 
     /**
      * 切断纸张
      */
     public static byte[] cutPaper() {
-        String command = "CUT" + CR + LF;
-        return command.getBytes();
+        return command().cut().toByteArray();
     }
 
     /**
-     * 将位图转换为灰度图
+     * 当前线程复用的指令构建器（已清空）
      */
-    private static Bitmap convertToGrayscale(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        
-        Bitmap grayscaleBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(grayscaleBitmap);
-        Paint paint = new Paint();
-        
-        ColorMatrix colorMatrix = new ColorMatrix();
-        colorMatrix.setSaturation(0);
-        ColorMatrixColorFilter colorFilter = new ColorMatrixColorFilter(colorMatrix);
-        paint.setColorFilter(colorFilter);
-        
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-        
-        return grayscaleBitmap;
+    private static TsplWriter command() {
+        return COMMAND.get().reset();
     }
 
     /**
-     * 将位图转换为TSC格式数据
+     * 发送TSC命令到打印机，所有命令合并为尽量少的USB传输
+     * writer 合并写入器
+     * commands 命令数组
      */
-    private static byte[] convertBitmapToTSCData(Bitmap bitmap, int width, int height) throws IOException {
-        // 调整位图大小
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, width, height, false);
-        
-        int bytesPerLine = (width + 7) / 8; // 每8个像素为一个字节
-        byte[] imageData = new byte[bytesPerLine * height];
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int pixel = resizedBitmap.getPixel(x, y);
-                int gray = (pixel >> 16 & 0xff + pixel >> 8 & 0xff + pixel & 0xff) / 3;
-                
-                // 黑点(0)，白点(1)
-                if (gray < 128) {
-                    int bitIndex = x % 8;
-                    int byteIndex = (y * bytesPerLine) + (x / 8);
-                    imageData[byteIndex] |= (1 << (7 - bitIndex));
+    public static boolean sendTSCCommands(UsbBulkWriter writer, byte[]... commands) {
+        try {
+            for (byte[] command : commands) {
+                if (command != null) {
+                    writer.write(command);
                 }
             }
+            return writer.endJob();
+        } catch (Exception e) {
+            Log.e(TAG, "发送TSC命令失败: " + e.getMessage());
+            e.printStackTrace();
+            writer.discardJob();
+            return false;
         }
-        
-        return imageData;
-    }
-
-    /**
-     * 合并多个字节数组
-     */
-    private static byte[] concatBytes(byte[]... arrays) {
-        int totalLength = 0;
-        for (byte[] array : arrays) {
-            totalLength += array.length;
-        }
-        
-        byte[] result = new byte[totalLength];
-        int currentIndex = 0;
-        
-        for (byte[] array : arrays) {
-            System.arraycopy(array, 0, result, currentIndex, array.length);
-            currentIndex += array.length;
-        }
-        
-        return result;
     }
 
     /**
-     * 发送TSC命令到打印机
-     * usbUtil USB工具类实例
-     * commands 命令数组
+     * 发送 TsplWriter 中构建好的整张标签
+     * writer 合并写入器
+     * label 标签指令
      */
-    public static boolean sendTSCCommands(USBUtil usbUtil, byte[]... commands) {
-        if (usbUtil == null || !usbUtil.isConnected()) {
-            Log.e(TAG, "USB设备未连接");
-            return false;
-        }
-        
+    public static boolean sendTSCCommands(UsbBulkWriter writer, TsplWriter label) {
         try {
-            for (byte[] command : commands) {
-                if (command != null) {
-                    boolean success = usbUtil.sendData(command);
-                    if (!success) {
-                        return false;
-                    }
-                }
-            }
-            return true;
+            writer.write(label.buffer(), 0, label.size());
+            return writer.endJob();
         } catch (Exception e) {
             Log.e(TAG, "发送TSC命令失败: " + e.getMessage());
             e.printStackTrace();
+            writer.discardJob();
             return false;
         }
     }
-}
\ No newline at end of file
+}
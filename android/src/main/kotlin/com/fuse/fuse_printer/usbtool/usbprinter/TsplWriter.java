@@ -0,0 +1,334 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import java.util.Arrays;
+
+/**
+ * 模块：TSPL指令构建器
+ * <p>
+ * 数字、引号字段、CRLF 直接写入一个可增长、可复用的字节缓冲区，不产生中间 String。
+ * 引号内的文本按 UTF-8 编码，其中的双引号按 TSPL 规则写成 \["]。
+ * 同一实例只能在单个线程上使用，{@link #reset()} 后缓冲区可以继续复用。
+ * <pre>
+ * writer.reset().size(60, 40).gap(2, 0).cls()
+ *       .text(20, 20, "TSS24.BF2", 0, 1, 1, "名称")
+ *       .print(1, 1);
+ * usbWriter.write(writer.buffer(), 0, writer.size());
+ * </pre>
+ */
+public class TsplWriter {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final byte CR = 0x0D;
+    private static final byte LF = 0x0A;
+    private static final byte QUOTE = '"';
+
+    private byte[] mBuf;
+    private int mSize;
+
+    public TsplWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TsplWriter(int capacity) {
+        mBuf = new byte[Math.max(16, capacity)];
+    }
+
+    /**
+     * 清空内容，保留缓冲区
+     */
+    public TsplWriter reset() {
+        mSize = 0;
+        return this;
+    }
+
+    /**
+     * 已写入字节数
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * 内部缓冲区，有效内容为 [0, size())
+     */
+    public byte[] buffer() {
+        return mBuf;
+    }
+
+    /**
+     * 复制当前内容
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mBuf, mSize);
+    }
+
+    // ---------------------------------------------------------------- 基本写入
+
+    /**
+     * 写入ASCII关键字（指令名、参数名等），不做编码转换
+     */
+    public TsplWriter ascii(String s) {
+        int n = s.length();
+        ensure(n);
+        byte[] buf = mBuf;
+        int p = mSize;
+        for (int i = 0; i < n; i++) {
+            buf[p++] = (byte) s.charAt(i);
+        }
+        mSize = p;
+        return this;
+    }
+
+    public TsplWriter ascii(char c) {
+        ensure(1);
+        mBuf[mSize++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * 写入十进制数字
+     */
+    public TsplWriter num(int value) {
+        ensure(11);
+        if (value < 0) {
+            mBuf[mSize++] = '-';
+            if (value == Integer.MIN_VALUE) {
+                return ascii("2147483648");
+            }
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int p = mSize + digits;
+        mSize = p;
+        do {
+            mBuf[--p] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return this;
+    }
+
+    public TsplWriter comma() {
+        ensure(1);
+        mBuf[mSize++] = ',';
+        return this;
+    }
+
+    /**
+     * 写入带双引号的字段，内容按 UTF-8 编码
+     */
+    public TsplWriter quoted(String s) {
+        ensure(2);
+        mBuf[mSize++] = QUOTE;
+        utf8(s);
+        ensure(1);
+        mBuf[mSize++] = QUOTE;
+        return this;
+    }
+
+    /**
+     * 写入引号内的文本（不含两侧引号），UTF-8 编码并转义双引号
+     */
+    public TsplWriter escaped(String s) {
+        utf8(s);
+        return this;
+    }
+
+    /**
+     * 指令结束符 CR LF
+     */
+    public TsplWriter crlf() {
+        ensure(2);
+        mBuf[mSize++] = CR;
+        mBuf[mSize++] = LF;
+        return this;
+    }
+
+    /**
+     * 写入原始字节（点阵数据等）
+     */
+    public TsplWriter raw(byte[] data, int offset, int length) {
+        ensure(length);
+        System.arraycopy(data, offset, mBuf, mSize, length);
+        mSize += length;
+        return this;
+    }
+
+    public TsplWriter raw(byte[] data) {
+        return raw(data, 0, data.length);
+    }
+
+    /**
+     * 写入原样的指令文本（UTF-8，不转义），换行统一为 CR LF，末尾没有换行时补上
+     */
+    public TsplWriter commands(String text) {
+        int n = text.length();
+        int lineStart = 0;
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\n') {
+                utf8(text, lineStart, i, false);
+                crlf();
+                if (c == '\r' && i + 1 < n && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < n) {
+            utf8(text, lineStart, n, false);
+            crlf();
+        }
+        return this;
+    }
+
+    // ---------------------------------------------------------------- 指令
+
+    public TsplWriter init() {
+        return ascii("INIT").crlf();
+    }
+
+    /**
+     * SIZE 宽,高（mm）
+     */
+    public TsplWriter size(int width, int height) {
+        return ascii("SIZE ").num(width).comma().num(height).crlf();
+    }
+
+    /**
+     * GAP 间隙,偏移（mm）
+     */
+    public TsplWriter gap(int distance, int offset) {
+        return ascii("GAP ").num(distance).comma().num(offset).crlf();
+    }
+
+    public TsplWriter direction(int direction) {
+        return ascii("DIRECTION ").num(direction).crlf();
+    }
+
+    public TsplWriter speed(int speed) {
+        return ascii("SPEED ").num(speed).crlf();
+    }
+
+    public TsplWriter density(int density) {
+        return ascii("DENSITY ").num(density).crlf();
+    }
+
+    public TsplWriter reference(int x, int y) {
+        return ascii("REFERENCE ").num(x).comma().num(y).crlf();
+    }
+
+    public TsplWriter tear(int position) {
+        return ascii("TEAR ").num(position).crlf();
+    }
+
+    public TsplWriter cls() {
+        return ascii("CLS").crlf();
+    }
+
+    /**
+     * TEXT x,y,"字体",旋转,横向倍数,纵向倍数,"内容"
+     */
+    public TsplWriter text(int x, int y, String font, int rotation, int xMulti, int yMulti, String content) {
+        return ascii("TEXT ").num(x).comma().num(y).comma().quoted(font).comma()
+                .num(rotation).comma().num(xMulti).comma().num(yMulti).comma().quoted(content).crlf();
+    }
+
+    /**
+     * BARCODE x,y,"类型",高度,可读,旋转,窄条,宽条,"内容"
+     */
+    public TsplWriter barcode(int x, int y, String type, int height, int readable, int rotation,
+                              int narrow, int wide, String content) {
+        return ascii("BARCODE ").num(x).comma().num(y).comma().quoted(type).comma()
+                .num(height).comma().num(readable).comma().num(rotation).comma()
+                .num(narrow).comma().num(wide).comma().quoted(content).crlf();
+    }
+
+    /**
+     * QRCODE x,y,纠错级别,单元宽度,模式,旋转,"内容"
+     * level L/M/Q/H，mode A(自动)/M(手动)
+     */
+    public TsplWriter qrcode(int x, int y, char level, int cellWidth, char mode, int rotation, String content) {
+        return ascii("QRCODE ").num(x).comma().num(y).comma().ascii(level).comma()
+                .num(cellWidth).comma().ascii(mode).comma().num(rotation).comma().quoted(content).crlf();
+    }
+
+    /**
+     * BITMAP x,y,每行字节数,行数,模式, —— 之后紧跟点阵数据
+     */
+    public TsplWriter bitmapHeader(int x, int y, int bytesPerLine, int rows, int mode) {
+        return ascii("BITMAP ").num(x).comma().num(y).comma().num(bytesPerLine).comma()
+                .num(rows).comma().num(mode).comma();
+    }
+
+    /**
+     * PRINT 份数,每份重复次数
+     */
+    public TsplWriter print(int sets, int copies) {
+        return ascii("PRINT ").num(sets).comma().num(copies).crlf();
+    }
+
+    public TsplWriter feed() {
+        return ascii("FEED").crlf();
+    }
+
+    public TsplWriter backFeed() {
+        return ascii("BACKFEED").crlf();
+    }
+
+    public TsplWriter cut() {
+        return ascii("CUT").crlf();
+    }
+
+    // ---------------------------------------------------------------- 内部
+
+    private void utf8(String s) {
+        utf8(s, 0, s.length(), true);
+    }
+
+    private void utf8(String s, int start, int end, boolean escapeQuotes) {
+        int n = end;
+        // 最坏情况每个字符3字节（代理对4字节对应2个字符），引号转义为4字节
+        ensure((end - start) * 4);
+        byte[] buf = mBuf;
+        int p = mSize;
+        for (int i = start; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == QUOTE && escapeQuotes) {
+                buf[p++] = '\\';
+                buf[p++] = '[';
+                buf[p++] = QUOTE;
+                buf[p++] = ']';
+            } else if (c < 0x80) {
+                buf[p++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[p++] = (byte) (0xC0 | c >> 6);
+                buf[p++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[p++] = (byte) (0xF0 | cp >> 18);
+                buf[p++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[p++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[p++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符与 String.getBytes 一样替换为 '?'
+                buf[p++] = '?';
+            } else {
+                buf[p++] = (byte) (0xE0 | c >> 12);
+                buf[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[p++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        mSize = p;
+    }
+
+    private void ensure(int extra) {
+        int need = mSize + extra;
+        if (need > mBuf.length) {
+            mBuf = Arrays.copyOf(mBuf, Math.max(need, mBuf.length * 2));
+        }
+    }
+}
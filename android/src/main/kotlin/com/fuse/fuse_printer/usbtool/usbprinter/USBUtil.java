@@ -7,13 +7,16 @@ import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbEndpoint;
 import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
+import android.os.Build;
 import android.util.Log;
 
+import androidx.annotation.RequiresApi;
+
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Locale;
 
 /**
  * 作者：CaoLiulang
@@ -22,11 +25,12 @@ import java.util.List;
  * ❤
  * 模块：USB设备工具类
  */
-public class USBUtil {
+public class USBUtil implements BulkTransport {
 
     private static final String ACTION_USB_PERMISSION = "com.fuse.fuse_printer.usbtool.usbprinter.USB_PERMISSION";
     private static final String TAG = "USBUtil";
     private static USBUtil instance;
+    private static UsbDeviceIndex sDeviceIndex;
     private UsbManager mUsbManager;
     private Context mContext;
     private UsbDeviceConnection mUsbDeviceConnection;
@@ -35,6 +39,36 @@ public class USBUtil {
     private UsbDevice mUsbDevice;
     private UsbInterface mUsbInterface;
 
+    // 分块发送参数：Android 9 以下单次 bulkTransfer 最多 16KB
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    private static final int DEFAULT_BASE_TIMEOUT_MS = 1000;
+    private static final int DEFAULT_TIMEOUT_MS_PER_KB = 30;
+    // 打印机忙时单次发送累计暂停的上限，超过视为打印机无响应
+    private static final long MAX_PAUSE_MS = 30000;
+    // 打印机类 GET_PORT_STATUS 请求
+    private static final int REQUEST_TYPE_CLASS_IN = 0xA1;
+    private static final int REQUEST_GET_PORT_STATUS = 1;
+    private static final int PORT_STATUS_NOT_ERROR = 0x08;
+    private static final int PORT_STATUS_PAPER_EMPTY = 0x20;
+    // 按排空速率决定发送窗口和超时
+    private final FlowController mFlow = new FlowController();
+    private int mChunkSize = DEFAULT_CHUNK_SIZE;
+    private int mBaseTimeoutMs = DEFAULT_BASE_TIMEOUT_MS;
+    private int mTimeoutMsPerKb = DEFAULT_TIMEOUT_MS_PER_KB;
+
+    // 传输模式：阻塞 bulkTransfer 或 UsbRequest 异步流水线
+    public static final int TRANSFER_MODE_BULK = 0;
+    public static final int TRANSFER_MODE_ASYNC = 1;
+    private int mTransferMode = TRANSFER_MODE_BULK;
+    private int mRequestDepth = UsbRequestTransport.DEFAULT_DEPTH;
+    // 调度线程上创建和使用，close() 可能在其他线程上释放
+    private volatile UsbRequestTransport mRequestTransport;
+    // 各模式累计字节数与耗时，用于吞吐对比
+    private final long[] mModeBytes = new long[2];
+    private final long[] mModeNanos = new long[2];
+    // 最近一次 writeData 发起的USB传输次数，只在调度线程上使用
+    private int mLastWriteTransfers;
+
     private USBUtil(Context context) {
     this.mContext = context.getApplicationContext();
     this.mUsbManager = (UsbManager) this.mContext.getSystemService(Context.USB_SERVICE);
@@ -47,6 +81,13 @@ public class USBUtil {
         return instance;
     }
 
+    /**
+     * 创建独立实例，多台打印机各自持有连接和端点；主打印机仍使用 getInstance
+     */
+    public static USBUtil create(Context context) {
+        return new USBUtil(context);
+    }
+
     public String getPermissionAction() {
         return ACTION_USB_PERMISSION;
     }
@@ -60,16 +101,26 @@ public class USBUtil {
      * 初始化USB设备
      */
     public boolean initUsbDevice(int vendorId, int productId) {
-        mUsbDeviceConnection = null;
-        if (mUsbManager == null) {
-            mUsbManager = (UsbManager) mContext.getSystemService(Context.USB_SERVICE);
-        }
         // 寻找USB设备
-        mUsbDevice = findUsbDevice(vendorId, productId);
-        if (mUsbDevice == null) {
+        UsbDevice device = findUsbDevice(vendorId, productId);
+        if (device == null) {
             Log.e(TAG, "未找到USB设备: vendorId=" + vendorId + ", productId=" + productId);
+            mUsbDeviceConnection = null;
+            mUsbDevice = null;
             return false;
         }
+        return initUsbDevice(device);
+    }
+
+    /**
+     * 初始化指定的USB设备，同型号的多台打印机按设备区分
+     */
+    public boolean initUsbDevice(UsbDevice device) {
+        mUsbDeviceConnection = null;
+        if (mUsbManager == null) {
+            mUsbManager = (UsbManager) mContext.getSystemService(Context.USB_SERVICE);
+        }
+        mUsbDevice = device;
 
         // 获取USB接口
         mUsbInterface = mUsbDevice.getInterface(0);
@@ -98,71 +149,63 @@ public class USBUtil {
             }
         }
 
+        mFlow.reset();
         Log.i(TAG, "USB设备初始化成功");
         return true;
     }
 
+    /**
+     * 设备索引，所有实例共用，由插拔广播维护
+     */
+    public UsbDeviceIndex getDeviceIndex() {
+        synchronized (USBUtil.class) {
+            if (sDeviceIndex == null) {
+                UsbManager manager = (UsbManager) mContext.getSystemService(Context.USB_SERVICE);
+                sDeviceIndex = new UsbDeviceIndex(() -> {
+                    HashMap<String, UsbDevice> devices = manager.getDeviceList();
+                    return devices != null ? devices.values() : null;
+                });
+            }
+            return sDeviceIndex;
+        }
+    }
+
     /**
      * 查找USB设备
      */
     public UsbDevice findUsbDevice(int vendorId, int productId) {
+        return getDeviceIndex().find(vendorId, productId);
+    }
+
+    /**
+     * 按设备名（如 /dev/bus/usb/001/002）查找USB设备
+     */
+    public UsbDevice findUsbDeviceByName(String deviceName) {
+        return getDeviceIndex().findByName(deviceName);
+    }
+
+    /**
+     * 是否已获得该设备的访问权限
+     */
+    public boolean hasPermission(UsbDevice device) {
         if (mUsbManager == null) {
             mUsbManager = (UsbManager) mContext.getSystemService(Context.USB_SERVICE);
         }
-        HashMap<String, UsbDevice> deviceList = mUsbManager.getDeviceList();
-        Iterator<UsbDevice> deviceIterator = deviceList.values().iterator();
-
-        while (deviceIterator.hasNext()) {
-            UsbDevice device = deviceIterator.next();
-            int devVendorId = device.getVendorId();
-            int devProductId = device.getProductId();
-            Log.i(TAG, "找到USB设备：vendorId=" + devVendorId + ", productId=" + devProductId + ", deviceName=" + device.getDeviceName());
-
-            // 这里可以根据需要过滤特定的设备
-            if (devVendorId == vendorId && devProductId == productId) {
-                return device;
-            }
-        }
-        return null;
+        return mUsbManager.hasPermission(device);
     }
 
     /**
      * 查找USB设备（仅根据vendorId）
      */
     public UsbDevice findUsbDeviceByVendorId(int vendorId) {
-        if (mUsbManager == null) {
-            mUsbManager = (UsbManager) mContext.getSystemService(Context.USB_SERVICE);
-        }
-        HashMap<String, UsbDevice> deviceList = mUsbManager.getDeviceList();
-        Iterator<UsbDevice> deviceIterator = deviceList.values().iterator();
-
-        while (deviceIterator.hasNext()) {
-            UsbDevice device = deviceIterator.next();
-            int devVendorId = device.getVendorId();
-            int devProductId = device.getProductId();
-            Log.i(TAG, "找到USB设备：vendorId=" + devVendorId + ", productId=" + devProductId + ", deviceName=" + device.getDeviceName());
-
-            // 这里可以根据需要过滤特定的设备
-            if (devVendorId == vendorId) {
-                return device;
-            }
-        }
-        return null;
+        return getDeviceIndex().findByVendorId(vendorId);
     }
 
     /**
      * 获取所有USB设备列表
      */
     public List<UsbDevice> getAllUsbDevices() {
-        List<UsbDevice> deviceList = new ArrayList<>();
-        if (mUsbManager == null) {
-            mUsbManager = (UsbManager) mContext.getSystemService(Context.USB_SERVICE);
-        }
-        HashMap<String, UsbDevice> devices = mUsbManager.getDeviceList();
-        if (devices != null && !devices.isEmpty()) {
-            deviceList.addAll(devices.values());
-        }
-        return deviceList;
+        return getDeviceIndex().getAll();
     }
 
     /**
@@ -172,24 +215,248 @@ public class USBUtil {
         if (data == null || data.length == 0) {
             return false;
         }
+        return sendData(data, 0, data.length);
+    }
+
+    /**
+     * 发送数组中的一段数据到USB设备
+     */
+    public boolean sendData(byte[] data, int offset, int length) {
+        return length > 0 && writeData(data, offset, length) == length && flush();
+    }
+
+    /**
+     * 分块发送数组中的一段数据，短写时从实际写到的位置继续
+     *
+     * @return 实际写出的字节数，等于 length 表示全部发送成功
+     */
+    @Override
+    public int writeData(byte[] data, int offset, int length) {
+        if (data == null || length <= 0) {
+            return 0;
+        }
 
-        if (mUsbDeviceConnection == null || mUsbEndpointOut == null) {
+        UsbDeviceConnection connection = mUsbDeviceConnection;
+        UsbEndpoint endpoint = mUsbEndpointOut;
+        if (connection == null || endpoint == null) {
             Log.e(TAG, "USB设备未连接或初始化失败");
-            return false;
+            return 0;
+        }
+
+        int mode = mTransferMode;
+        long start = System.nanoTime();
+        int written;
+        if (mode == TRANSFER_MODE_ASYNC && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            UsbRequestTransport transport = obtainRequestTransport(connection, endpoint);
+            written = transport.write(data, offset, length);
+            mLastWriteTransfers = transport.getLastQueuedRequests();
+        } else {
+            written = writeBlocking(connection, endpoint, data, offset, length);
         }
+        mModeNanos[mode] += System.nanoTime() - start;
+        mModeBytes[mode] += written;
+        return written;
+    }
 
+    /**
+     * 等待异步模式下的在途请求全部完成，阻塞模式直接返回true
+     */
+    @Override
+    public boolean flush() {
+        UsbRequestTransport transport = mRequestTransport;
+        if (transport == null) {
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean success = transport.drain();
+        mModeNanos[TRANSFER_MODE_ASYNC] += System.nanoTime() - start;
+        return success;
+    }
+
+    /**
+     * 最近一次 writeData 发起的 bulkTransfer 次数或排队的请求数，只在调度线程上读写
+     */
+    @Override
+    public int getLastWriteTransfers() {
+        return mLastWriteTransfers;
+    }
+
+    private int writeBlocking(UsbDeviceConnection connection, UsbEndpoint endpoint, byte[] data, int offset, int length) {
+        int written = 0;
+        mLastWriteTransfers = 0;
+        int packet = Math.max(1, endpoint.getMaxPacketSize());
+        long paused = 0;
         try {
-            int ret = mUsbDeviceConnection.bulkTransfer(mUsbEndpointOut, data, data.length, 3000);
-            if (ret < 0) {
-                Log.e(TAG, "发送数据失败：" + ret);
-                return false;
+            while (written < length) {
+                int chunk = mFlow.nextChunk(length - written, mChunkSize, packet);
+                int timeout = mFlow.timeoutMs(chunk, mBaseTimeoutMs + (int) ((long) chunk * mTimeoutMsPerKb / 1024));
+                long start = System.nanoTime();
+                int ret = connection.bulkTransfer(endpoint, data, offset + written, chunk, timeout);
+                mLastWriteTransfers++;
+                if (ret > 0) {
+                    mFlow.onTransfer(ret, System.nanoTime() - start);
+                    if (ret < chunk) {
+                        Log.w(TAG, "短写：" + ret + "/" + chunk + "，从偏移 " + (written + ret) + " 继续");
+                    }
+                    written += ret;
+                    paused = 0;
+                    continue;
+                }
+                boolean timedOut = ret < 0;
+                if (timedOut) {
+                    mFlow.onTimeout(chunk, timeout);
+                    if (chunk > packet) {
+                        // 多包传输超时后不知道已发出多少，重发会打乱数据
+                        Log.e(TAG, "发送数据失败：" + ret + "，已发送 " + written + "/" + length);
+                        break;
+                    }
+                }
+                // 单包超时或无进展：打印机缓冲区满，确认没有故障后暂停重试
+                if (!isPortReady(connection)) {
+                    Log.e(TAG, "打印机缺纸或故障，已发送 " + written + "/" + length);
+                    break;
+                }
+                long pause = mFlow.nextPause();
+                paused += pause + (timedOut ? timeout : 0);
+                if (paused > MAX_PAUSE_MS) {
+                    Log.e(TAG, "打印机长时间不接收数据，已发送 " + written + "/" + length);
+                    break;
+                }
+                Thread.sleep(pause);
             }
-            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "发送被中断，已发送 " + written + "/" + length);
         } catch (Exception e) {
             Log.e(TAG, "发送数据异常：" + e.getMessage());
             e.printStackTrace();
+        }
+        return written;
+    }
+
+    /**
+     * 通过控制端点读取打印机类端口状态，发送中途也可以安全查询；不支持时视为正常
+     */
+    private boolean isPortReady(UsbDeviceConnection connection) {
+        UsbInterface usbInterface = mUsbInterface;
+        if (usbInterface == null) {
             return false;
         }
+        byte[] status = new byte[1];
+        int ret = connection.controlTransfer(REQUEST_TYPE_CLASS_IN, REQUEST_GET_PORT_STATUS, 0,
+                usbInterface.getId(), status, 1, 100);
+        if (ret < 1) {
+            return true;
+        }
+        return (status[0] & PORT_STATUS_NOT_ERROR) != 0 && (status[0] & PORT_STATUS_PAPER_EMPTY) == 0;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private UsbRequestTransport obtainRequestTransport(UsbDeviceConnection connection, UsbEndpoint endpoint) {
+        UsbRequestTransport transport = mRequestTransport;
+        if (transport != null && transport.isBroken()) {
+            // 有请求卡死，释放后重新创建
+            releaseRequestTransport();
+        }
+        if (mRequestTransport == null) {
+            mRequestTransport = new UsbRequestTransport(connection, endpoint, mRequestDepth, mChunkSize);
+        }
+        return mRequestTransport;
+    }
+
+    /**
+     * 设置传输模式，切换前会等待在途请求完成
+     * mode TRANSFER_MODE_BULK / TRANSFER_MODE_ASYNC；异步模式需要 Android O 及以上（带超时的 requestWait），
+     * 更低版本保持阻塞模式
+     * depth 异步模式下同时在途的请求数
+     */
+    public void setTransferMode(int mode, int depth) {
+        flush();
+        releaseRequestTransport();
+        boolean async = mode == TRANSFER_MODE_ASYNC;
+        if (async && Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            Log.w(TAG, "Android O 以下不支持异步传输模式，保持阻塞模式");
+            async = false;
+        }
+        this.mTransferMode = async ? TRANSFER_MODE_ASYNC : TRANSFER_MODE_BULK;
+        this.mRequestDepth = Math.max(1, depth);
+    }
+
+    public int getTransferMode() {
+        return mTransferMode;
+    }
+
+    /**
+     * 指定模式下的平均吞吐（KB/s），没有数据时返回0
+     */
+    public double getThroughputKBps(int mode) {
+        long nanos = mModeNanos[mode];
+        return nanos > 0 ? mModeBytes[mode] / 1024.0 / (nanos / 1e9) : 0;
+    }
+
+    /**
+     * 阻塞模式与异步模式的吞吐对比
+     */
+    public String getThroughputReport() {
+        return String.format(Locale.US, "bulk: %d字节 %.1fKB/s, async(depth=%d): %d字节 %.1fKB/s, 排空速率 %.1fKB/s",
+                mModeBytes[TRANSFER_MODE_BULK], getThroughputKBps(TRANSFER_MODE_BULK),
+                mRequestDepth, mModeBytes[TRANSFER_MODE_ASYNC], getThroughputKBps(TRANSFER_MODE_ASYNC),
+                mFlow.getDrainRate() / 1024);
+    }
+
+    /**
+     * 阻塞模式的流控统计：排空速率、当前窗口、超时与暂停次数
+     */
+    public Map<String, Long> getFlowStats() {
+        return mFlow.getStats();
+    }
+
+    // 可在任意线程调用：调度线程正在使用时由它在退出时释放请求
+    private void releaseRequestTransport() {
+        UsbRequestTransport transport = mRequestTransport;
+        mRequestTransport = null;
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    /**
+     * 设置单次 bulkTransfer 的分块大小
+     */
+    public void setChunkSize(int chunkSize) {
+        this.mChunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * 设置超时策略：每块超时 = baseTimeoutMs + 块大小(KB) * timeoutMsPerKb
+     */
+    public void setTimeoutPolicy(int baseTimeoutMs, int timeoutMsPerKb) {
+        this.mBaseTimeoutMs = Math.max(0, baseTimeoutMs);
+        this.mTimeoutMsPerKb = Math.max(0, timeoutMsPerKb);
+    }
+
+    /**
+     * OUT端点最大包长
+     */
+    @Override
+    public int getMaxPacketSize() {
+        UsbEndpoint ep = mUsbEndpointOut;
+        return ep != null ? ep.getMaxPacketSize() : 0;
+    }
+
+    /**
+     * 从IN端点读取到调用方数组，不分配内存，供状态查询使用
+     */
+    @Override
+    public int readData(byte[] buffer, int offset, int length, int timeoutMs) {
+        UsbDeviceConnection connection = mUsbDeviceConnection;
+        UsbEndpoint endpoint = mUsbEndpointIn;
+        if (connection == null || endpoint == null || length <= 0) {
+            return -1;
+        }
+        int ret = connection.bulkTransfer(endpoint, buffer, offset, length, timeoutMs);
+        // 超时和无数据都返回负数，这里统一视为没有读到
+        return Math.max(ret, 0);
     }
 
     /**
@@ -230,6 +497,7 @@ public class USBUtil {
      * 关闭USB连接
      */
     public void close() {
+        releaseRequestTransport();
         if (mUsbDeviceConnection != null) {
             mUsbDeviceConnection.close();
             mUsbDeviceConnection = null;
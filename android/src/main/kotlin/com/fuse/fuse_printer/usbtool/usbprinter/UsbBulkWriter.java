@@ -0,0 +1,231 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 模块：USB合并写入器
+ * <p>
+ * 把一个任务内的多条小指令攒进同一块可复用缓冲区，按最大包长的整数倍发送，
+ * 任务结束时({@link #endJob()})再把剩余部分发出去。只能在单个线程（调度线程）上使用。
+ */
+public class UsbBulkWriter {
+
+    private static final String TAG = "UsbBulkWriter";
+
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    // 未连接时无法取到端点包长，按全速设备的64字节处理
+    private static final int FALLBACK_PACKET_SIZE = 64;
+
+    private final BulkTransport mTransport;
+    private final ByteBuffer mBuffer;
+    private final byte[] mArray;
+    private final int mArrayOffset;
+
+    // 当前任务统计
+    private int mJobWrites;
+    private int mJobTransfers;
+    private long mJobBytes;
+    private boolean mJobFailed;
+
+    // 上一个任务统计
+    private int mLastJobWrites;
+    private int mLastJobTransfers;
+    private long mLastJobBytes;
+
+    // 累计节省的传输次数
+    private long mTotalSavedTransfers;
+
+    public UsbBulkWriter(BulkTransport transport) {
+        this(transport, DEFAULT_CAPACITY);
+    }
+
+    public UsbBulkWriter(BulkTransport transport, int capacity) {
+        this.mTransport = transport;
+        // Android 上的直接缓冲区带有不可移动的后备数组，可直接交给 bulkTransfer
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(capacity, FALLBACK_PACKET_SIZE));
+        if (!buffer.hasArray()) {
+            buffer = ByteBuffer.allocate(buffer.capacity());
+        }
+        this.mBuffer = buffer;
+        this.mArray = buffer.array();
+        this.mArrayOffset = buffer.arrayOffset();
+    }
+
+    public boolean write(byte[] data) {
+        return data != null && write(data, 0, data.length);
+    }
+
+    /**
+     * 写入一条指令，缓冲区满时按最大包长整数倍发送
+     */
+    public boolean write(byte[] data, int offset, int length) {
+        if (data == null || length <= 0) {
+            return false;
+        }
+        mJobWrites++;
+        while (length > 0) {
+            // 缓冲区为空且剩余数据足够大时直接从调用方数组发送，省一次拷贝
+            if (mBuffer.position() == 0 && length >= mBuffer.capacity()) {
+                int aligned = alignDown(length);
+                transfer(data, offset, aligned);
+                offset += aligned;
+                length -= aligned;
+                continue;
+            }
+            int n = Math.min(length, mBuffer.remaining());
+            mBuffer.put(data, offset, n);
+            offset += n;
+            length -= n;
+            if (!mBuffer.hasRemaining()) {
+                flushAligned();
+            }
+        }
+        return !mJobFailed;
+    }
+
+    /**
+     * 写入 src 的剩余部分，src 可以是文件映射缓冲区：数据经复用缓冲区分块发送，
+     * 不在堆上复制整块数据。返回时 src 的 position 移到已写入的末尾
+     */
+    public boolean write(ByteBuffer src) {
+        if (src == null || !src.hasRemaining()) {
+            return false;
+        }
+        mJobWrites++;
+        int limit = src.limit();
+        while (src.hasRemaining() && !mJobFailed) {
+            int n = Math.min(src.remaining(), mBuffer.remaining());
+            src.limit(src.position() + n);
+            mBuffer.put(src);
+            src.limit(limit);
+            if (!mBuffer.hasRemaining()) {
+                flushAligned();
+            }
+        }
+        return !mJobFailed;
+    }
+
+    /**
+     * 发送缓冲区中的数据并等待传输完成，不结束任务；用于需要确认数据已送达打印机的场合
+     *
+     * @return 本任务到目前为止的传输是否都成功
+     */
+    public boolean flush() {
+        if (mBuffer.position() > 0) {
+            transfer(mArray, mArrayOffset, mBuffer.position());
+            mBuffer.clear();
+        }
+        if (!mJobFailed && !mTransport.flush()) {
+            mJobFailed = true;
+        }
+        return !mJobFailed;
+    }
+
+    /**
+     * 任务边界：发送剩余数据并结算本任务统计
+     *
+     * @return 本任务所有传输是否都成功
+     */
+    public boolean endJob() {
+        if (mBuffer.position() > 0) {
+            transfer(mArray, mArrayOffset, mBuffer.position());
+            mBuffer.clear();
+        }
+        if (!mTransport.flush()) {
+            mJobFailed = true;
+        }
+        boolean success = !mJobFailed;
+        mLastJobWrites = mJobWrites;
+        mLastJobTransfers = mJobTransfers;
+        mLastJobBytes = mJobBytes;
+        mTotalSavedTransfers += getLastJobSavedTransfers();
+        if (mJobWrites > 0) {
+            Log.i(TAG, "任务完成：指令" + mJobWrites + "条，传输" + mJobTransfers + "次，"
+                    + mJobBytes + "字节，节省" + getLastJobSavedTransfers() + "次传输");
+        }
+        resetJob();
+        return success;
+    }
+
+    /**
+     * 丢弃未发送的数据（任务异常中止时使用），已发出的部分仍计入上一个任务的统计
+     */
+    public void discardJob() {
+        mBuffer.clear();
+        mLastJobWrites = mJobWrites;
+        mLastJobTransfers = mJobTransfers;
+        mLastJobBytes = mJobBytes;
+        resetJob();
+    }
+
+    public int getLastJobWrites() {
+        return mLastJobWrites;
+    }
+
+    public int getLastJobTransfers() {
+        return mLastJobTransfers;
+    }
+
+    public long getLastJobBytes() {
+        return mLastJobBytes;
+    }
+
+    /**
+     * 上一个任务相比逐条发送节省的传输次数
+     */
+    public int getLastJobSavedTransfers() {
+        return Math.max(0, mLastJobWrites - mLastJobTransfers);
+    }
+
+    public long getTotalSavedTransfers() {
+        return mTotalSavedTransfers;
+    }
+
+    private void resetJob() {
+        mJobWrites = 0;
+        mJobTransfers = 0;
+        mJobBytes = 0;
+        mJobFailed = false;
+    }
+
+    private void flushAligned() {
+        int pending = mBuffer.position();
+        int aligned = alignDown(pending);
+        transfer(mArray, mArrayOffset, aligned);
+        // 不足一个包的尾部留在缓冲区，和后续指令一起发送
+        int tail = pending - aligned;
+        if (tail > 0) {
+            System.arraycopy(mArray, mArrayOffset + aligned, mArray, mArrayOffset, tail);
+        }
+        mBuffer.clear();
+        mBuffer.position(tail);
+    }
+
+    private int alignDown(int length) {
+        int packet = mTransport.getMaxPacketSize();
+        if (packet <= 0) {
+            packet = FALLBACK_PACKET_SIZE;
+        }
+        int aligned = Math.min(length, mBuffer.capacity()) / packet * packet;
+        return aligned > 0 ? aligned : Math.min(length, mBuffer.capacity());
+    }
+
+    private void transfer(byte[] data, int offset, int length) {
+        if (mJobFailed) {
+            // 同一任务前面的传输已失败，后续数据不再发送，避免打印出半截标签
+            return;
+        }
+        int written = mTransport.writeData(data, offset, length);
+        if (written > 0) {
+            // 传输层可能按流控窗口把这一段拆成多次USB传输
+            mJobTransfers += Math.max(1, mTransport.getLastWriteTransfers());
+            mJobBytes += written;
+        }
+        if (written < length) {
+            mJobFailed = true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.hardware.usb.UsbDevice;
+
+import java.util.Locale;
+
+/**
+ * 模块：USB设备标识
+ * <p>
+ * 设备名（/dev/bus/usb/总线号/设备号）在重新插拔后会变，连接池按 vendorId/productId 和序列号识别同一台打印机。
+ * 读取序列号需要USB权限，没有权限或设备不报告序列号时退回到总线号：公开API不提供物理端口路径，
+ * 设备名中只有总线目录在插回同一接口后保持不变。标识在加入连接池时确定，之后不再变化。
+ */
+public final class UsbDeviceIdentity {
+
+    private final int mVendorId;
+    private final int mProductId;
+    // 没有权限或设备不报告时为null
+    private final String mSerial;
+    private final String mBus;
+
+    UsbDeviceIdentity(int vendorId, int productId, String serial, String bus) {
+        this.mVendorId = vendorId;
+        this.mProductId = productId;
+        this.mSerial = serial;
+        this.mBus = bus;
+    }
+
+    public static UsbDeviceIdentity of(UsbDevice device) {
+        return new UsbDeviceIdentity(device.getVendorId(), device.getProductId(), readSerial(device),
+                busOf(device.getDeviceName()));
+    }
+
+    /**
+     * 读取序列号，没有权限或为空时返回null
+     */
+    public static String readSerial(UsbDevice device) {
+        try {
+            String serial = device.getSerialNumber();
+            return serial == null || serial.trim().isEmpty() ? null : serial.trim();
+        } catch (SecurityException e) {
+            // Android 10 起未授权的设备不能读取序列号
+            return null;
+        }
+    }
+
+    /**
+     * 设备名中的总线目录，如 /dev/bus/usb/001/005 返回 001
+     */
+    static String busOf(String deviceName) {
+        int end = deviceName.lastIndexOf('/');
+        if (end <= 0) {
+            return deviceName;
+        }
+        return deviceName.substring(deviceName.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    /**
+     * 是否是同一台打印机：序列号两边都能读到时按序列号比较，否则比较总线号
+     */
+    public boolean matches(UsbDevice device) {
+        if (device.getVendorId() != mVendorId || device.getProductId() != mProductId) {
+            return false;
+        }
+        if (mSerial != null) {
+            String serial = readSerial(device);
+            if (serial != null) {
+                return mSerial.equals(serial);
+            }
+        }
+        return mBus.equals(busOf(device.getDeviceName()));
+    }
+
+    public String getSerial() {
+        return mSerial;
+    }
+
+    /**
+     * 可用作文件名的标识，不含设备号，重新插拔后不变
+     */
+    public String getKey() {
+        String suffix = mSerial != null
+                ? "sn" + mSerial.replaceAll("[^0-9A-Za-z]", "")
+                : "bus" + mBus.replaceAll("[^0-9]", "");
+        return String.format(Locale.US, "%04x_%04x_%s", mVendorId, mProductId, suffix);
+    }
+}
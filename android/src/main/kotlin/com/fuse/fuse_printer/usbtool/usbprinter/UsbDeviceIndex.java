@@ -0,0 +1,268 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.hardware.usb.UsbDevice;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模块：USB设备索引
+ * <p>
+ * UsbManager.getDeviceList() 每次都是一次跨进程调用。这里首次查询时枚举一次，
+ * 之后由插拔广播（onAttached/onDetached）增量维护，按设备名和 (vendorId, productId) 建索引，
+ * 查找不再枚举设备；只有显式 rescan() 时才重新枚举。重复的插拔通知是幂等的。
+ * 索引只在有插拔广播接收器时才能保持最新：第一个接收器注册或最后一个注销时标记为未枚举，
+ * 下次查找时重新枚举，补上没有接收器期间的插拔。
+ * <p>
+ * 设备列表每次实际变化时版本号加一，{@link #getSnapshot()} 返回该版本的只读快照，
+ * 设备信息在设备加入索引时生成一次；两个快照之间的差异由 {@link Snapshot#diff(Snapshot)} 给出。
+ */
+public class UsbDeviceIndex {
+
+    private static final String TAG = "UsbDeviceIndex";
+
+    /**
+     * 完整枚举当前设备，由平台层实现
+     */
+    public interface Scanner {
+        Collection<UsbDevice> scan();
+    }
+
+    /**
+     * 某一版本的设备列表，不可修改
+     */
+    public static final class Snapshot {
+        public final long version;
+        // 设备名 -> 设备信息（vendorId/productId/deviceName/manufacturerName/productName）
+        private final Map<String, Map<String, Object>> mDevices;
+
+        Snapshot(long version, Map<String, Map<String, Object>> devices) {
+            this.version = version;
+            this.mDevices = devices;
+        }
+
+        public List<Map<String, Object>> getDevices() {
+            return new ArrayList<>(mDevices.values());
+        }
+
+        /**
+         * 相对 previous 的变化：added 为新增设备信息列表，removed 为移除的设备名列表
+         */
+        public Map<String, Object> diff(Snapshot previous) {
+            List<Map<String, Object>> added = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            for (Map.Entry<String, Map<String, Object>> entry : mDevices.entrySet()) {
+                if (previous == null || previous.mDevices.get(entry.getKey()) != entry.getValue()) {
+                    added.add(entry.getValue());
+                }
+            }
+            if (previous != null) {
+                for (Map.Entry<String, Map<String, Object>> entry : previous.mDevices.entrySet()) {
+                    Map<String, Object> current = mDevices.get(entry.getKey());
+                    if (current != entry.getValue()) {
+                        removed.add(entry.getKey());
+                    }
+                }
+            }
+            Map<String, Object> diff = new HashMap<>();
+            diff.put("added", added);
+            diff.put("removed", removed);
+            return diff;
+        }
+    }
+
+    private final Scanner mScanner;
+    // 按插入顺序，与 getDeviceList 的顺序无关但稳定
+    private final Map<String, UsbDevice> mByName = new LinkedHashMap<>();
+    // (vendorId, productId) -> 同型号设备，按插入顺序
+    private final Map<Integer, List<UsbDevice>> mByIds = new HashMap<>();
+    // 设备名 -> 设备信息，与 mByName 同步维护
+    private final Map<String, Map<String, Object>> mInfo = new LinkedHashMap<>();
+    private boolean mScanned;
+    private int mReceivers;
+    private long mScans;
+    private long mVersion;
+    private Snapshot mSnapshot;
+
+    public UsbDeviceIndex(Scanner scanner) {
+        this.mScanner = scanner;
+    }
+
+    private static int key(int vendorId, int productId) {
+        return (vendorId << 16) | (productId & 0xFFFF);
+    }
+
+    /**
+     * 设备插入
+     */
+    public synchronized void onAttached(UsbDevice device) {
+        ensureScanned();
+        add(device);
+    }
+
+    /**
+     * 设备拔出
+     */
+    public synchronized void onDetached(UsbDevice device) {
+        ensureScanned();
+        remove(device.getDeviceName());
+    }
+
+    public synchronized UsbDevice find(int vendorId, int productId) {
+        ensureScanned();
+        List<UsbDevice> devices = mByIds.get(key(vendorId, productId));
+        return devices != null ? devices.get(0) : null;
+    }
+
+    /**
+     * 同型号的所有设备
+     */
+    public synchronized List<UsbDevice> findAll(int vendorId, int productId) {
+        ensureScanned();
+        List<UsbDevice> devices = mByIds.get(key(vendorId, productId));
+        return devices != null ? new ArrayList<>(devices) : new ArrayList<>();
+    }
+
+    public synchronized UsbDevice findByName(String deviceName) {
+        ensureScanned();
+        return mByName.get(deviceName);
+    }
+
+    /**
+     * 按 vendorId 查找，只遍历索引，不枚举设备
+     */
+    public synchronized UsbDevice findByVendorId(int vendorId) {
+        ensureScanned();
+        for (UsbDevice device : mByName.values()) {
+            if (device.getVendorId() == vendorId) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<UsbDevice> getAll() {
+        ensureScanned();
+        return new ArrayList<>(mByName.values());
+    }
+
+    /**
+     * 重新枚举设备，用于广播可能丢失的场景（如注册接收器之前的插拔）
+     */
+    public synchronized void rescan() {
+        Collection<UsbDevice> devices = mScanner.scan();
+        Map<String, UsbDevice> found = new LinkedHashMap<>();
+        if (devices != null) {
+            for (UsbDevice device : devices) {
+                found.put(device.getDeviceName(), device);
+            }
+        }
+        for (String name : new ArrayList<>(mByName.keySet())) {
+            if (!found.containsKey(name)) {
+                remove(name);
+            }
+        }
+        for (UsbDevice device : found.values()) {
+            add(device);
+        }
+        mScanned = true;
+        mScans++;
+        Log.i(TAG, "枚举USB设备：" + mByName.size() + " 个");
+    }
+
+    /**
+     * 当前设备列表的快照，列表未变化时返回同一对象
+     */
+    public synchronized Snapshot getSnapshot() {
+        ensureScanned();
+        if (mSnapshot == null || mSnapshot.version != mVersion) {
+            mSnapshot = new Snapshot(mVersion, Collections.unmodifiableMap(new LinkedHashMap<>(mInfo)));
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * 注册了一个插拔广播接收器；此前没有接收器时索引可能已过期
+     */
+    public synchronized void onReceiverRegistered() {
+        if (mReceivers++ == 0) {
+            mScanned = false;
+        }
+    }
+
+    /**
+     * 注销了一个插拔广播接收器；最后一个注销后不再有插拔通知，索引不再可信
+     */
+    public synchronized void onReceiverUnregistered() {
+        if (mReceivers > 0 && --mReceivers == 0) {
+            mScanned = false;
+        }
+    }
+
+    /**
+     * 完整枚举的次数
+     */
+    public synchronized long getScanCount() {
+        return mScans;
+    }
+
+    private void ensureScanned() {
+        if (!mScanned) {
+            rescan();
+        }
+    }
+
+    private void add(UsbDevice device) {
+        String name = device.getDeviceName();
+        UsbDevice existing = mByName.get(name);
+        if (existing != null && existing.getVendorId() == device.getVendorId()
+                && existing.getProductId() == device.getProductId()) {
+            // 同一设备的重复通知
+            return;
+        }
+        remove(name);
+        mByName.put(name, device);
+        mInfo.put(name, describe(device));
+        mVersion++;
+        int key = key(device.getVendorId(), device.getProductId());
+        List<UsbDevice> devices = mByIds.get(key);
+        if (devices == null) {
+            devices = new ArrayList<>(1);
+            mByIds.put(key, devices);
+        }
+        devices.add(device);
+    }
+
+    private void remove(String deviceName) {
+        UsbDevice device = mByName.remove(deviceName);
+        if (device == null) {
+            return;
+        }
+        mInfo.remove(deviceName);
+        mVersion++;
+        int key = key(device.getVendorId(), device.getProductId());
+        List<UsbDevice> devices = mByIds.get(key);
+        if (devices != null) {
+            devices.remove(device);
+            if (devices.isEmpty()) {
+                mByIds.remove(key);
+            }
+        }
+    }
+
+    private static Map<String, Object> describe(UsbDevice device) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("vendorId", device.getVendorId());
+        info.put("productId", device.getProductId());
+        info.put("deviceName", device.getDeviceName());
+        info.put("manufacturerName", device.getManufacturerName());
+        info.put("productName", device.getProductName());
+        return Collections.unmodifiableMap(info);
+    }
+}
@@ -0,0 +1,254 @@
+package com.fuse.fuse_printer.usbtool.usbprinter;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbRequest;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 模块：异步USB发送通道
+ * <p>
+ * 基于 UsbRequest/requestWait 的OUT传输：保持最多 N 个请求同时在途，
+ * 每个请求对应环形池中一块可复用的直接缓冲区，主机不必等上一块发完才排下一块。
+ * 写入和等待只能在单个线程（调度线程）上进行；O 以下没有带超时的 requestWait，打印机卡住时会永久阻塞，不提供该模式。
+ * <p>
+ * 等待超时或出错时取消所有在途请求并回收后才结束本次 drain，下一个任务不会排在失败任务的请求后面，
+ * 也不会把它们的完成计入自己；取消后仍回收不到的请求视为卡死，本通道不再可用，需重新创建。
+ * <p>
+ * {@link #close()} 可以在其他线程调用：调度线程正在使用时只做标记，
+ * 由调度线程在当前等待结束后（最多 WAIT_TIMEOUT_MS）释放请求，不在其他线程取消或关闭它正在使用的请求。
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+public class UsbRequestTransport {
+
+    private static final String TAG = "UsbRequestTransport";
+
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private static final long WAIT_TIMEOUT_MS = 5000;
+
+    private final UsbDeviceConnection mConnection;
+    private final UsbRequest[] mRequests;
+    private final ByteBuffer[] mBuffers;
+    private final ArrayDeque<Integer> mFree;
+    private int mInFlight;
+    // 最近一次 write 排队的请求数
+    private int mLastQueuedRequests;
+    private boolean mFailed;
+    // 在途请求取消后仍未回收，通道不再可用
+    private boolean mBroken;
+    // 调度线程是否正在使用，及是否已关闭，由 mLock 保护
+    private final Object mLock = new Object();
+    private boolean mBusy;
+    private volatile boolean mClosed;
+
+    public UsbRequestTransport(UsbDeviceConnection connection, UsbEndpoint endpoint, int depth, int bufferSize) {
+        this.mConnection = connection;
+        int n = Math.max(1, depth);
+        this.mRequests = new UsbRequest[n];
+        this.mBuffers = new ByteBuffer[n];
+        this.mFree = new ArrayDeque<>(n);
+        for (int i = 0; i < n; i++) {
+            UsbRequest request = new UsbRequest();
+            if (!request.initialize(connection, endpoint)) {
+                throw new IllegalStateException("UsbRequest初始化失败");
+            }
+            request.setClientData(i);
+            mRequests[i] = request;
+            mBuffers[i] = ByteBuffer.allocateDirect(bufferSize);
+            mFree.add(i);
+        }
+    }
+
+    /**
+     * 把数据拆到空闲缓冲区并排队发送，在途请求已满时先回收一个完成的请求
+     *
+     * @return 已排队的字节数，小于 length 表示有请求失败
+     */
+    public int write(byte[] data, int offset, int length) {
+        if (!enter()) {
+            return 0;
+        }
+        try {
+            return writeLocked(data, offset, length);
+        } finally {
+            exit();
+        }
+    }
+
+    private int writeLocked(byte[] data, int offset, int length) {
+        int queued = 0;
+        mLastQueuedRequests = 0;
+        if (mBroken) {
+            return 0;
+        }
+        while (queued < length && !mFailed && !mClosed) {
+            if (mFree.isEmpty() && !reap()) {
+                break;
+            }
+            int index = mFree.poll();
+            ByteBuffer buffer = mBuffers[index];
+            int n = Math.min(buffer.capacity(), length - queued);
+            buffer.clear();
+            buffer.put(data, offset + queued, n);
+            buffer.flip();
+            if (!mRequests[index].queue(buffer)) {
+                Log.e(TAG, "UsbRequest排队失败");
+                mFree.add(index);
+                mFailed = true;
+                break;
+            }
+            mInFlight++;
+            mLastQueuedRequests++;
+            queued += n;
+        }
+        if (mFailed) {
+            // 本任务已失败，剩下的在途请求不再等待
+            cancelInFlight();
+        }
+        return queued;
+    }
+
+    /**
+     * 等待所有在途请求完成
+     *
+     * @return 自上次 drain 以来的请求是否全部成功
+     */
+    public boolean drain() {
+        if (!enter()) {
+            return false;
+        }
+        try {
+            while (mInFlight > 0 && !mFailed) {
+                reap();
+            }
+            if (mFailed) {
+                cancelInFlight();
+            }
+            boolean success = !mFailed && !mClosed && !mBroken;
+            // 在途请求已全部回收，下一次 drain 只统计之后排队的请求
+            mFailed = false;
+            return success;
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * 最近一次 write 排队的请求数，每个请求是一次USB传输
+     */
+    public int getLastQueuedRequests() {
+        return mLastQueuedRequests;
+    }
+
+    /**
+     * 是否有请求取消后仍回收不到，此时应关闭并重新创建
+     */
+    public boolean isBroken() {
+        return mBroken;
+    }
+
+    public int getInFlight() {
+        return mInFlight;
+    }
+
+    /**
+     * 关闭并释放请求，可在任意线程调用；调度线程正在写入或等待时，由它在退出时释放
+     */
+    public void close() {
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            if (mBusy) {
+                return;
+            }
+        }
+        release();
+    }
+
+    private boolean enter() {
+        synchronized (mLock) {
+            if (mClosed) {
+                return false;
+            }
+            mBusy = true;
+            return true;
+        }
+    }
+
+    private void exit() {
+        synchronized (mLock) {
+            mBusy = false;
+            if (!mClosed) {
+                return;
+            }
+        }
+        release();
+    }
+
+    private void release() {
+        for (UsbRequest request : mRequests) {
+            request.cancel();
+            request.close();
+        }
+        mInFlight = 0;
+        mFree.clear();
+    }
+
+    /**
+     * 取消所有在途请求并等待它们回收，回收不到时标记为不可用
+     */
+    private void cancelInFlight() {
+        if (mInFlight == 0) {
+            return;
+        }
+        Log.w(TAG, "取消在途请求：" + mInFlight);
+        for (int i = 0; i < mRequests.length; i++) {
+            if (!mFree.contains(i)) {
+                mRequests[i].cancel();
+            }
+        }
+        while (mInFlight > 0) {
+            if (!reap()) {
+                Log.e(TAG, "在途请求取消后无法回收，通道不再可用");
+                mBroken = true;
+                return;
+            }
+        }
+    }
+
+    private boolean reap() {
+        UsbRequest done;
+        try {
+            done = mConnection.requestWait(WAIT_TIMEOUT_MS);
+        } catch (TimeoutException e) {
+            Log.e(TAG, "等待UsbRequest超时，在途：" + mInFlight);
+            mFailed = true;
+            return false;
+        }
+        if (done == null || !(done.getClientData() instanceof Integer)) {
+            Log.e(TAG, "requestWait返回异常");
+            mFailed = true;
+            return false;
+        }
+        int index = (Integer) done.getClientData();
+        if (mBuffers[index].hasRemaining()) {
+            // 完成后 position 推进到实际传输的位置
+            Log.e(TAG, "请求未写完：" + mBuffers[index].position() + "/" + mBuffers[index].limit());
+            mFailed = true;
+        }
+        mInFlight--;
+        mFree.add(index);
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+internal class BatchLabelTest {
+
+  private class CountingTransport : BulkTransport {
+    var bytes = 0L
+    var transfers = 0
+
+    override fun getMaxPacketSize() = 64
+
+    override fun writeData(data: ByteArray, offset: Int, length: Int): Int {
+      bytes += length
+      transfers++
+      return length
+    }
+
+    override fun flush() = true
+  }
+
+  @Test
+  fun parseBatch_mergesIdenticalNeighbours() {
+    val labels = BatchLabel.parseBatch(
+      listOf(
+        mapOf("type" to "barcode", "code" to "A1"),
+        mapOf("type" to "barcode", "code" to "A1", "copies" to 2),
+        mapOf("type" to "barcode", "code" to "A2"),
+        mapOf("type" to "template", "name" to "sku", "values" to mapOf("sku" to "1")),
+        mapOf("type" to "template", "name" to "sku", "values" to mapOf("sku" to "1")),
+        mapOf("type" to "template", "name" to "sku", "values" to mapOf("sku" to "2")),
+        mapOf("type" to "barcode", "code" to "A1"),
+      )
+    )
+    assertEquals(listOf(3, 1, 2, 1, 1), labels.map { it.copies })
+    assertEquals(8, BatchLabel.totalCopies(labels))
+  }
+
+  @Test
+  fun writeBody_matchesSingleLabelLayouts() {
+    val out = TsplWriter()
+    BatchLabel.fromMap(mapOf("type" to "barcode", "code" to "6901234567892", "height" to 100)).writeBody(out)
+    BatchLabel.fromMap(mapOf("type" to "qrcode", "content" to "hello", "size" to 4)).writeBody(out)
+    val expected = TsplWriter()
+      .cls().barcode(50, 50, "128", 100, 1, 0, 2, 2, "6901234567892")
+      .cls().qrcode(50, 50, 'H', 4, 'A', 0, "hello")
+    assertContentEquals(expected.toByteArray(), out.toByteArray())
+  }
+
+  @Test
+  fun tsplCommands_normalizeLineEndings() {
+    val out = TsplWriter()
+    BatchLabel.fromMap(mapOf("type" to "tspl", "commands" to "CLS\nTEXT 1,1,\"3\",0,1,1,\"品\"\r\nBAR 0,0,10,10")).writeBody(out)
+    assertContentEquals(
+      "CLS\r\nTEXT 1,1,\"3\",0,1,1,\"品\"\r\nBAR 0,0,10,10\r\n".toByteArray(Charsets.UTF_8),
+      out.toByteArray()
+    )
+  }
+
+  @Test
+  fun invalidSpecs_areRejected() {
+    assertFailsWith<IllegalArgumentException> { BatchLabel.fromMap(mapOf("type" to "label")) }
+    assertFailsWith<IllegalArgumentException> { BatchLabel.fromMap(mapOf("type" to "barcode")) }
+    assertFailsWith<IllegalArgumentException> {
+      BatchLabel.fromMap(mapOf("type" to "qrcode", "content" to "x", "size" to "big"))
+    }
+    assertFailsWith<IllegalArgumentException> {
+      BatchLabel.fromMap(mapOf("type" to "template", "name" to "x", "values" to "sku"))
+    }
+  }
+
+  @Test
+  fun fiveHundredLabels_streamInFewTransfers() {
+    val specs = (0 until 500).map { mapOf("type" to "barcode", "code" to "SKU${it / 5}") }
+    val labels = BatchLabel.parseBatch(specs)
+    assertEquals(100, labels.size)
+
+    val transport = CountingTransport()
+    val writer = UsbBulkWriter(transport)
+    val tspl = TsplWriter()
+    for (label in labels) {
+      label.writeBody(tspl.reset())
+      tspl.print(label.copies, 1)
+      assertTrue(writer.write(tspl.buffer(), 0, tspl.size()))
+    }
+    assertTrue(writer.endJob())
+    // 逐张发送时是 500 张 x 3 条指令 = 1500 次传输
+    assertTrue(transport.transfers < 10, "transfers=${transport.transfers}")
+  }
+
+  // 按 4KB 窗口分块发送的传输，与 USBUtil.writeBlocking 一样一次 writeData 对应多次传输
+  private class WindowedTransport : BulkTransport {
+    var transfers = 0
+    private var last = 0
+
+    override fun getMaxPacketSize() = 512
+
+    override fun writeData(data: ByteArray, offset: Int, length: Int): Int {
+      last = (length + 4095) / 4096
+      transfers += last
+      return length
+    }
+
+    override fun getLastWriteTransfers() = last
+
+    override fun flush() = true
+  }
+
+  @Test
+  fun jobStats_countTransportTransfers() {
+    val transport = WindowedTransport()
+    val writer = UsbBulkWriter(transport)
+    assertTrue(writer.write(ByteArray(100_000)))
+    assertTrue(writer.endJob())
+    assertEquals(transport.transfers, writer.lastJobTransfers)
+    assertTrue(writer.lastJobTransfers > 2, "transfers=${writer.lastJobTransfers}")
+    assertEquals(0, writer.lastJobSavedTransfers)
+  }
+}
@@ -0,0 +1,210 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import java.io.ByteArrayOutputStream
+import java.util.Random
+import java.util.zip.Inflater
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+internal class BitmapBandEncoderTest {
+
+  // 记录所有发出字节的USB传输，按 全速链路约1MB/s + 每次传输0.125ms 估算耗时
+  private class RecordingTransport : BulkTransport {
+    val bytes = ByteArrayOutputStream()
+    var transfers = 0
+
+    override fun getMaxPacketSize() = 64
+
+    override fun writeData(data: ByteArray, offset: Int, length: Int): Int {
+      bytes.write(data, offset, length)
+      transfers++
+      return length
+    }
+
+    override fun flush() = true
+
+    fun estimatedMillis() = bytes.size() / 1000.0 + transfers * 0.125
+  }
+
+  private class Label(val width: Int, val height: Int) {
+    val byteWidth = (width + 7) / 8
+    val data = ByteArray(byteWidth * height) { 0xFF.toByte() }
+
+    fun black(x0: Int, y0: Int, w: Int, h: Int) {
+      for (y in y0 until y0 + h) {
+        for (x in x0 until x0 + w) {
+          val i = y * byteWidth + x / 8
+          data[i] = (data[i].toInt() and (0x80 ushr (x and 7)).inv()).toByte()
+        }
+      }
+    }
+  }
+
+  // 稀疏标签：几行文字块、一个条码、大片空白
+  private fun sparseLabel(): Label {
+    val label = Label(800, 1200)
+    for (line in 0 until 4) {
+      for (ch in 0 until 20) {
+        label.black(40 + ch * 30, 60 + line * 50, 20, 24)
+      }
+    }
+    for (bar in 0 until 60) {
+      label.black(100 + bar * 8, 600, if (bar % 3 == 0) 4 else 2, 160)
+    }
+    return label
+  }
+
+  // 与 USBCommunicationPlugin.drawGraphic 相同的发送方式，返回传输记录
+  private fun send(label: Label, encoder: BitmapBandEncoder?, afterCls: Boolean): RecordingTransport {
+    val transport = RecordingTransport()
+    val writer = UsbBulkWriter(transport)
+    val bandRows = BandPipeline.DEFAULT_BAND_BYTES / label.byteWidth
+    val band = ByteArray(bandRows * label.byteWidth)
+    var y = 0
+    while (y < label.height) {
+      val rows = minOf(bandRows, label.height - y)
+      val length = rows * label.byteWidth
+      System.arraycopy(label.data, y * label.byteWidth, band, 0, length)
+      if (encoder == null) {
+        writer.write("BITMAP 0,$y,${label.byteWidth},$rows,0,".toByteArray(Charsets.US_ASCII))
+        writer.write(band, 0, length)
+      } else if (encoder.encode(0, y, label.width, rows, band, afterCls)) {
+        writer.write(encoder.header, 0, encoder.headerLength)
+        writer.write(encoder.payload, encoder.payloadOffset, encoder.payloadLength)
+      }
+      y += rows
+    }
+    assertTrue(writer.endJob())
+    return transport
+  }
+
+  // 按打印机的处理方式把指令流还原到一张全白画布上
+  private fun render(stream: ByteArray, width: Int, height: Int): ByteArray {
+    val byteWidth = (width + 7) / 8
+    val canvas = ByteArray(byteWidth * height) { 0xFF.toByte() }
+    var p = 0
+    fun field(): Int {
+      var v = 0
+      while (stream[p] != ','.code.toByte()) {
+        v = v * 10 + (stream[p] - '0'.code.toByte())
+        p++
+      }
+      p++
+      return v
+    }
+    val tag = "BITMAP ".toByteArray(Charsets.US_ASCII)
+    while (p < stream.size) {
+      assertContentEquals(tag, stream.copyOfRange(p, p + tag.size))
+      p += tag.size
+      val x = field()
+      val y = field()
+      val bw = field()
+      val rows = field()
+      val mode = field()
+      assertEquals(0, x)
+      assertEquals(byteWidth, bw)
+      val pixels: ByteArray
+      if (mode == 3) {
+        val len = field()
+        val inflater = Inflater()
+        inflater.setInput(stream, p, len)
+        pixels = ByteArray(bw * rows)
+        assertEquals(pixels.size, inflater.inflate(pixels))
+        assertTrue(inflater.finished())
+        inflater.end()
+        p += len
+      } else {
+        assertEquals(0, mode)
+        pixels = stream.copyOfRange(p, p + bw * rows)
+        p += bw * rows
+      }
+      System.arraycopy(pixels, 0, canvas, y * bw, pixels.size)
+    }
+    return canvas
+  }
+
+  @Test
+  fun sparseLabel_sendsFewerBytesAndRendersIdentically() {
+    val label = sparseLabel()
+    val raw = send(label, null, true)
+    val encoder = BitmapBandEncoder()
+    encoder.setCompressionEnabled(true)
+    val packed = send(label, encoder, true)
+
+    assertContentEquals(label.data, render(raw.bytes.toByteArray(), label.width, label.height))
+    assertContentEquals(label.data, render(packed.bytes.toByteArray(), label.width, label.height))
+    assertTrue(encoder.skippedBands > 0)
+    assertTrue(encoder.compressedBands > 0)
+    assertEquals(label.data.size.toLong(), encoder.rawBytes)
+    assertEquals(packed.bytes.size().toLong(), encoder.sentBytes)
+    // 稀疏标签至少省掉90%的字节
+    assertTrue(packed.bytes.size() * 10 < raw.bytes.size(), "raw=${raw.bytes.size()} packed=${packed.bytes.size()}")
+    // 压缩后的字节数不超过原样的80%，传输次数和预估发送时间也不增加
+    assertTrue(packed.bytes.size() * 5 <= raw.bytes.size() * 4, "raw=${raw.bytes.size()} packed=${packed.bytes.size()}")
+    assertTrue(packed.transfers <= raw.transfers, "raw=${raw.transfers} packed=${packed.transfers}")
+    assertTrue(packed.estimatedMillis() < raw.estimatedMillis())
+  }
+
+  @Test
+  fun blankElimination_withoutCompression_keepsRawMode() {
+    val label = sparseLabel()
+    val encoder = BitmapBandEncoder()
+    val trimmed = send(label, encoder, true)
+
+    assertEquals(0, encoder.compressedBands)
+    assertTrue(encoder.skippedBands > 0)
+    assertContentEquals(label.data, render(trimmed.bytes.toByteArray(), label.width, label.height))
+  }
+
+  @Test
+  fun notAfterCls_sendsEveryRow() {
+    val label = sparseLabel()
+    val encoder = BitmapBandEncoder()
+    send(label, encoder, false)
+
+    assertEquals(0, encoder.skippedBands)
+    assertEquals(0, encoder.compressedBands)
+    assertEquals(label.data.size.toLong(), encoder.sentBytes - headerBytes(label, encoder))
+  }
+
+  @Test
+  fun noisyBand_staysRaw() {
+    val label = Label(203, 64)
+    Random(7).nextBytes(label.data)
+    val encoder = BitmapBandEncoder()
+    encoder.setCompressionEnabled(true)
+    val sent = send(label, encoder, true)
+
+    assertEquals(0, encoder.compressedBands)
+    assertContentEquals(label.data, render(sent.bytes.toByteArray(), label.width, label.height))
+  }
+
+  @Test
+  fun paddingBits_doNotCountAsInk() {
+    // 宽度不是8的倍数，行尾填充位为0，整行仍视为空白
+    val label = Label(203, 40)
+    for (y in 0 until label.height) {
+      label.data[y * label.byteWidth + label.byteWidth - 1] = 0xE0.toByte()
+    }
+    val encoder = BitmapBandEncoder()
+    val sent = send(label, encoder, true)
+
+    assertEquals(1, encoder.skippedBands)
+    assertEquals(0, sent.bytes.size())
+  }
+
+  private fun headerBytes(label: Label, encoder: BitmapBandEncoder): Long {
+    val bandRows = BandPipeline.DEFAULT_BAND_BYTES / label.byteWidth
+    var total = 0L
+    var y = 0
+    while (y < label.height) {
+      val rows = minOf(bandRows, label.height - y)
+      total += "BITMAP 0,$y,${label.byteWidth},$rows,0,".length
+      y += rows
+    }
+    assertEquals(encoder.rawBands, (label.height + bandRows - 1) / bandRows)
+    return total
+  }
+}
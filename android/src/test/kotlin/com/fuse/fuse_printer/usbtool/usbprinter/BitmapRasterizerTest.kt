@@ -0,0 +1,63 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import kotlin.random.Random
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+
+/*
+ * BitmapRasterizer 必须与旧版 tspl_drawGraphic 的逐像素实现逐位一致。
+ */
+internal class BitmapRasterizerTest {
+
+  // 旧版 tspl_drawGraphic 的像素判定
+  private fun legacyWhite(color: Int): Boolean {
+    val a = color ushr 24
+    val r = color ushr 16 and 0xFF
+    val g = color ushr 8 and 0xFF
+    val b = color and 0xFF
+    return a == 0 || r * 0.3 + g * 0.59 + b * 0.11 > 127
+  }
+
+  // 旧版 tspl_drawGraphic 的单行打包
+  private fun legacyPack(row: IntArray, width: Int): ByteArray {
+    val out = ByteArray((width - 1) / 8 + 1)
+    for (x in 0 until width) {
+      if (legacyWhite(row[x])) {
+        out[x / 8] = (out[x / 8].toInt() or (0x80 shr (x % 8))).toByte()
+      }
+    }
+    return out
+  }
+
+  @Test
+  fun isWhite_matchesLegacyForEveryOpaqueColor() {
+    var mismatches = 0
+    for (rgb in 0 until (1 shl 24)) {
+      val color = rgb or (0xFF shl 24)
+      if (BitmapRasterizer.isWhite(color, BitmapRasterizer.DEFAULT_THRESHOLD) != legacyWhite(color)) {
+        mismatches++
+      }
+    }
+    assertEquals(0, mismatches)
+  }
+
+  @Test
+  fun packRow_matchesLegacyForRandomRows() {
+    val random = Random(20240601)
+    for (width in 1..203) {
+      val row = IntArray(width) {
+        // 混入全透明、半透明和随机不透明像素
+        when (random.nextInt(4)) {
+          0 -> random.nextInt() and 0x00FFFFFF
+          else -> random.nextInt()
+        }
+      }
+      val expected = legacyPack(row, width)
+      // 预先填入脏数据，确认 packRow 会完整覆盖
+      val actual = ByteArray(expected.size + 2) { 0x5A }
+      BitmapRasterizer.packRow(row, 0, width, BitmapRasterizer.DEFAULT_THRESHOLD, actual, 1)
+      assertContentEquals(expected, actual.copyOfRange(1, 1 + expected.size), "width=$width")
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+internal class ConnectionStateMachineTest {
+
+  // 记录状态机对设备的操作，retry 为当前安排的重试间隔
+  private class FakeDriver : ConnectionStateMachine.Driver {
+    var present = false
+    var permission = false
+    var openOk = true
+    var retry: Long? = null
+    val calls = mutableListOf<String>()
+
+    override fun isDevicePresent() = present
+    override fun hasPermission() = permission
+    override fun requestPermission() { calls.add("request") }
+    override fun open(): Boolean { calls.add("open"); return openOk }
+    override fun close() { calls.add("close") }
+    override fun scheduleRetry(delayMs: Long) { retry = delayMs }
+    override fun cancelRetry() { retry = null }
+    override fun onConnectionChanged(connected: Boolean) { calls.add("connected=$connected") }
+  }
+
+  @Test
+  fun disconnected_retriesWithExponentialBackoff() {
+    val driver = FakeDriver()
+    val machine = ConnectionStateMachine(driver)
+    machine.start(0)
+    val delays = mutableListOf(driver.retry)
+    repeat(7) {
+      machine.onRetry()
+      delays.add(driver.retry)
+    }
+    assertEquals(listOf<Long?>(1000, 2000, 4000, 8000, 16000, 32000, 60000, 60000), delays)
+    assertEquals(ConnectionStateMachine.State.DISCONNECTED, machine.state)
+    // 设备一直不在时不通知状态变化
+    assertEquals(emptyList<String>(), driver.calls)
+  }
+
+  @Test
+  fun attach_connectsImmediatelyAndStopsTimers() {
+    val driver = FakeDriver()
+    val machine = ConnectionStateMachine(driver)
+    machine.start(0)
+    repeat(5) { machine.onRetry() }
+
+    driver.present = true
+    driver.permission = true
+    machine.onAttached()
+    assertEquals(ConnectionStateMachine.State.CONNECTED, machine.state)
+    assertNull(driver.retry)
+    assertEquals(listOf("open", "connected=true"), driver.calls)
+
+    // 已连接时重复的插入事件不触发任何操作
+    machine.onAttached()
+    assertEquals(2, driver.calls.size)
+
+    driver.present = false
+    machine.onDetached()
+    assertEquals(listOf("open", "connected=true", "close", "connected=false"), driver.calls)
+    assertEquals(ConnectionStateMachine.INITIAL_BACKOFF_MS, driver.retry)
+  }
+
+  @Test
+  fun permission_isRequestedOnceAndDenialWaitsForReattach() {
+    val driver = FakeDriver()
+    driver.present = true
+    val machine = ConnectionStateMachine(driver)
+    machine.start(0)
+    assertEquals(ConnectionStateMachine.State.PERMISSION_PENDING, machine.state)
+    assertNull(driver.retry)
+
+    machine.onPermissionResult(false)
+    assertEquals(ConnectionStateMachine.State.DISCONNECTED, machine.state)
+    assertNull(driver.retry)
+    assertEquals(listOf("request"), driver.calls)
+
+    driver.permission = true
+    machine.onAttached()
+    assertEquals(ConnectionStateMachine.State.CONNECTED, machine.state)
+    assertEquals(listOf("request", "open", "connected=true"), driver.calls)
+  }
+
+  @Test
+  fun permissionResultWithoutExtras_connectsWhenGranted() {
+    // Android 12+ 的不可变 PendingIntent 收到的广播没有 EXTRA_PERMISSION_GRANTED，接收器按 false 上报
+    val driver = FakeDriver()
+    driver.present = true
+    val machine = ConnectionStateMachine(driver)
+    machine.start(0)
+    assertEquals(ConnectionStateMachine.State.PERMISSION_PENDING, machine.state)
+
+    driver.permission = true
+    machine.onPermissionResult(false)
+    assertEquals(ConnectionStateMachine.State.CONNECTED, machine.state)
+    assertEquals(listOf("request", "open", "connected=true"), driver.calls)
+  }
+
+  @Test
+  fun openFailure_fallsBackToRetry() {
+    val driver = FakeDriver()
+    driver.present = true
+    driver.permission = true
+    driver.openOk = false
+    val machine = ConnectionStateMachine(driver)
+    machine.start(0)
+    assertEquals(ConnectionStateMachine.State.DISCONNECTED, machine.state)
+    assertEquals(1000L, driver.retry)
+
+    driver.openOk = true
+    machine.onRetry()
+    assertEquals(ConnectionStateMachine.State.CONNECTED, machine.state)
+    val stats = machine.getStats(3_600_000)
+    assertEquals(2L, stats["wakeups"])
+    assertEquals(1L, stats["retries"])
+    assertEquals(2L, stats["wakeupsPerHour"])
+  }
+}
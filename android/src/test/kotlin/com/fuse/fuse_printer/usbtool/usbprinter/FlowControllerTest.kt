@@ -0,0 +1,130 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+internal class FlowControllerTest {
+
+  // 打印机模型：bufferSize 字节缓冲，以 drainBps 消化，USB 以 usbBps 写入；缓冲满时写入等待排空
+  private class PrinterModel(val bufferSize: Double, val drainBps: Double, val usbBps: Double = 1e6) {
+    private var buffered = 0.0
+
+    /** 发送 chunk 字节所需秒数 */
+    fun send(chunk: Int): Double {
+      val room = bufferSize - buffered
+      val seconds = if (chunk <= room) chunk / usbBps else room / usbBps + (chunk - room) / drainBps
+      buffered = if (chunk >= room) bufferSize else (buffered + chunk - drainBps * seconds).coerceAtLeast(0.0)
+      return seconds
+    }
+  }
+
+  private fun policyTimeout(chunk: Int) = 1000 + chunk * 30 / 1024
+
+  private class Run(val failedJobs: Int, val timeouts: Int)
+
+  /**
+   * 按 USBUtil.writeBlocking 的规则分任务发送 total 字节：多包传输超时后不知道发出多少，任务失败；
+   * 单包超时可以重试。flow 为 null 时用固定 16KB 分块
+   */
+  private fun stream(flow: FlowController?, printer: PrinterModel, total: Int, jobSize: Int = 64 * 1024): Run {
+    var failedJobs = 0
+    var timeouts = 0
+    var job = 0
+    while (job < total) {
+      val length = minOf(jobSize, total - job)
+      var sent = 0
+      while (sent < length) {
+        val chunk = flow?.nextChunk(length - sent, 16384, 512) ?: minOf(16384, length - sent)
+        val timeout = flow?.timeoutMs(chunk, policyTimeout(chunk)) ?: policyTimeout(chunk)
+        val seconds = printer.send(chunk)
+        if (seconds * 1000 > timeout) {
+          timeouts++
+          flow?.onTimeout(chunk, timeout)
+          if (chunk > 512) {
+            failedJobs++
+            break
+          }
+        } else {
+          flow?.onTransfer(chunk, (seconds * 1e9).toLong())
+        }
+        sent += chunk
+      }
+      job += length
+    }
+    return Run(failedJobs, timeouts)
+  }
+
+  @Test
+  fun sustainedLoad_hasNoFailedJobs() {
+    for (drain in doubleArrayOf(8e3, 20e3, 100e3)) {
+      val flow = FlowController()
+      val printer = PrinterModel(64.0 * 1024, drain)
+      // 预热期缓冲区在某一块中途填满，也不能让任务失败
+      assertEquals(0, stream(flow, printer, 1 shl 20).failedJobs, "drain=$drain warm-up")
+      assertFalse(flow.isWarmingUp, "drain=$drain")
+      val steady = stream(flow, printer, 2 shl 20)
+      assertEquals(0, steady.failedJobs, "drain=$drain")
+      assertEquals(0, steady.timeouts, "drain=$drain")
+      // 稳定后估计值收敛到打印机的排空速率
+      assertEquals(drain, flow.drainRate, drain * 0.05)
+    }
+  }
+
+  @Test
+  fun reset_withFullPrinterBuffer_hasNoFailedJobs() {
+    // 重新连接时打印机缓冲区仍是满的，第一块就按排空速率发送
+    for (drain in doubleArrayOf(8e3, 20e3, 100e3)) {
+      val flow = FlowController()
+      val printer = PrinterModel(64.0 * 1024, drain)
+      stream(flow, printer, 1 shl 20)
+      flow.reset()
+      assertTrue(flow.isWarmingUp)
+      assertEquals(512, flow.nextChunk(1 shl 20, 16384, 512))
+      assertEquals(0, stream(flow, printer, 1 shl 20).failedJobs, "drain=$drain")
+    }
+  }
+
+  @Test
+  fun fixedChunks_failJobsOnSlowPrinter() {
+    // 对照：固定 16KB 分块在排空慢于 16KB/1.48s 的打印机上，缓冲区满后每个任务都失败
+    val run = stream(null, PrinterModel(64.0 * 1024, 8e3), 2 shl 20)
+    assertTrue(run.failedJobs > 25, "failed=${run.failedJobs}")
+  }
+
+  @Test
+  fun window_followsDrainRateWithinBounds() {
+    val flow = FlowController(200)
+    // 预热：从一个包开始，超时按保守排空速率放宽
+    assertEquals(512, flow.nextChunk(1 shl 20, 16384, 512))
+    assertEquals(16384 * 1000 / FlowController.WARMUP_DRAIN_BPS, flow.timeoutMs(16384, 1000))
+    flow.onTransfer(512, 512_000)
+    assertEquals(1024, flow.nextChunk(1 shl 20, 16384, 512))
+    // 速率跌到峰值一半以下：缓冲区已满，结束预热
+    flow.onTransfer(8000, 1_000_000_000)
+    assertFalse(flow.isWarmingUp)
+    // 8000 B/s × 200ms = 1600，按包长对齐
+    assertEquals(1536, flow.nextChunk(1 shl 20, 16384, 512))
+    assertEquals(100, flow.nextChunk(100, 16384, 512))
+    assertEquals(1536 * 1000 / 8000 * FlowController.TIMEOUT_FACTOR, flow.timeoutMs(1536, 0))
+
+    // 速率下降立即生效，回升则逐步恢复
+    flow.onTransfer(1000, 1_000_000_000)
+    assertEquals(512, flow.nextChunk(1 shl 20, 16384, 512))
+    flow.onTransfer(1_000_000, 1_000_000_000)
+    assertTrue(flow.drainRate < 1_000_000 / 2.0)
+  }
+
+  @Test
+  fun pauses_backOffAndResetOnProgress() {
+    val flow = FlowController()
+    assertEquals(FlowController.PAUSE_MIN_MS, flow.nextPause())
+    assertEquals(FlowController.PAUSE_MIN_MS * 2, flow.nextPause())
+    repeat(10) { flow.nextPause() }
+    assertEquals(FlowController.PAUSE_MAX_MS, flow.nextPause())
+    flow.onTransfer(512, 1_000_000)
+    assertEquals(FlowController.PAUSE_MIN_MS, flow.nextPause())
+    assertEquals(14L, flow.stats["pauses"])
+  }
+}
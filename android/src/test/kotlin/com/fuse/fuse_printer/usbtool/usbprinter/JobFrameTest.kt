@@ -0,0 +1,103 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import java.nio.ByteBuffer
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+internal class JobFrameTest {
+
+  // 丢弃数据的传输，只统计字节数
+  private class NullTransport : BulkTransport {
+    var bytes = 0L
+
+    override fun getMaxPacketSize() = 512
+
+    override fun writeData(data: ByteArray, offset: Int, length: Int): Int {
+      bytes += length
+      return length
+    }
+
+    override fun flush() = true
+  }
+
+  private fun frame(opcode: Int, jobId: Int, payload: ByteArray): ByteBuffer {
+    val buffer = ByteBuffer.allocate(JobFrame.HEADER_SIZE + payload.size)
+    JobFrame.write(buffer, opcode, jobId, payload, 0, payload.size)
+    buffer.flip()
+    return buffer
+  }
+
+  @Test
+  fun read_referencesPayloadInPlace() {
+    val payload = ByteArray(1000) { it.toByte() }
+    val buffer = frame(JobFrame.OP_TEXT_EX, 0x7F123456, payload)
+
+    val parsed = JobFrame.read(buffer)
+    assertEquals(JobFrame.OP_TEXT_EX, parsed.opcode)
+    assertEquals(0x7F123456, parsed.jobId)
+    assertEquals(payload.size, parsed.length)
+    // 堆缓冲区直接引用后备数组
+    assertSame(buffer.array(), parsed.data)
+    assertContentEquals(payload, parsed.data.copyOfRange(parsed.offset, parsed.offset + parsed.length))
+    assertEquals(buffer.limit(), buffer.position())
+  }
+
+  @Test
+  fun read_copiesFromDirectBuffer() {
+    val payload = byteArrayOf(0, 0, 0, 5)
+    val heap = frame(JobFrame.OP_FEED, 9, payload)
+    val direct = ByteBuffer.allocateDirect(heap.remaining())
+    direct.put(heap).flip()
+
+    val parsed = JobFrame.read(direct)
+    assertEquals(5, parsed.intArgument(1))
+    assertEquals(0, parsed.offset)
+  }
+
+  @Test
+  fun read_rejectsTruncatedFrames() {
+    assertFailsWith<IllegalArgumentException> { JobFrame.read(ByteBuffer.allocate(4)) }
+    val buffer = frame(JobFrame.OP_RAW, 1, ByteArray(10))
+    buffer.limit(buffer.limit() - 1)
+    assertFailsWith<IllegalArgumentException> { JobFrame.read(buffer) }
+    val negative = ByteBuffer.allocate(JobFrame.HEADER_SIZE)
+    negative.put(JobFrame.OP_RAW.toByte()).putInt(1).putInt(-1).flip()
+    assertFailsWith<IllegalArgumentException> { JobFrame.read(negative) }
+  }
+
+  @Test
+  fun reply_isDirectAndBigEndian() {
+    val reply = JobFrame.reply(0x01020304, JobFrame.STATUS_REJECTED)
+    assertEquals(true, reply.isDirect)
+    assertEquals(JobFrame.REPLY_SIZE, reply.remaining())
+    assertEquals(0x01020304, reply.getInt(0))
+    assertEquals(JobFrame.STATUS_REJECTED, reply.get(4).toInt())
+  }
+
+  @Test
+  fun read_copiesLargePayloadOnceFromEngineBuffer() {
+    // 平台通道交给原生端的是直接缓冲区，数据只复制一份，且不带帧头
+    val payload = ByteArray(1 shl 20) { (it * 31).toByte() }
+    val heap = frame(JobFrame.OP_RAW, 42, payload)
+    val direct = ByteBuffer.allocateDirect(heap.remaining())
+    direct.put(heap).flip()
+
+    val parsed = JobFrame.read(direct)
+    assertEquals(42, parsed.jobId)
+    assertEquals(0, parsed.offset)
+    assertEquals(payload.size, parsed.data.size)
+    assertContentEquals(payload, parsed.data)
+    assertEquals(direct.limit(), direct.position())
+
+    // 解析后的数据经合并写入器原样发出
+    val transport = NullTransport()
+    val writer = UsbBulkWriter(transport)
+    assertTrue(writer.write(parsed.data, parsed.offset, parsed.length))
+    assertTrue(writer.endJob())
+    assertEquals(payload.size.toLong(), transport.bytes)
+  }
+}
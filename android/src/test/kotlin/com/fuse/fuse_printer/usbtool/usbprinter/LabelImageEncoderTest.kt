@@ -0,0 +1,166 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+internal class LabelImageEncoderTest {
+
+  // 内存中的ARGB图像
+  private class ArrayRowSource(
+    private val width: Int,
+    private val height: Int,
+    val pixels: IntArray,
+  ) : LabelImageEncoder.RowSource {
+    var rowsRead = 0
+
+    override fun getWidth() = width
+
+    override fun getHeight() = height
+
+    override fun readRow(y: Int, dst: IntArray) {
+      rowsRead++
+      System.arraycopy(pixels, y * width, dst, 0, width)
+    }
+  }
+
+  private fun encode(src: LabelImageEncoder.RowSource, width: Int, height: Int): ByteArray {
+    val out = ByteArray(LabelImageEncoder.bytesPerLine(width) * height)
+    LabelImageEncoder().encode(src, width, height, out, 0)
+    return out
+  }
+
+  @Test
+  fun encode_producesCorrectDots() {
+    val colors = intArrayOf(
+      0xFFFFFFFF.toInt(), // 白 -> 1
+      0xFF000000.toInt(), // 黑 -> 0
+      0xFFFF0000.toInt(), // 纯红，灰度54 -> 0（旧实现因运算符优先级算错）
+      0x00000000,         // 全透明 -> 1
+      0xFF808080.toInt(), // 灰度128 -> 1
+      0xFF7F7F7F.toInt(), // 灰度127 -> 0
+      0x80000000.toInt(), // 半透明黑，混合白底后约127 -> 0
+      0xFF00FF00.toInt(), // 纯绿，灰度182 -> 1
+    )
+    val out = encode(ArrayRowSource(colors.size, 1, colors), colors.size, 1)
+    assertEquals(0b10011001, out[0].toInt() and 0xFF)
+  }
+
+  @Test
+  fun encode_padsPartialByteWithWhite() {
+    val black = IntArray(3) { 0xFF000000.toInt() }
+    val out = encode(ArrayRowSource(3, 1, black), 3, 1)
+    assertEquals(0b00011111, out[0].toInt() and 0xFF)
+  }
+
+  @Test
+  fun encode_scalesWithNearestNeighbour() {
+    // 源图 4x2：每列颜色不同，缩放到 8x4 后每个源像素应变成 2x2
+    val src = intArrayOf(
+      0xFF000000.toInt(), 0xFFFFFFFF.toInt(), 0xFF000000.toInt(), 0xFFFFFFFF.toInt(),
+      0xFFFFFFFF.toInt(), 0xFF000000.toInt(), 0xFFFFFFFF.toInt(), 0xFF000000.toInt(),
+    )
+    val source = ArrayRowSource(4, 2, src)
+    val out = encode(source, 8, 4)
+    assertContentEquals(byteArrayOf(0x33, 0x33, 0xCC.toByte(), 0xCC.toByte()), out)
+    // 相邻目标行映射到同一源行时不重复读取
+    assertEquals(2, source.rowsRead)
+  }
+
+  @Test
+  fun encode_reportsPeakMemoryPerLabel() {
+    // 1600x2400 的源图缩放为 4x6 英寸 203dpi 标签
+    val srcWidth = 1600
+    val srcHeight = 2400
+    val dstWidth = 812
+    val dstHeight = 1218
+    val pixels = IntArray(srcWidth * srcHeight) { i -> if ((i % srcWidth) * 255 / srcWidth > 127) -1 else 0xFF000000.toInt() }
+    val encoder = LabelImageEncoder()
+    val out = ByteArray(LabelImageEncoder.bytesPerLine(dstWidth) * dstHeight)
+    encoder.encode(ArrayRowSource(srcWidth, srcHeight, pixels), dstWidth, dstHeight, out, 0)
+
+    val scratch = encoder.scratchBytes
+    // 旧实现：灰度副本 + 缩放副本两张 ARGB_8888 位图
+    val legacy = srcWidth.toLong() * srcHeight * 4 + dstWidth.toLong() * dstHeight * 4
+    // 阈值模式：源行 + 采样表 + 灰度行
+    assertEquals((srcWidth + 2 * dstWidth) * 4, scratch)
+    assertTrue(scratch + out.size < legacy / 50)
+  }
+
+  private fun whiteRatio(mode: LabelImageEncoder.DitherMode, gray: Int, size: Int): Double {
+    val color = (0xFF shl 24) or (gray shl 16) or (gray shl 8) or gray
+    val encoder = LabelImageEncoder()
+    encoder.setDitherMode(mode)
+    val out = ByteArray(LabelImageEncoder.bytesPerLine(size) * size)
+    encoder.encode(ArrayRowSource(size, size, IntArray(size * size) { color }), size, size, out, 0)
+    return out.sumOf { Integer.bitCount(it.toInt() and 0xFF) } / (size.toDouble() * size)
+  }
+
+  @Test
+  fun dither_preservesAverageGray() {
+    // 灰度64的平面：阈值模式全黑，误差扩散和有序抖动约25%白点
+    assertEquals(0.0, whiteRatio(LabelImageEncoder.DitherMode.THRESHOLD, 64, 256))
+    for (mode in listOf(
+      LabelImageEncoder.DitherMode.FLOYD_STEINBERG,
+      LabelImageEncoder.DitherMode.BAYER_4X4,
+      LabelImageEncoder.DitherMode.BAYER_8X8,
+    )) {
+      val ratio = whiteRatio(mode, 64, 256)
+      assertTrue(ratio in 0.23..0.27, "$mode white=$ratio")
+    }
+    // Atkinson 只扩散 3/4 的误差，中间调偏暗
+    val atkinson = whiteRatio(LabelImageEncoder.DitherMode.ATKINSON, 64, 256)
+    assertTrue(atkinson in 0.10..0.27, "ATKINSON white=$atkinson")
+  }
+
+  @Test
+  fun encodeRow_matchesWholeImageEncode() {
+    // 分带光栅化逐行调用 encodeRow，误差跨行延续，结果应与整图 encode 一致
+    val width = 37
+    val height = 29
+    val pixels = IntArray(width * height) { i ->
+      val gray = (i * 7919) % 256
+      (0xFF shl 24) or (gray shl 16) or (gray shl 8) or gray
+    }
+    val bytesPerLine = LabelImageEncoder.bytesPerLine(width)
+    for (mode in LabelImageEncoder.DitherMode.values()) {
+      val whole = LabelImageEncoder()
+      whole.setDitherMode(mode)
+      val expected = ByteArray(bytesPerLine * height)
+      whole.encode(ArrayRowSource(width, height, pixels), width, height, expected, 0)
+
+      val rows = LabelImageEncoder()
+      rows.setDitherMode(mode)
+      rows.beginRows(width)
+      val actual = ByteArray(bytesPerLine * height)
+      for (y in 0 until height) {
+        rows.encodeRow(y, pixels, y * width, width, actual, y * bytesPerLine)
+      }
+      assertContentEquals(expected, actual, "$mode")
+    }
+  }
+
+  @Test
+  fun dither_encodesMegapixelWithinBound() {
+    val size = 1024
+    val pixels = IntArray(size * size) { i ->
+      val gray = (i % size) * 255 / size
+      (0xFF shl 24) or (gray shl 16) or (gray shl 8) or gray
+    }
+    val source = ArrayRowSource(size, size, pixels)
+    val out = ByteArray(LabelImageEncoder.bytesPerLine(size) * size)
+    for (mode in LabelImageEncoder.DitherMode.values()) {
+      val encoder = LabelImageEncoder()
+      encoder.setDitherMode(mode)
+      encoder.encode(source, size, size, out, 0)
+      val start = System.nanoTime()
+      encoder.encode(source, size, size, out, 0)
+      val ms = (System.nanoTime() - start) / 1_000_000
+      // 逐行处理为 O(像素)，正常约几十毫秒；上限放宽到2秒，只拦截退化为多遍或逐像素分配的实现
+      assertTrue(ms < 2000, "$mode: $ms ms/MP")
+      // 误差缓冲只保存一到两行
+      assertTrue(encoder.scratchBytes <= (size * 3 + 3 * (size + 4)) * 4, "$mode scratch=${encoder.scratchBytes}")
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+internal class LabelTemplateTest {
+
+  private val source = """
+    SIZE 60,40
+    CLS
+    TEXT 20,20,"TSS24.BF2",0,1,1,"SKU: {sku}"
+    TEXT 20,60,"TSS24.BF2",0,1,1,"￥{price}"
+    BARCODE 20,100,"128",{height:int},1,0,2,2,"{sku}"
+  """.trimIndent()
+
+  private fun String.crlf() = replace("\n", "\r\n").toByteArray(Charsets.UTF_8)
+
+  private fun TsplWriter.text() = String(toByteArray(), Charsets.UTF_8)
+
+  @Test
+  fun compile_collectsVariablesInOrder() {
+    val template = LabelTemplate.compile("sku", source)
+    assertEquals(listOf("sku", "price", "height"), template.variables)
+    assertEquals(LabelTemplate.SlotType.INT, template.getVariableType(2))
+    assertEquals("SKU.BAS", template.fileName)
+  }
+
+  @Test
+  fun fill_matchesHandBuiltLabel() {
+    val template = LabelTemplate.compile("sku", source)
+    val filled = TsplWriter()
+    template.fill(filled, mapOf("sku" to "A-1001", "price" to "9.90", "height" to 80))
+
+    val expected = TsplWriter()
+      .size(60, 40)
+      .cls()
+      .text(20, 20, "TSS24.BF2", 0, 1, 1, "SKU: A-1001")
+      .text(20, 60, "TSS24.BF2", 0, 1, 1, "￥9.90")
+      .barcode(20, 100, "128", 80, 1, 0, 2, 2, "A-1001")
+    assertContentEquals(expected.toByteArray(), filled.toByteArray())
+  }
+
+  @Test
+  fun fill_escapesQuotesAndKeepsLiteralBraces() {
+    val template = LabelTemplate.compile("qr", "QRCODE 0,0,H,4,A,0,\"{{\\[\"]id\\[\"]:{id}}\"")
+    val out = TsplWriter()
+    template.fill(out, "a\"b")
+    assertContentEquals("QRCODE 0,0,H,4,A,0,\"{\\[\"]id\\[\"]:a\\[\"]b}\"\n".crlf(), out.toByteArray())
+  }
+
+  @Test
+  fun fill_reusesWriterWithoutGrowing() {
+    val template = LabelTemplate.compile("sku", source)
+    val out = TsplWriter()
+    template.fill(out, "A-1", "1.00", 80)
+    val buffer = out.buffer()
+    repeat(100) {
+      template.fill(out.reset(), "A-$it", "$it.00", 80)
+    }
+    assertTrue(buffer === out.buffer())
+  }
+
+  @Test
+  fun storedForm_downloadsProgramAndRunsWithVariables() {
+    val template = LabelTemplate.compile("sku", source)
+    val download = TsplWriter()
+    template.writeDownload(download)
+    assertEquals(
+      """
+        DOWNLOAD "SKU.BAS"
+        SIZE 60,40
+        CLS
+        TEXT 20,20,"TSS24.BF2",0,1,1,"SKU: "+V0$+""
+        TEXT 20,60,"TSS24.BF2",0,1,1,"￥"+V1$+""
+        BARCODE 20,100,"128",V2,1,0,2,2,""+V0$+""
+        EOP
+
+      """.trimIndent().replace("\n", "\r\n"),
+      download.text()
+    )
+
+    val run = TsplWriter()
+    template.fillStored(run, mapOf("sku" to "A\"1", "price" to "9.90", "height" to "80"))
+    assertEquals("V0$=\"A\\[\"]1\"\r\nV1$=\"9.90\"\r\nV2=80\r\nRUN \"SKU.BAS\"\r\n", run.text())
+  }
+
+  @Test
+  fun invalidTemplatesAndValues_areRejected() {
+    assertFailsWith<IllegalArgumentException> { LabelTemplate.compile("x", "TEXT {a") }
+    assertFailsWith<IllegalArgumentException> { LabelTemplate.compile("x", "{a} {a:int}") }
+    assertFailsWith<IllegalArgumentException> { LabelTemplate.compile("x", "{a:date}") }
+    val template = LabelTemplate.compile("sku", source)
+    assertFailsWith<IllegalArgumentException> { template.fill(TsplWriter(), mapOf("sku" to "A")) }
+    assertFailsWith<IllegalArgumentException> {
+      template.fill(TsplWriter(), mapOf("sku" to "A", "price" to "1", "height" to "tall"))
+    }
+  }
+
+  @Test
+  fun storedFileName_fallsBackToHashForLongOrSymbolNames() {
+    val name = LabelTemplate.compile("warehouse_sku_label", source).fileName
+    assertTrue(name.matches(Regex("T[0-9A-F]{7}\\.BAS")), name)
+  }
+}
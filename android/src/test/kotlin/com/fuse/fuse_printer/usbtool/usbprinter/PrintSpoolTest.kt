@@ -0,0 +1,104 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import android.hardware.usb.UsbDevice
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import org.mockito.Mockito
+
+internal class PrintSpoolTest {
+
+  private fun units(vararg labels: String) = labels.map { it.toByteArray() }
+
+  private fun tempDir(): File = Files.createTempDirectory("spool").toFile()
+
+  private fun device(name: String, serial: String?): UsbDevice {
+    val device = Mockito.mock(UsbDevice::class.java)
+    Mockito.`when`(device.deviceName).thenReturn(name)
+    Mockito.`when`(device.vendorId).thenReturn(0x1234)
+    Mockito.`when`(device.productId).thenReturn(0x0001)
+    Mockito.`when`(device.serialNumber).thenReturn(serial)
+    return device
+  }
+
+  @Test
+  fun reopen_resumesFromLastCheckpoint() {
+    val dir = tempDir()
+    val spool = PrintSpool(dir)
+    val first = spool.append(units("A", "BB", "CCC"))
+    val second = spool.append(units("D"))
+    spool.checkpoint(first, 1)
+    // 进程退出，未调用 close
+    val reopened = PrintSpool(dir)
+    val pending = reopened.pending
+    assertEquals(listOf(first, second), pending.map { it.id })
+    assertEquals(1, pending[0].printed)
+    assertEquals(3, pending[0].total)
+    assertContentEquals("BB".toByteArray(), reopened.readUnit(pending[0], 1))
+    assertContentEquals("D".toByteArray(), reopened.readUnit(pending[1], 0))
+    // 新任务的ID不与恢复的任务重复
+    assertTrue(reopened.append(units("E")) > second)
+  }
+
+  @Test
+  fun completedAndRemovedJobs_leaveTheQueue() {
+    val dir = tempDir()
+    val spool = PrintSpool(dir)
+    val first = spool.append(units("A", "B"))
+    val second = spool.append(units("C"))
+    spool.checkpoint(first, 2)
+    assertNull(spool.get(first))
+    assertTrue(spool.remove(second))
+    assertFalse(spool.remove(second))
+    // 队列清空时日志截断
+    assertEquals(0L, spool.logBytes)
+    assertEquals(0L, File(dir, "spool.log").length())
+    assertEquals(0, PrintSpool(dir).pending.size)
+  }
+
+  @Test
+  fun tornTrailingRecord_isDiscarded() {
+    val dir = tempDir()
+    val spool = PrintSpool(dir)
+    val kept = spool.append(units("A"))
+    val valid = spool.logBytes
+    spool.append(units("BBBB"))
+    spool.close()
+    // 模拟写入第二条记录中途进程退出
+    RandomAccessFile(File(dir, "spool.log"), "rw").use { it.setLength(valid + 10) }
+
+    val reopened = PrintSpool(dir)
+    assertEquals(listOf(kept), reopened.pending.map { it.id })
+    assertEquals(valid, reopened.logBytes)
+    val next = reopened.append(units("C"))
+    assertContentEquals("C".toByteArray(), reopened.readUnit(reopened.get(next), 0))
+  }
+
+  @Test
+  fun replug_reopensTheSameSpoolUnderANewDeviceName() {
+    // 插件按设备标识分目录，重新插拔后设备名变了也打开同一个队列
+    val root = tempDir()
+    val before = UsbDeviceIdentity.of(device("/dev/bus/usb/001/005", "A100"))
+    val spool = PrintSpool(File(root, before.key))
+    val job = spool.append(units("A", "B"))
+    spool.checkpoint(job, 1)
+    spool.close()
+
+    val after = UsbDeviceIdentity.of(device("/dev/bus/usb/002/017", "A100"))
+    assertEquals(before.key, after.key)
+    val reopened = PrintSpool(File(root, after.key))
+    assertEquals(listOf(job), reopened.pending.map { it.id })
+    assertEquals(1, reopened.pending[0].printed)
+
+    // 同型号的另一台打印机使用自己的队列
+    val other = UsbDeviceIdentity.of(device("/dev/bus/usb/001/005", "B200"))
+    assertFalse(other.key == before.key)
+    assertEquals(0, PrintSpool(File(root, other.key)).pending.size)
+  }
+}
@@ -0,0 +1,62 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import kotlin.concurrent.thread
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNull
+
+internal class RawCommandStreamTest {
+
+  @Test
+  fun offer_isBoundedByBufferedBytes() {
+    val stream = RawCommandStream(1, 100, 1000)
+    assertEquals(RawCommandStream.OFFER_ACCEPTED, stream.offer(ByteArray(60), 0))
+    assertEquals(RawCommandStream.OFFER_FULL, stream.offer(ByteArray(60), 10))
+    assertEquals(60, stream.bufferedBytes)
+
+    // 取走之后可以继续放入
+    assertEquals(60, stream.next()!!.size)
+    assertEquals(RawCommandStream.OFFER_ACCEPTED, stream.offer(ByteArray(60), 0))
+    assertEquals(120L, stream.receivedBytes)
+
+    // 单个分块超过上限时，缓冲为空也接收
+    val large = RawCommandStream(2, 100, 1000)
+    assertEquals(RawCommandStream.OFFER_ACCEPTED, large.offer(ByteArray(500), 0))
+  }
+
+  @Test
+  fun next_drainsBufferThenEnds() {
+    val stream = RawCommandStream(1, 100, 1000)
+    val sender = thread {
+      repeat(10) { stream.offer(byteArrayOf(it.toByte()), 1000) }
+      stream.end()
+    }
+    val received = mutableListOf<Byte>()
+    while (true) {
+      val chunk = stream.next() ?: break
+      received.addAll(chunk.toList())
+    }
+    sender.join()
+    assertEquals((0 until 10).map { it.toByte() }, received)
+    assertEquals(RawCommandStream.OFFER_CLOSED, stream.offer(ByteArray(1), 0))
+  }
+
+  @Test
+  fun close_failsReaderAndRejectsWriter() {
+    val stream = RawCommandStream(1, 100, 1000)
+    stream.offer(ByteArray(10), 0)
+    stream.close()
+    assertEquals(0, stream.bufferedBytes)
+    assertFailsWith<IllegalStateException> { stream.next() }
+    assertEquals(RawCommandStream.OFFER_CLOSED, stream.offer(ByteArray(1), 0))
+  }
+
+  @Test
+  fun idleSender_timesOut() {
+    val stream = RawCommandStream(1, 100, 50)
+    assertFailsWith<IllegalStateException> { stream.next() }
+    assertEquals(RawCommandStream.OFFER_CLOSED, stream.offer(ByteArray(1), 0))
+    assertNull(RawCommandStream(2, 100, 50).apply { end() }.next())
+  }
+}
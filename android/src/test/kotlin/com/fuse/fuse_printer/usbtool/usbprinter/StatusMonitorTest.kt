@@ -0,0 +1,157 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+internal class StatusMonitorTest {
+
+  // 按查询指令返回预设状态字节的传输，reply 为 null 表示不应答
+  private class StatusTransport : BulkTransport {
+    @Volatile var reply: Int? = 0
+    val commands = mutableListOf<List<Byte>>()
+
+    override fun getMaxPacketSize() = 64
+
+    override fun writeData(data: ByteArray, offset: Int, length: Int): Int {
+      synchronized(commands) { commands.add(data.copyOfRange(offset, offset + length).toList()) }
+      return length
+    }
+
+    override fun flush() = true
+
+    override fun readData(buffer: ByteArray, offset: Int, length: Int, timeoutMs: Int): Int {
+      val b = reply ?: return 0
+      buffer[offset] = b.toByte()
+      return 1
+    }
+  }
+
+  @Test
+  fun tspl_decodesStatusBits() {
+    assertTrue(PrinterStatus.fromTspl(0x00).isReady())
+    assertTrue(PrinterStatus.fromTspl(0x20).printing)
+    assertTrue(PrinterStatus.fromTspl(0x20).isReady())
+    val status = PrinterStatus.fromTspl(0x05)
+    assertTrue(status.headOpen)
+    assertTrue(status.paperOut)
+    assertFalse(status.paperJam)
+    assertFalse(status.isReady())
+    assertTrue(PrinterStatus.fromTspl(0x10).paused)
+    assertTrue(PrinterStatus.fromTspl(0x08).ribbonOut)
+    assertTrue(PrinterStatus.fromTspl(0x80).error)
+  }
+
+  @Test
+  fun escPos_decodesOfflineCauseAndPaperSensor() {
+    val nearEnd = PrinterStatus.fromEscPos(0x12, 0x1E)
+    assertTrue(nearEnd.paperNearEnd)
+    assertTrue(nearEnd.isReady())
+    assertTrue(PrinterStatus.fromEscPos(0x16, 0x12).headOpen)
+    assertTrue(PrinterStatus.fromEscPos(0x32, 0x12).paperOut)
+    assertTrue(PrinterStatus.fromEscPos(0x12, 0x72).paperOut)
+    assertFalse(PrinterStatus.fromEscPos(0x52, 0x12).isReady())
+    assertFalse(PrinterStatus.UNKNOWN.isKnown())
+    assertTrue(PrinterStatus.UNKNOWN.isReady())
+  }
+
+  private fun tsplMonitor(transport: StatusTransport, listener: StatusMonitor.Listener? = null): StatusMonitor {
+    val monitor = StatusMonitor(transport, listener)
+    monitor.setProtocol(PrinterStatus.PROTOCOL_TSPL)
+    return monitor
+  }
+
+  @Test
+  fun noProtocol_sendsNothing() {
+    // ESC ! ? 在 ESC/POS 打印机上会改打印模式，未设置协议时不能发送
+    val transport = StatusTransport()
+    val monitor = StatusMonitor(transport, null)
+    monitor.onIdle()
+    assertTrue(monitor.isReadyForJob)
+    assertTrue(transport.commands.isEmpty())
+    assertEquals(StatusMonitor.MAX_INTERVAL_MS, monitor.pollIntervalMs)
+  }
+
+  @Test
+  fun poll_sendsProtocolQueries() {
+    val transport = StatusTransport()
+    val monitor = tsplMonitor(transport)
+    monitor.poll()
+    monitor.setProtocol(PrinterStatus.PROTOCOL_ESCPOS)
+    monitor.poll()
+    assertContentEquals(
+      listOf(listOf<Byte>(0x1B, 0x21, 0x3F), listOf<Byte>(0x10, 0x04, 0x02), listOf<Byte>(0x10, 0x04, 0x04)),
+      transport.commands
+    )
+  }
+
+  @Test
+  fun interval_backsOffWhileStableAndResetsOnChange() {
+    val transport = StatusTransport()
+    val changes = mutableListOf<PrinterStatus>()
+    val monitor = tsplMonitor(transport) { changes.add(it) }
+
+    monitor.poll()
+    assertEquals(StatusMonitor.MIN_INTERVAL_MS, monitor.pollIntervalMs)
+    repeat(10) { monitor.poll() }
+    assertEquals(StatusMonitor.MAX_INTERVAL_MS, monitor.pollIntervalMs)
+    assertEquals(1, changes.size)
+
+    transport.reply = 0x04
+    monitor.poll()
+    assertEquals(StatusMonitor.MIN_INTERVAL_MS, monitor.pollIntervalMs)
+    assertTrue(monitor.status.paperOut)
+    // 不可打印时保持快速轮询
+    monitor.poll()
+    assertEquals(StatusMonitor.MIN_INTERVAL_MS, monitor.pollIntervalMs)
+    assertEquals(2, changes.size)
+  }
+
+  @Test
+  fun unresponsivePrinter_isNoLongerQueried() {
+    val transport = StatusTransport()
+    transport.reply = null
+    val monitor = tsplMonitor(transport)
+    repeat(StatusMonitor.MAX_MISSES) { monitor.poll() }
+    assertTrue(monitor.isUnresponsive)
+    assertEquals(StatusMonitor.MAX_INTERVAL_MS, monitor.pollIntervalMs)
+
+    val queries = transport.commands.size
+    assertTrue(monitor.isReadyForJob)
+    repeat(5) { monitor.onIdle() }
+    assertEquals(queries, transport.commands.size)
+
+    // 重新连接后再次尝试查询
+    transport.reply = 0
+    monitor.reset()
+    monitor.onIdle()
+    assertFalse(monitor.isUnresponsive)
+    assertEquals(queries + 1, transport.commands.size)
+  }
+
+  @Test
+  fun scheduler_holdsJobsUntilPrinterRecovers() {
+    val transport = StatusTransport()
+    transport.reply = 0x04
+    val monitor = tsplMonitor(transport)
+    val scheduler = PrintJobScheduler("test", 4)
+    scheduler.setStatusGate(monitor)
+    val done = CountDownLatch(1)
+    try {
+      scheduler.submit({ true }) { _, _, _ -> done.countDown() }
+      assertFalse(done.await(600, TimeUnit.MILLISECONDS))
+      assertTrue(scheduler.isHolding)
+      assertEquals(1, scheduler.pendingCount)
+
+      transport.reply = 0x00
+      assertTrue(done.await(2, TimeUnit.SECONDS))
+      assertFalse(scheduler.isHolding)
+    } finally {
+      scheduler.shutdown()
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import java.lang.management.ManagementFactory
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+internal class TsplWriterTest {
+
+  private fun golden(name: String): ByteArray =
+    javaClass.getResourceAsStream("/tspl/$name")!!.use { it.readBytes() }
+
+  private fun concat(vararg parts: ByteArray): ByteArray =
+    parts.fold(ByteArray(0)) { acc, part -> acc + part }
+
+  private fun TsplWriter.bytes() = toByteArray()
+
+  @Test
+  fun setupCommands_matchGolden() {
+    val writer = TsplWriter()
+      .init().size(60, 40).gap(2, 0).direction(1).speed(4).density(8).reference(0, 0).tear(1).cls()
+    assertContentEquals(golden("setup.bin"), writer.bytes())
+
+    // TSCUtils 的各方法拼起来结果相同，INIT 后是 CR LF 而不是 "1310"
+    val legacyApi = concat(
+      TSCUtils.initPrinter(),
+      TSCUtils.setLabelSize(60, 40),
+      TSCUtils.setGap(2),
+      TSCUtils.setDirection(1),
+      TSCUtils.setPrintSpeed(4),
+      TSCUtils.setPrintDensity(8),
+      TSCUtils.setReference(0, 0),
+      TSCUtils.setTearPosition(1),
+      TSCUtils.clearBuffer(),
+    )
+    assertContentEquals(golden("setup.bin"), legacyApi)
+  }
+
+  @Test
+  fun fieldCommands_matchGolden() {
+    val writer = TsplWriter()
+      .text(20, 30, "TSS24.BF2", 0, 1, 1, "Hello")
+      .barcode(50, 120, "128", 80, 1, 0, 2, 2, "6901234567892")
+      .qrcode(400, 40, 'H', 6, 'A', 0, "https://example.com/?a=1&b=2")
+      .print(1, 1).feed().backFeed().cut()
+    assertContentEquals(golden("fields.bin"), writer.bytes())
+
+    val legacyApi = concat(
+      TSCUtils.printText(20, 30, 3, 0, 1, 1, "Hello"),
+      TSCUtils.printBarcode(50, 120, "128", 80, 1, 0, 2, 2, "6901234567892"),
+      TSCUtils.printQRCode(400, 40, "H", 6, 0, "https://example.com/?a=1&b=2"),
+      TSCUtils.setPrintCopies(1),
+      TSCUtils.feedPaper(),
+      TSCUtils.backFeedPaper(),
+      TSCUtils.cutPaper(),
+    )
+    assertContentEquals(golden("fields.bin"), legacyApi)
+  }
+
+  @Test
+  fun quotedText_isUtf8WithEscapedQuotes() {
+    val content = "品名：苹果 \"红富士\" 😀 ©"
+    val writer = TsplWriter(16).text(0, 0, "TSS24.BF2", 90, 2, 3, content)
+    assertContentEquals(golden("text_utf8.bin"), writer.bytes())
+  }
+
+  @Test
+  fun numbers_coverSignAndLimits() {
+    val writer = TsplWriter()
+      .reference(-5, 0)
+      .reference(Int.MIN_VALUE, Int.MAX_VALUE)
+      .bitmapHeader(10, 20, 13, 2, 0)
+    assertContentEquals(golden("numbers.bin"), writer.bytes())
+  }
+
+  private fun buildLabel(writer: TsplWriter): TsplWriter {
+    writer.reset().size(60, 40).gap(2, 0).cls()
+    for (i in 0 until 30) {
+      writer.text(20 + (i % 2) * 240, 20 + (i / 2) * 30, "TSS24.BF2", 0, 1, 1, FIELDS[i])
+    }
+    return writer.print(1, 1)
+  }
+
+  @Test
+  fun thirtyFieldLabel_matchesGoldenAndReusesBuffer() {
+    val writer = TsplWriter()
+    assertContentEquals(golden("label_30_fields.bin"), buildLabel(writer).bytes())
+    val buffer = writer.buffer()
+    assertContentEquals(golden("label_30_fields.bin"), buildLabel(writer).bytes())
+    // 第二张标签不再扩容
+    assertTrue(buffer === writer.buffer())
+    assertEquals(golden("label_30_fields.bin").size, writer.size())
+  }
+
+  // 旧实现：字符串拼接 + getBytes()，用于对比每张标签的分配量
+  private object LegacyTscUtils {
+    private const val CR: Byte = 0x0D
+    private const val LF: Byte = 0x0A
+
+    fun setLabelSize(width: Int, height: Int) = ("SIZE " + width + "," + height + CR + LF).toByteArray()
+
+    fun setGap(offset: Int) = ("GAP " + offset + ",0" + CR + LF).toByteArray()
+
+    fun clearBuffer() = ("CLS" + CR + LF).toByteArray()
+
+    fun printText(x: Int, y: Int, rotation: Int, xMulti: Int, yMulti: Int, content: String) =
+      ("TEXT " + x + "," + y + ",\"TSS24.BF2\"," + rotation + "," + xMulti + "," + yMulti + ",\"" + content + "\"" + CR + LF)
+        .toByteArray()
+
+    fun setPrintCopies(copies: Int) = ("PRINT " + copies + ",1" + CR + LF).toByteArray()
+  }
+
+  private fun legacyLabel(sink: ByteArray): Int {
+    var size = 0
+    fun add(part: ByteArray) {
+      System.arraycopy(part, 0, sink, size, part.size)
+      size += part.size
+    }
+    add(LegacyTscUtils.setLabelSize(60, 40))
+    add(LegacyTscUtils.setGap(2))
+    add(LegacyTscUtils.clearBuffer())
+    for (i in 0 until 30) {
+      add(LegacyTscUtils.printText(20 + (i % 2) * 240, 20 + (i / 2) * 30, 0, 1, 1, FIELDS[i]))
+    }
+    add(LegacyTscUtils.setPrintCopies(1))
+    return size
+  }
+
+  @Test
+  fun writer_allocatesFarLessPerLabelThanLegacy() {
+    val threads = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    val rounds = 20_000
+    val sink = ByteArray(4096)
+    val writer = TsplWriter()
+    var checksum = 0
+
+    // 预热一轮后统计每张标签在当前线程上分配的字节数
+    fun measure(block: () -> Int): Double {
+      repeat(rounds) { checksum += block() }
+      val bytesBefore = threads?.currentThreadAllocatedBytes ?: 0
+      repeat(rounds) { checksum += block() }
+      return ((threads?.currentThreadAllocatedBytes ?: 0) - bytesBefore).toDouble() / rounds
+    }
+
+    val legacyBytes = measure { legacyLabel(sink) }
+    val writerBytes = measure { buildLabel(writer).size() }
+    assertTrue(checksum != 0)
+    if (threads != null && threads.isThreadAllocatedMemorySupported) {
+      assertTrue(writerBytes * 10 < legacyBytes, "legacy=$legacyBytes writer=$writerBytes")
+    }
+  }
+
+  private companion object {
+    val FIELDS = Array(30) { i -> "字段$i: value-${i * 37}" }
+  }
+}
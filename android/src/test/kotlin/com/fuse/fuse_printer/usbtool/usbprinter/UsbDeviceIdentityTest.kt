@@ -0,0 +1,57 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import android.hardware.usb.UsbDevice
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import org.mockito.Mockito
+
+internal class UsbDeviceIdentityTest {
+
+  private fun device(name: String, serial: String?, vendorId: Int = 0x1234, productId: Int = 0x0001): UsbDevice {
+    val device = Mockito.mock(UsbDevice::class.java)
+    Mockito.`when`(device.deviceName).thenReturn(name)
+    Mockito.`when`(device.vendorId).thenReturn(vendorId)
+    Mockito.`when`(device.productId).thenReturn(productId)
+    Mockito.`when`(device.serialNumber).thenReturn(serial)
+    return device
+  }
+
+  // 未授权时读取序列号抛出 SecurityException
+  private fun unauthorized(name: String): UsbDevice {
+    val device = device(name, null)
+    Mockito.`when`(device.serialNumber).thenThrow(SecurityException("no permission"))
+    return device
+  }
+
+  @Test
+  fun replug_matchesBySerialUnderANewDeviceName() {
+    val identity = UsbDeviceIdentity.of(device("/dev/bus/usb/001/005", "A100"))
+
+    assertTrue(identity.matches(device("/dev/bus/usb/002/009", "A100")))
+    // 同型号的另一台打印机插在原来的位置也不会被认错
+    assertFalse(identity.matches(device("/dev/bus/usb/001/005", "B200")))
+    assertFalse(identity.matches(device("/dev/bus/usb/002/009", "A100", productId = 0x0002)))
+  }
+
+  @Test
+  fun withoutSerial_fallsBackToTheBus() {
+    val identity = UsbDeviceIdentity.of(unauthorized("/dev/bus/usb/001/005"))
+
+    assertTrue(identity.matches(device("/dev/bus/usb/001/011", "A100")))
+    assertFalse(identity.matches(device("/dev/bus/usb/002/005", "A100")))
+    // 重新插入后尚未授权，序列号读不到时按总线号匹配
+    assertTrue(UsbDeviceIdentity.of(device("/dev/bus/usb/001/005", "A100"))
+      .matches(unauthorized("/dev/bus/usb/001/006")))
+  }
+
+  @Test
+  fun readSerial_ignoresBlankAndUnauthorized() {
+    assertNull(UsbDeviceIdentity.readSerial(device("/dev/bus/usb/001/005", "  ")))
+    assertNull(UsbDeviceIdentity.readSerial(unauthorized("/dev/bus/usb/001/005")))
+    assertEquals("A100", UsbDeviceIdentity.readSerial(device("/dev/bus/usb/001/005", " A100 ")))
+    assertEquals("001", UsbDeviceIdentity.busOf("/dev/bus/usb/001/005"))
+  }
+}
@@ -0,0 +1,136 @@
+package com.fuse.fuse_printer.usbtool.usbprinter
+
+import android.hardware.usb.UsbDevice
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+import org.mockito.Mockito
+
+internal class UsbDeviceIndexTest {
+
+  private fun device(name: String, vendorId: Int, productId: Int): UsbDevice {
+    val device = Mockito.mock(UsbDevice::class.java)
+    Mockito.`when`(device.deviceName).thenReturn(name)
+    Mockito.`when`(device.vendorId).thenReturn(vendorId)
+    Mockito.`when`(device.productId).thenReturn(productId)
+    return device
+  }
+
+  // 记录枚举次数的设备列表
+  private class FakeScanner(vararg devices: UsbDevice) : UsbDeviceIndex.Scanner {
+    val devices = devices.toMutableList()
+    var scans = 0
+
+    override fun scan(): Collection<UsbDevice> {
+      scans++
+      return devices.toList()
+    }
+  }
+
+  @Test
+  fun lookups_scanOnceAndThenUseTheIndex() {
+    val printer = device("/dev/bus/usb/001/002", 0x1234, 0x0001)
+    val scanner = FakeScanner(printer, device("/dev/bus/usb/001/003", 0x5678, 0x0002))
+    val index = UsbDeviceIndex(scanner)
+
+    repeat(100) {
+      assertSame(printer, index.find(0x1234, 0x0001))
+      assertSame(printer, index.findByName("/dev/bus/usb/001/002"))
+      assertNull(index.find(0x1234, 0x0002))
+    }
+    assertEquals(0x5678, index.findByVendorId(0x5678)!!.vendorId)
+    assertEquals(2, index.all.size)
+    assertEquals(1, scanner.scans)
+  }
+
+  @Test
+  fun hotplug_updatesIndexWithoutScanning() {
+    val scanner = FakeScanner()
+    val index = UsbDeviceIndex(scanner)
+    val first = device("/dev/bus/usb/001/002", 0x1234, 0x0001)
+    val second = device("/dev/bus/usb/001/004", 0x1234, 0x0001)
+
+    index.onAttached(first)
+    index.onAttached(second)
+    // 重复的插入通知不产生重复项
+    index.onAttached(second)
+    assertEquals(listOf(first, second), index.findAll(0x1234, 0x0001))
+
+    index.onDetached(first)
+    assertSame(second, index.find(0x1234, 0x0001))
+    assertNull(index.findByName("/dev/bus/usb/001/002"))
+    index.onDetached(second)
+    assertNull(index.find(0x1234, 0x0001))
+    assertEquals(0, index.all.size)
+    assertEquals(1, scanner.scans)
+  }
+
+  @Test
+  fun receiverLifecycle_rescansAfterUntrackedHotplug() {
+    val printer = device("/dev/bus/usb/001/002", 0x1234, 0x0001)
+    val scanner = FakeScanner()
+    val index = UsbDeviceIndex(scanner)
+    assertNull(index.find(0x1234, 0x0001))
+
+    // 没有接收器时插入，索引收不到通知；注册接收器后下次查找重新枚举
+    scanner.devices.add(printer)
+    index.onReceiverRegistered()
+    assertSame(printer, index.find(0x1234, 0x0001))
+    assertEquals(2, scanner.scans)
+
+    // 已有接收器时再注册一个，索引仍然可信
+    index.onReceiverRegistered()
+    index.onReceiverUnregistered()
+    assertSame(printer, index.find(0x1234, 0x0001))
+    assertEquals(2, scanner.scans)
+
+    // 最后一个接收器注销后的拔出同样靠重新枚举发现
+    index.onReceiverUnregistered()
+    scanner.devices.clear()
+    assertNull(index.find(0x1234, 0x0001))
+    assertEquals(3, scanner.scans)
+  }
+
+  @Test
+  fun rescan_replacesIndexContents() {
+    val stale = device("/dev/bus/usb/001/002", 0x1234, 0x0001)
+    val scanner = FakeScanner(stale)
+    val index = UsbDeviceIndex(scanner)
+    assertSame(stale, index.find(0x1234, 0x0001))
+
+    // 接收器注册之前发生的插拔只有重新枚举才能发现
+    val fresh = device("/dev/bus/usb/001/005", 0x1234, 0x0001)
+    scanner.devices.clear()
+    scanner.devices.add(fresh)
+    assertSame(stale, index.find(0x1234, 0x0001))
+    index.rescan()
+    assertSame(fresh, index.find(0x1234, 0x0001))
+    assertEquals(2L, index.scanCount)
+  }
+
+  @Test
+  fun snapshot_isVersionedAndDiffsAgainstPrevious() {
+    val kept = device("/dev/bus/usb/001/002", 0x1234, 0x0001)
+    val index = UsbDeviceIndex(FakeScanner(kept))
+    val first = index.snapshot
+    assertSame(first, index.snapshot)
+    assertEquals(listOf("/dev/bus/usb/001/002"), first.devices.map { it["deviceName"] })
+    val initial = first.diff(null)
+    assertEquals(listOf("/dev/bus/usb/001/002"), (initial["added"] as List<*>).map { (it as Map<*, *>)["deviceName"] })
+
+    // 重复通知不改变版本
+    index.onAttached(device("/dev/bus/usb/001/002", 0x1234, 0x0001))
+    assertSame(first, index.snapshot)
+
+    val added = device("/dev/bus/usb/001/003", 0x5678, 0x0002)
+    index.onAttached(added)
+    index.onDetached(kept)
+    val second = index.snapshot
+    assertTrue(second.version > first.version)
+    val diff = second.diff(first)
+    assertEquals(listOf(0x5678), (diff["added"] as List<*>).map { (it as Map<*, *>)["vendorId"] })
+    assertEquals(listOf("/dev/bus/usb/001/002"), diff["removed"])
+  }
+}
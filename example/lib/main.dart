@@ -46,6 +46,7 @@ class _MyHomePageState extends State<MyHomePage> {
   final TextEditingController _qrCodeController = TextEditingController();
   List<int> bytes = [];
   List<Map<String, dynamic>> _usbDevices = [];
+  int _deviceListVersion = 0;
 
   // 常见打印机的Vendor ID和Product ID
   final Map<String, Map<String, int>> _printerDevices = {
@@ -93,20 +94,31 @@ class _MyHomePageState extends State<MyHomePage> {
               // you can handle incoming data here if needed
               debugPrint('Printer data event: $data');
             } else if (ev == 'device_list') {
-              final String? devicesJson = map['devices'] as String?;
-              if (devicesJson != null) {
-                try {
-                  final List<dynamic> devicesList = jsonDecode(devicesJson);
-                  setState(() {
-                    _usbDevices = devicesList
-                        .map((device) => Map<String, dynamic>.from(device))
-                        .toList();
-                  });
-                  debugPrint('USB设备列表已更新: ${_usbDevices.length} 个设备');
-                } catch (e) {
-                  debugPrint('解析设备列表失败: $e');
-                }
-              }
+              // 订阅时的全量设备列表
+              final List<dynamic> devices = map['devices'] as List<dynamic>? ?? [];
+              setState(() {
+                _deviceListVersion = map['version'] as int? ?? 0;
+                _usbDevices = devices
+                    .map((device) => Map<String, dynamic>.from(device))
+                    .toList();
+              });
+              debugPrint('USB设备列表: ${_usbDevices.length} 个设备');
+            } else if (ev == 'device_list_diff') {
+              // 之后只收到增量：added 为新增设备，removed 为移除的设备名
+              final List<dynamic> added = map['added'] as List<dynamic>? ?? [];
+              final List<dynamic> removed = map['removed'] as List<dynamic>? ?? [];
+              setState(() {
+                _deviceListVersion = map['version'] as int? ?? _deviceListVersion;
+                _usbDevices.removeWhere(
+                  (device) => removed.contains(device['deviceName']),
+                );
+                _usbDevices.addAll(
+                  added.map((device) => Map<String, dynamic>.from(device)),
+                );
+              });
+              debugPrint(
+                'USB设备列表已更新(v$_deviceListVersion): +${added.length} -${removed.length}',
+              );
             }
           },
           onError: (dynamic err) {
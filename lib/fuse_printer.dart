@@ -31,6 +31,11 @@ abstract class FusePrinter {
     return FusePrinterPlatform.instance.printTextEx(data: data);
   }
 
+  /// 原样发送数据到打印机（二进制任务通道）
+  static Future<bool?> printRaw({required Uint8List data}) {
+    return FusePrinterPlatform.instance.printRaw(data: data);
+  }
+
   /// 打印条码
   static Future<bool?> printBarcode({
     required String code,
@@ -53,15 +58,153 @@ abstract class FusePrinter {
   }
 
   /// 打印图片
-  static Future<bool?> printImage({required String imagePath}) {
-    return FusePrinterPlatform.instance.printImage(imagePath: imagePath);
+  ///
+  /// [width]/[height] 为 0 时使用原图尺寸；[threshold] 为黑白阈值；
+  /// [dither] 为二值化方式：threshold、floyd_steinberg、atkinson、bayer_4x4、bayer_8x8，
+  /// 照片类图片用抖动保留灰阶
+  static Future<bool?> printImage({
+    required String imagePath,
+    int x = 50,
+    int y = 50,
+    int width = 0,
+    int height = 0,
+    int threshold = 127,
+    String dither = 'threshold',
+  }) {
+    return FusePrinterPlatform.instance.printImage(
+      imagePath: imagePath,
+      x: x,
+      y: y,
+      width: width,
+      height: height,
+      threshold: threshold,
+      dither: dither,
+    );
+  }
+
+  /// 注册标签模板，{name} 为文本变量，{name:int} 为整数变量
+  static Future<bool?> registerLabelTemplate({
+    required String name,
+    required String source,
+  }) {
+    return FusePrinterPlatform.instance.registerLabelTemplate(
+      name: name,
+      source: source,
+    );
+  }
+
+  /// 按模板打印，stored 为 true 时模板只下载到打印机一次
+  static Future<bool?> printTemplate({
+    required String name,
+    required Map<String, Object> values,
+    int copies = 1,
+    bool stored = false,
+  }) {
+    return FusePrinterPlatform.instance.printTemplate(
+      name: name,
+      values: values,
+      copies: copies,
+      stored: stored,
+    );
   }
 
-  /// 发送TSC命令
+  /// 批量打印，整批作为一个任务发送，相同的相邻标签合并为 PRINT n
+  ///
+  /// 每项标签：
+  /// - {'type': 'barcode', 'code': ..., 'barcodeType': '128', 'height': 80}
+  /// - {'type': 'qrcode', 'content': ..., 'size': 6}
+  /// - {'type': 'template', 'name': ..., 'values': {...}, 'stored': false}
+  /// - {'type': 'tspl', 'commands': ...}
+  /// 均可带 'copies'。进度通过事件通道的 batch_progress 事件（batchId/printed/total）报告。
+  static Future<bool?> printBatch({required List<Map<String, Object>> labels}) {
+    return FusePrinterPlatform.instance.printBatch(labels: labels);
+  }
+
+  /// 原样发送文件中准备好的打印指令，path 为相对路径时相对于应用的 files 目录。
+  /// 文件分段映射后直接发送，不整块读入内存，适合大文件；文件不存在或为空时返回false。
+  /// 进度通过事件通道的 file_progress 事件（fileId/path/sent/total，单位字节）报告。
+  static Future<bool?> printFile({required String path}) {
+    return FusePrinterPlatform.instance.printFile(path: path);
+  }
+
+  /// 先把任务写入应用存储中的持久化队列再发送，返回队列任务ID，写入失败返回null。
+  /// units 为若干单元，通常一个单元是一张完整标签的指令；每个单元送达后记录检查点。
+  /// 未连接时任务留在队列中；进程被杀或拔线后，重新连接时从第一个未送达的单元继续，不会从半张标签续发。
+  /// 进度通过事件通道的 spool_progress 事件（spoolId/printed/total）报告，printed == total 表示完成。
+  static Future<int?> spoolPrint({required List<Uint8List> units, String? deviceId}) {
+    return FusePrinterPlatform.instance.spoolPrint(units: units, deviceId: deviceId);
+  }
+
+  /// 持久化队列中未完成的任务：spoolId/printed/total/queued（是否已提交发送）
+  static Future<List<Map<String, Object?>>?> getSpooledJobs({String? deviceId}) {
+    return FusePrinterPlatform.instance.getSpooledJobs(deviceId: deviceId);
+  }
+
+  /// 从持久化队列删除任务，正在发送时在当前单元之后停止
+  static Future<bool?> cancelSpooledJob({required int spoolId, String? deviceId}) {
+    return FusePrinterPlatform.instance.cancelSpooledJob(spoolId: spoolId, deviceId: deviceId);
+  }
+
+  /// 异步提交打印任务，入队后立即返回任务ID，未入队（未连接或队列已满）返回null。
+  /// method 为 printText/printTextEx/printBarcode/printQRCode/printImage/printTemplate/
+  /// printBatch/printFile/printCutPaper/printFeedPaper 之一，arguments 与对应方法相同。
+  /// 任务结束后事件通道发送 'job' 事件：jobId/success/bytesSent/transfers/durationMs/errorCode，
+  /// errorCode 0=成功 1=USB传输失败 2=任务失败 3=异常 4=已取消；同一任务的ID总是先于其事件返回。
+  /// arguments 中的 'deviceId' 指定连接池中的打印机（见 [openPrinter]），不指定时按 [setRoutePolicy] 选择；
+  /// 连接池中其他打印机的事件都带 deviceId。
+  static Future<int?> submitJob(String method, [Map<String, Object?> arguments = const {}]) {
+    return FusePrinterPlatform.instance.submitJob(method: method, arguments: arguments);
+  }
+
+  /// 获取发送流控统计：drainRateBps（打印机实测排空速率，字节/秒）、windowBytes（当前发送窗口）、
+  /// transfers、timeouts、pauses、pausedMs。持续打印时 timeouts 应保持不变，可据 drainRateBps 评估机型
+  static Future<Map<String, int>?> getFlowControlStats() {
+    return FusePrinterPlatform.instance.getFlowControlStats();
+  }
+
+  /// 获取自动连接统计：state（DISCONNECTED/PERMISSION_PENDING/CONNECTED/STOPPED）、
+  /// wakeups/wakeupsPerHour（插拔广播、权限结果和重试的唤醒次数）、retries、transitions、backoffMs。
+  /// 连接由插拔广播驱动，只在断开时按退避间隔重试
+  static Future<Map<String, Object?>?> getConnectionStats() {
+    return FusePrinterPlatform.instance.getConnectionStats();
+  }
+
+  /// 获取图片缓存统计（hits/misses/evictions/entries/bytes/maxBytes）
+  static Future<Map<String, int>?> getImageCacheStats() {
+    return FusePrinterPlatform.instance.getImageCacheStats();
+  }
+
+  /// 是否使用打印机端图片压缩（BITMAP mode 3），需打印机固件支持，默认关闭
+  static Future<void> setBitmapCompression(bool enabled) {
+    return FusePrinterPlatform.instance.setBitmapCompression(enabled);
+  }
+
+  /// 获取主线程阻塞统计：
+  /// calls/mainThreadCalls/mainThreadMs/maxMainThreadMs 为插件方法处理耗时（方法已在后台队列处理，mainThread* 应为0）；
+  /// probeSamples/avgLagMs/maxLagMs/lagOverFrame 为主线程延迟探针数据，需先 [setMainThreadProbe] 开启。
+  /// reset 为 true 时返回当前数据后清零。
+  static Future<Map<String, int>?> getMainThreadStats({bool reset = false}) {
+    return FusePrinterPlatform.instance.getMainThreadStats(reset: reset);
+  }
+
+  /// 开启/关闭主线程延迟探针（每100ms采样一次，默认关闭）
+  static Future<void> setMainThreadProbe(bool enabled) {
+    return FusePrinterPlatform.instance.setMainThreadProbe(enabled);
+  }
+
+  /// 发送TSC命令，经 [printRawStream] 分块发送
   static Future<bool?> printTscCommand({required String command}) {
     return FusePrinterPlatform.instance.printTscCommand(command: command);
   }
 
+  /// 分块发送原始指令（TSPL/ESC-POS 等），适合几百KB的大指令文件：
+  /// 任务立即入队，轮到它时边接收边发送，原生端最多缓冲256KB，不必先拼成一个大数组。
+  /// 全部发送完成后返回是否成功；未入队返回false。发送端超过30秒不送数据时任务失败。
+  /// deviceId 指定连接池中的打印机，不指定时按 [setRoutePolicy] 选择。
+  static Future<bool?> printRawStream({required Stream<List<int>> data, String? deviceId}) {
+    return FusePrinterPlatform.instance.printRawStream(data: data, deviceId: deviceId);
+  }
+
   /// 切纸
   static Future<bool?> printCutPaper() {
     return FusePrinterPlatform.instance.printCutPaper();
@@ -82,8 +225,48 @@ abstract class FusePrinter {
     return FusePrinterPlatform.instance.getPrinterStatus();
   }
 
+  /// 获取打印机实时状态：known/ready/protocol/raw/headOpen/paperJam/paperOut/paperNearEnd/
+  /// ribbonOut/paused/printing/error。状态变化时事件通道发送同样字段的 'status' 事件。
+  /// 打印机不可打印（缺纸、开盖、暂停等）时任务在队列中暂缓，恢复后自动继续
+  static Future<Map<String, Object?>?> getPrinterStatusDetail() {
+    return FusePrinterPlatform.instance.getPrinterStatusDetail();
+  }
+
+  /// 状态轮询开关；protocol 可选 'tspl'（ESC !?）或 'escpos'（DLE EOT）。
+  /// 查询指令与协议相关，调用本方法指定协议之前不查询状态；关闭后不再查询，也不再暂缓任务
+  static Future<void> setStatusPolling({bool enabled = true, String protocol = 'tspl'}) {
+    return FusePrinterPlatform.instance.setStatusPolling(enabled: enabled, protocol: protocol);
+  }
+
+  /// 按设备名（getAllUSBDevices 中的 deviceName）把打印机加入连接池，
+  /// 每台打印机有独立的连接和发送线程；设备不存在或已由主打印机连接时返回false
+  static Future<bool?> openPrinter({required String deviceId}) {
+    return FusePrinterPlatform.instance.openPrinter(deviceId: deviceId);
+  }
+
+  /// 关闭连接池中的打印机，未发送的任务以取消结束
+  static Future<bool?> closePrinter({required String deviceId}) {
+    return FusePrinterPlatform.instance.closePrinter(deviceId: deviceId);
+  }
+
+  /// 连接池中的打印机（第一项为主打印机）：deviceId/primary/connected/pending
+  static Future<List<Map<String, Object?>>?> getPrinters() {
+    return FusePrinterPlatform.instance.getPrinters();
+  }
+
+  /// 未指定 deviceId 的任务的路由策略：'primary'（默认，总是主打印机）、
+  /// 'leastQueued'（排队最少的已连接打印机）、'roundRobin'（已连接打印机轮流）
+  static Future<bool?> setRoutePolicy(String policy) {
+    return FusePrinterPlatform.instance.setRoutePolicy(policy);
+  }
+
   /// 获取所有连接的USB设备列表
-  static Future<String?> getAllUSBDevices() {
-    return FusePrinterPlatform.instance.getAllUSBDevices();
+  ///
+  /// 设备列表由插拔广播维护，不会每次枚举；[rescan] 为 true 时重新枚举（如怀疑列表不完整）
+  ///
+  /// 事件通道订阅时发送一次全量列表 {'event': 'device_list', 'version', 'devices': [设备信息]}，
+  /// 之后设备变化时只发送增量 {'event': 'device_list_diff', 'version', 'added': [设备信息], 'removed': [deviceName]}
+  static Future<String?> getAllUSBDevices({bool rescan = false}) {
+    return FusePrinterPlatform.instance.getAllUSBDevices(rescan: rescan);
   }
 }
@@ -1,14 +1,60 @@
 import 'dart:async';
+import 'dart:convert';
+import 'dart:math';
 
 import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 
 import 'fuse_printer_platform_interface.dart';
 
+// 二进制任务帧（大端序）：[u8 操作码][u32 任务ID][u32 数据长度][数据]
+// 回复：[u32 任务ID][u8 状态]
+const int _jobHeaderSize = 9;
+const int _jobReplySize = 5;
+const int _jobOpRaw = 0x01;
+const int _jobOpTextEx = 0x02;
+const int _jobStatusOk = 0;
+
+// 指令流单个分块的大小，及 rawChunk 的返回值
+const int _rawChunkSize = 64 * 1024;
+const int _rawChunkAccepted = 1;
+const int _rawChunkFull = 0;
+// 原生端缓冲满时的重试间隔，从最小值起逐次加倍
+const Duration _rawRetryMinDelay = Duration(milliseconds: 5);
+const Duration _rawRetryMaxDelay = Duration(milliseconds: 200);
+
 class MethodChannelFusePrinter extends FusePrinterPlatform {
   @visibleForTesting
   final methodChannel = const MethodChannel('com.fuse.printer/methods');
 
+  /// 二进制任务通道，大块数据不经过 StandardMethodCodec 的编解码；
+  /// 组帧和平台通道传递各有一次复制，并非零拷贝
+  @visibleForTesting
+  final jobChannel = const BasicMessageChannel<ByteData>(
+    'com.fuse.printer/jobs',
+    BinaryCodec(),
+  );
+
+  int _nextJobId = 1;
+
+  /// 发送一帧任务，返回任务是否成功；原生端没有回复时返回 null。
+  /// 帧头需要放在数据前面，payload 在这里复制一次到帧缓冲
+  Future<bool?> _sendJob(int opcode, Uint8List payload) async {
+    final jobId = _nextJobId;
+    _nextJobId = (_nextJobId + 1) & 0xFFFFFFFF;
+    final frame = Uint8List(_jobHeaderSize + payload.length);
+    ByteData.sublistView(frame)
+      ..setUint8(0, opcode)
+      ..setUint32(1, jobId)
+      ..setUint32(5, payload.length);
+    frame.setRange(_jobHeaderSize, frame.length, payload);
+    final reply = await jobChannel.send(ByteData.sublistView(frame));
+    if (reply == null || reply.lengthInBytes < _jobReplySize) {
+      return null;
+    }
+    return reply.getUint8(4) == _jobStatusOk;
+  }
+
   @override
   Future<String?> getPlatformVersion() async {
     final version = await methodChannel.invokeMethod<String>(
@@ -39,10 +85,19 @@ class MethodChannelFusePrinter extends FusePrinterPlatform {
 
   @override
   Future<bool?> printTextEx({required Uint8List data}) async {
-    final result = await methodChannel.invokeMethod<bool>('printTextEx', {
-      'data': data,
-    });
-    return result;
+    if (data.isEmpty) {
+      // 空数据仍由方法通道报告 INVALID_DATA
+      final result = await methodChannel.invokeMethod<bool>('printTextEx', {
+        'data': data,
+      });
+      return result;
+    }
+    return _sendJob(_jobOpTextEx, data);
+  }
+
+  @override
+  Future<bool?> printRaw({required Uint8List data}) {
+    return _sendJob(_jobOpRaw, data);
   }
 
   @override
@@ -69,21 +124,210 @@ class MethodChannelFusePrinter extends FusePrinterPlatform {
   }
 
   @override
-  Future<bool?> printImage({required String imagePath}) async {
+  Future<bool?> printImage({
+    required String imagePath,
+    int x = 50,
+    int y = 50,
+    int width = 0,
+    int height = 0,
+    int threshold = 127,
+    String dither = 'threshold',
+  }) async {
     final result = await methodChannel.invokeMethod<bool>('printImage', {
       'imagePath': imagePath,
+      'x': x,
+      'y': y,
+      'width': width,
+      'height': height,
+      'threshold': threshold,
+      'dither': dither,
+    });
+    return result;
+  }
+
+  @override
+  Future<bool?> registerLabelTemplate({
+    required String name,
+    required String source,
+  }) async {
+    final result = await methodChannel.invokeMethod<bool>('registerLabelTemplate', {
+      'name': name,
+      'source': source,
     });
     return result;
   }
 
   @override
-  Future<bool?> printTscCommand({required String command}) async {
-    final result = await methodChannel.invokeMethod<bool>('printTscCommand', {
-      'command': command,
+  Future<bool?> printTemplate({
+    required String name,
+    required Map<String, Object> values,
+    int copies = 1,
+    bool stored = false,
+  }) async {
+    final result = await methodChannel.invokeMethod<bool>('printTemplate', {
+      'name': name,
+      'values': values,
+      'copies': copies,
+      'stored': stored,
     });
     return result;
   }
 
+  @override
+  Future<bool?> printBatch({required List<Map<String, Object>> labels}) async {
+    final result = await methodChannel.invokeMethod<bool>('printBatch', {
+      'labels': labels,
+    });
+    return result;
+  }
+
+  @override
+  Future<bool?> printFile({required String path}) async {
+    final result = await methodChannel.invokeMethod<bool>('printFile', {
+      'path': path,
+    });
+    return result;
+  }
+
+  @override
+  Future<int?> spoolPrint({required List<Uint8List> units, String? deviceId}) async {
+    final result = await methodChannel.invokeMethod<int>('spoolPrint', {
+      'units': units,
+      'deviceId': deviceId,
+    });
+    return result;
+  }
+
+  @override
+  Future<List<Map<String, Object?>>?> getSpooledJobs({String? deviceId}) async {
+    final result = await methodChannel.invokeListMethod<Map<Object?, Object?>>('getSpooledJobs', {
+      'deviceId': deviceId,
+    });
+    return result?.map((job) => job.cast<String, Object?>()).toList();
+  }
+
+  @override
+  Future<bool?> cancelSpooledJob({required int spoolId, String? deviceId}) async {
+    final result = await methodChannel.invokeMethod<bool>('cancelSpooledJob', {
+      'spoolId': spoolId,
+      'deviceId': deviceId,
+    });
+    return result;
+  }
+
+  @override
+  Future<int?> submitJob({
+    required String method,
+    Map<String, Object?> arguments = const {},
+  }) async {
+    final result = await methodChannel.invokeMethod<int>(method, {
+      ...arguments,
+      'async': true,
+    });
+    return result;
+  }
+
+  @override
+  Future<Map<String, int>?> getFlowControlStats() async {
+    final result = await methodChannel.invokeMapMethod<String, int>(
+      'getFlowControlStats',
+    );
+    return result;
+  }
+
+  @override
+  Future<Map<String, Object?>?> getConnectionStats() async {
+    final result = await methodChannel.invokeMapMethod<String, Object?>(
+      'getConnectionStats',
+    );
+    return result;
+  }
+
+  @override
+  Future<Map<String, int>?> getImageCacheStats() async {
+    final result = await methodChannel.invokeMapMethod<String, int>(
+      'getImageCacheStats',
+    );
+    return result;
+  }
+
+  @override
+  Future<void> setBitmapCompression(bool enabled) async {
+    await methodChannel.invokeMethod<void>('setBitmapCompression', {
+      'enabled': enabled,
+    });
+  }
+
+  @override
+  Future<Map<String, int>?> getMainThreadStats({bool reset = false}) async {
+    final result = await methodChannel.invokeMapMethod<String, int>(
+      'getMainThreadStats',
+      {'reset': reset},
+    );
+    return result;
+  }
+
+  @override
+  Future<void> setMainThreadProbe(bool enabled) async {
+    await methodChannel.invokeMethod<void>('setMainThreadProbe', {
+      'enabled': enabled,
+    });
+  }
+
+  @override
+  Future<bool?> printTscCommand({required String command}) {
+    return printRawStream(data: Stream.value(utf8.encode(command)));
+  }
+
+  @override
+  Future<bool?> printRawStream({required Stream<List<int>> data, String? deviceId}) async {
+    final streamId = await methodChannel.invokeMethod<int>('rawBegin', {
+      'deviceId': deviceId,
+    });
+    if (streamId == null) {
+      return false;
+    }
+    try {
+      await for (final chunk in data) {
+        for (var offset = 0; offset < chunk.length; offset += _rawChunkSize) {
+          final end = min(offset + _rawChunkSize, chunk.length);
+          final bytes = chunk is Uint8List
+              ? Uint8List.sublistView(chunk, offset, end)
+              : Uint8List.fromList(chunk.sublist(offset, end));
+          int? status;
+          var delay = _rawRetryMinDelay;
+          while (true) {
+            // 原生端缓冲满时立即返回 _rawChunkFull，不占住方法通道，这里退避后重试
+            status = await methodChannel.invokeMethod<int>('rawChunk', {
+              'streamId': streamId,
+              'data': bytes,
+            });
+            if (status != _rawChunkFull) {
+              break;
+            }
+            await Future<void>.delayed(delay);
+            delay = delay * 2 > _rawRetryMaxDelay ? _rawRetryMaxDelay : delay * 2;
+          }
+          if (status != _rawChunkAccepted) {
+            await _endRawStream(streamId, abort: true);
+            return false;
+          }
+        }
+      }
+    } catch (_) {
+      await _endRawStream(streamId, abort: true);
+      rethrow;
+    }
+    return _endRawStream(streamId, abort: false);
+  }
+
+  Future<bool?> _endRawStream(int streamId, {required bool abort}) {
+    return methodChannel.invokeMethod<bool>('rawEnd', {
+      'streamId': streamId,
+      'abort': abort,
+    });
+  }
+
   @override
   Future<bool?> printCutPaper() async {
     final result = await methodChannel.invokeMethod<bool>('printCutPaper');
@@ -111,8 +355,56 @@ class MethodChannelFusePrinter extends FusePrinterPlatform {
   }
 
   @override
-  Future<String?> getAllUSBDevices() async {
-    final result = await methodChannel.invokeMethod<String>('getAllUSBDevices');
+  Future<bool?> openPrinter({required String deviceId}) async {
+    final result = await methodChannel.invokeMethod<bool>('openPrinter', {
+      'deviceId': deviceId,
+    });
+    return result;
+  }
+
+  @override
+  Future<bool?> closePrinter({required String deviceId}) async {
+    final result = await methodChannel.invokeMethod<bool>('closePrinter', {
+      'deviceId': deviceId,
+    });
+    return result;
+  }
+
+  @override
+  Future<List<Map<String, Object?>>?> getPrinters() async {
+    final result = await methodChannel.invokeListMethod<Map<Object?, Object?>>('getPrinters');
+    return result?.map((printer) => printer.cast<String, Object?>()).toList();
+  }
+
+  @override
+  Future<bool?> setRoutePolicy(String policy) async {
+    final result = await methodChannel.invokeMethod<bool>('setRoutePolicy', {
+      'policy': policy,
+    });
+    return result;
+  }
+
+  @override
+  Future<Map<String, Object?>?> getPrinterStatusDetail() async {
+    final result = await methodChannel.invokeMapMethod<String, Object?>(
+      'getPrinterStatusDetail',
+    );
+    return result;
+  }
+
+  @override
+  Future<void> setStatusPolling({bool enabled = true, String protocol = 'tspl'}) async {
+    await methodChannel.invokeMethod<void>('setStatusPolling', {
+      'enabled': enabled,
+      'protocol': protocol,
+    });
+  }
+
+  @override
+  Future<String?> getAllUSBDevices({bool rescan = false}) async {
+    final result = await methodChannel.invokeMethod<String>('getAllUSBDevices', {
+      'rescan': rescan,
+    });
     return result;
   }
 }
@@ -36,6 +36,10 @@ abstract class FusePrinterPlatform extends PlatformInterface {
     throw UnimplementedError('printTextEx() has not been implemented.');
   }
 
+  Future<bool?> printRaw({required Uint8List data}) {
+    throw UnimplementedError('printRaw() has not been implemented.');
+  }
+
   Future<bool?> printBarcode({
     required String code,
     String type = 'CODE128',
@@ -48,14 +52,93 @@ abstract class FusePrinterPlatform extends PlatformInterface {
     throw UnimplementedError('printQRCode() has not been implemented.');
   }
 
-  Future<bool?> printImage({required String imagePath}) {
+  Future<bool?> printImage({
+    required String imagePath,
+    int x = 50,
+    int y = 50,
+    int width = 0,
+    int height = 0,
+    int threshold = 127,
+    String dither = 'threshold',
+  }) {
     throw UnimplementedError('printImage() has not been implemented.');
   }
 
+  Future<bool?> registerLabelTemplate({
+    required String name,
+    required String source,
+  }) {
+    throw UnimplementedError('registerLabelTemplate() has not been implemented.');
+  }
+
+  Future<bool?> printTemplate({
+    required String name,
+    required Map<String, Object> values,
+    int copies = 1,
+    bool stored = false,
+  }) {
+    throw UnimplementedError('printTemplate() has not been implemented.');
+  }
+
+  Future<bool?> printBatch({required List<Map<String, Object>> labels}) {
+    throw UnimplementedError('printBatch() has not been implemented.');
+  }
+
+  Future<bool?> printFile({required String path}) {
+    throw UnimplementedError('printFile() has not been implemented.');
+  }
+
+  Future<int?> spoolPrint({required List<Uint8List> units, String? deviceId}) {
+    throw UnimplementedError('spoolPrint() has not been implemented.');
+  }
+
+  Future<List<Map<String, Object?>>?> getSpooledJobs({String? deviceId}) {
+    throw UnimplementedError('getSpooledJobs() has not been implemented.');
+  }
+
+  Future<bool?> cancelSpooledJob({required int spoolId, String? deviceId}) {
+    throw UnimplementedError('cancelSpooledJob() has not been implemented.');
+  }
+
+  Future<int?> submitJob({
+    required String method,
+    Map<String, Object?> arguments = const {},
+  }) {
+    throw UnimplementedError('submitJob() has not been implemented.');
+  }
+
+  Future<Map<String, int>?> getFlowControlStats() {
+    throw UnimplementedError('getFlowControlStats() has not been implemented.');
+  }
+
+  Future<Map<String, Object?>?> getConnectionStats() {
+    throw UnimplementedError('getConnectionStats() has not been implemented.');
+  }
+
+  Future<Map<String, int>?> getImageCacheStats() {
+    throw UnimplementedError('getImageCacheStats() has not been implemented.');
+  }
+
+  Future<void> setBitmapCompression(bool enabled) {
+    throw UnimplementedError('setBitmapCompression() has not been implemented.');
+  }
+
+  Future<Map<String, int>?> getMainThreadStats({bool reset = false}) {
+    throw UnimplementedError('getMainThreadStats() has not been implemented.');
+  }
+
+  Future<void> setMainThreadProbe(bool enabled) {
+    throw UnimplementedError('setMainThreadProbe() has not been implemented.');
+  }
+
   Future<bool?> printTscCommand({required String command}) {
     throw UnimplementedError('printTscCommand() has not been implemented.');
   }
 
+  Future<bool?> printRawStream({required Stream<List<int>> data, String? deviceId}) {
+    throw UnimplementedError('printRawStream() has not been implemented.');
+  }
+
   Future<bool?> printCutPaper() {
     throw UnimplementedError('printCutPaper() has not been implemented.');
   }
@@ -72,8 +155,32 @@ abstract class FusePrinterPlatform extends PlatformInterface {
     throw UnimplementedError('getPrinterStatus() has not been implemented.');
   }
 
+  Future<bool?> openPrinter({required String deviceId}) {
+    throw UnimplementedError('openPrinter() has not been implemented.');
+  }
+
+  Future<bool?> closePrinter({required String deviceId}) {
+    throw UnimplementedError('closePrinter() has not been implemented.');
+  }
+
+  Future<List<Map<String, Object?>>?> getPrinters() {
+    throw UnimplementedError('getPrinters() has not been implemented.');
+  }
+
+  Future<bool?> setRoutePolicy(String policy) {
+    throw UnimplementedError('setRoutePolicy() has not been implemented.');
+  }
+
   /// 获取所有连接的USB设备列表
-  Future<String?> getAllUSBDevices() {
+  Future<Map<String, Object?>?> getPrinterStatusDetail() {
+    throw UnimplementedError('getPrinterStatusDetail() has not been implemented.');
+  }
+
+  Future<void> setStatusPolling({bool enabled = true, String protocol = 'tspl'}) {
+    throw UnimplementedError('setStatusPolling() has not been implemented.');
+  }
+
+  Future<String?> getAllUSBDevices({bool rescan = false}) {
     throw UnimplementedError('getAllUSBDevices() has not been implemented.');
   }
 }
@@ -18,6 +18,42 @@ class MockPlusTestPlatform
     throw UnimplementedError();
   }
 
+  @override
+  Future<bool?> openPrinter({required String deviceId}) {
+    // TODO: implement openPrinter
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<bool?> closePrinter({required String deviceId}) {
+    // TODO: implement closePrinter
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<List<Map<String, Object?>>?> getPrinters() {
+    // TODO: implement getPrinters
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<bool?> setRoutePolicy(String policy) {
+    // TODO: implement setRoutePolicy
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<Map<String, Object?>?> getPrinterStatusDetail() {
+    // TODO: implement getPrinterStatusDetail
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<void> setStatusPolling({bool enabled = true, String protocol = 'tspl'}) {
+    // TODO: implement setStatusPolling
+    throw UnimplementedError();
+  }
+
   @override
   Future<bool?> printBarcode({
     required String code,
@@ -47,11 +83,120 @@ class MockPlusTestPlatform
   }
 
   @override
-  Future<bool?> printImage({required String imagePath}) {
+  Future<bool?> printImage({
+    required String imagePath,
+    int x = 50,
+    int y = 50,
+    int width = 0,
+    int height = 0,
+    int threshold = 127,
+    String dither = 'threshold',
+  }) {
     // TODO: implement printImage
     throw UnimplementedError();
   }
 
+  @override
+  Future<bool?> registerLabelTemplate({
+    required String name,
+    required String source,
+  }) {
+    // TODO: implement registerLabelTemplate
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<bool?> printTemplate({
+    required String name,
+    required Map<String, Object> values,
+    int copies = 1,
+    bool stored = false,
+  }) {
+    // TODO: implement printTemplate
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<bool?> printBatch({required List<Map<String, Object>> labels}) {
+    // TODO: implement printBatch
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<bool?> printFile({required String path}) {
+    // TODO: implement printFile
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<int?> spoolPrint({required List<Uint8List> units, String? deviceId}) {
+    // TODO: implement spoolPrint
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<List<Map<String, Object?>>?> getSpooledJobs({String? deviceId}) {
+    // TODO: implement getSpooledJobs
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<bool?> cancelSpooledJob({required int spoolId, String? deviceId}) {
+    // TODO: implement cancelSpooledJob
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<int?> submitJob({
+    required String method,
+    Map<String, Object?> arguments = const {},
+  }) {
+    // TODO: implement submitJob
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<Map<String, int>?> getFlowControlStats() {
+    // TODO: implement getFlowControlStats
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<Map<String, Object?>?> getConnectionStats() {
+    // TODO: implement getConnectionStats
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<Map<String, int>?> getImageCacheStats() {
+    // TODO: implement getImageCacheStats
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<Map<String, int>?> getMainThreadStats({bool reset = false}) {
+    // TODO: implement getMainThreadStats
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<void> setMainThreadProbe(bool enabled) {
+    // TODO: implement setMainThreadProbe
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<void> setBitmapCompression(bool enabled) {
+    // TODO: implement setBitmapCompression
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<bool?> printRaw({required Uint8List data}) {
+    // TODO: implement printRaw
+    throw UnimplementedError();
+  }
+
   @override
   Future<bool?> printInit({required int vendorId, required int productId}) {
     // TODO: implement printInit
@@ -81,6 +226,12 @@ class MockPlusTestPlatform
     // TODO: implement printTscCommand
     throw UnimplementedError();
   }
+
+  @override
+  Future<bool?> printRawStream({required Stream<List<int>> data, String? deviceId}) {
+    // TODO: implement printRawStream
+    throw UnimplementedError();
+  }
 }
 
 void main() {